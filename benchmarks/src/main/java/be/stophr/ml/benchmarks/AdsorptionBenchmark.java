@@ -0,0 +1,106 @@
+package be.stophr.ml.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.writable.Writables;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import be.stophr.ml.classification.GraphAdsorption;
+import be.stophr.ml.classification.Utils;
+import be.stophr.ml.classification.labels.MultiLabel;
+
+/**
+ * Runs GraphAdsorption end-to-end on MemPipeline over random graphs with
+ * uniformly chosen edges, a fraction of which are seeds.
+ *
+ * @author Christophe Van Gysel
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class AdsorptionBenchmark {
+
+    @Param({ "1000", "10000" })
+    public int numNodes;
+
+    @Param({ "5", "20" })
+    public int averageDegree;
+
+    @Param({ "2", "16" })
+    public int numClasses;
+
+    @Param({ "10" })
+    public int iterations;
+
+    @Param({ "0.01" })
+    public double seedFraction;
+
+    protected MultiLabel.Factory factory;
+
+    protected PTable<Long, Pair<Long, Double>> weights;
+    protected PTable<Long, MultiLabel> labels;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+
+        this.factory = new MultiLabel.Factory(this.numClasses);
+
+        final List<Pair<Long, Pair<Long, Double>>> edges = new ArrayList<Pair<Long, Pair<Long, Double>>>();
+
+        for (long source = 1; source <= this.numNodes; source++) {
+            for (int i = 0; i < this.averageDegree; i++) {
+                edges.add(Pair.of(source, Pair.of(
+                        1L + random.nextInt(this.numNodes),
+                        random.nextDouble())));
+            }
+        }
+
+        final List<Pair<Long, MultiLabel>> seeds = new ArrayList<Pair<Long, MultiLabel>>();
+
+        for (long node = 1; node <= this.numNodes; node++) {
+            if (random.nextDouble() < this.seedFraction) {
+                seeds.add(Pair.of(node, (MultiLabel) this.factory
+                        .createSingleton(random.nextInt(this.numClasses))));
+            }
+        }
+
+        this.weights = Utils.CreatePTable(
+                Writables.tableOf(Writables.longs(),
+                        Writables.pairs(Writables.longs(), Writables.doubles())),
+                edges);
+        this.labels = Utils.CreatePTable(
+                Writables.tableOf(Writables.longs(), this.factory.getLabelType()),
+                seeds);
+    }
+
+    @Benchmark
+    public void run(final Blackhole blackhole) {
+        for (final Pair<Long, MultiLabel> label : new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, this.factory)
+                .run(this.weights, this.labels, 1.0, this.iterations).first()
+                .materialize()) {
+            blackhole.consume(label);
+        }
+    }
+
+}
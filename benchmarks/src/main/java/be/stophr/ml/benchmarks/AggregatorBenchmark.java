@@ -0,0 +1,107 @@
+package be.stophr.ml.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import be.stophr.ml.classification.crunch.AggregateLabelsOp;
+import be.stophr.ml.classification.labels.Label;
+import be.stophr.ml.classification.labels.MultiLabel;
+
+/**
+ * Sums the incoming labels of a node with the Kahan aggregator of
+ * AggregateLabelsOp, with and without weights. Reported per label.
+ *
+ * @author Christophe Van Gysel
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class AggregatorBenchmark {
+
+    protected static final int NUM_LABELS = 1024;
+
+    @Param({ "2", "16", "256" })
+    public int numClasses;
+
+    protected MultiLabel[] labels;
+    protected double[] weights;
+
+    protected AggregateLabelsOp.KahanAggregator<MultiLabel> aggregator;
+
+    @Setup
+    public void setup() {
+        final MultiLabel.Factory factory = new MultiLabel.Factory(
+                this.numClasses);
+        final Random random = new Random(42);
+
+        this.labels = new MultiLabel[NUM_LABELS];
+        this.weights = new double[NUM_LABELS];
+
+        for (int i = 0; i < NUM_LABELS; i++) {
+            this.labels[i] = Labels.random(factory, random);
+            this.weights[i] = random.nextDouble();
+        }
+
+        this.aggregator = new AggregateLabelsOp.KahanAggregator<MultiLabel>(
+                factory);
+        this.aggregator.initialize(null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_LABELS)
+    public Label sum() {
+        this.aggregator.reset();
+
+        for (final MultiLabel label : this.labels) {
+            this.aggregator.update(label);
+        }
+
+        return this.aggregator.sum();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_LABELS)
+    public Label sumWeighted() {
+        this.aggregator.reset();
+
+        for (int i = 0; i < NUM_LABELS; i++) {
+            this.aggregator.update(this.labels[i], this.weights[i]);
+        }
+
+        return this.aggregator.sum();
+    }
+
+    /**
+     * Multiplies every label before summing it, as before the weights were
+     * passed to the aggregator.
+     */
+    @Benchmark
+    @OperationsPerInvocation(NUM_LABELS)
+    public Label sumMultiplied() {
+        this.aggregator.reset();
+
+        for (int i = 0; i < NUM_LABELS; i++) {
+            this.aggregator.update((MultiLabel) this.labels[i]
+                    .multiply(this.weights[i]));
+        }
+
+        return this.aggregator.sum();
+    }
+
+}
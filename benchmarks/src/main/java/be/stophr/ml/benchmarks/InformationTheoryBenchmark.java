@@ -0,0 +1,74 @@
+package be.stophr.ml.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import be.stophr.ml.InformationTheory;
+
+/**
+ * Entropy of probability distributions and of strings.
+ *
+ * @author Christophe Van Gysel
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class InformationTheoryBenchmark {
+
+    @Param({ "2", "16", "256" })
+    public int size;
+
+    protected double[] probabilities;
+    protected String string;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+
+        this.probabilities = new double[this.size];
+        double sum = 0.0;
+
+        for (int i = 0; i < this.size; i++) {
+            this.probabilities[i] = random.nextDouble();
+            sum += this.probabilities[i];
+        }
+
+        for (int i = 0; i < this.size; i++) {
+            this.probabilities[i] /= sum;
+        }
+
+        final char[] characters = new char[this.size];
+
+        for (int i = 0; i < this.size; i++) {
+            characters[i] = (char) ('a' + random.nextInt(26));
+        }
+
+        this.string = new String(characters);
+    }
+
+    @Benchmark
+    public double entropyOfProbabilities() {
+        return InformationTheory.entropy(this.probabilities);
+    }
+
+    @Benchmark
+    public double entropyOfString() {
+        return InformationTheory.entropy(this.string);
+    }
+
+}
@@ -0,0 +1,74 @@
+package be.stophr.ml.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import be.stophr.ml.classification.labels.Label;
+import be.stophr.ml.classification.labels.MultiLabel;
+
+/**
+ * Arithmetic on MultiLabel instances, as performed for every message.
+ *
+ * @author Christophe Van Gysel
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class LabelBenchmark {
+
+    @Param({ "2", "16", "256" })
+    public int numClasses;
+
+    protected MultiLabel first;
+    protected MultiLabel second;
+
+    @Setup
+    public void setup() {
+        final MultiLabel.Factory factory = new MultiLabel.Factory(
+                this.numClasses);
+
+        this.first = Labels.random(factory, new Random(42));
+        this.second = Labels.random(factory, new Random(43));
+    }
+
+    @Benchmark
+    public Label add() {
+        return this.first.add(this.second);
+    }
+
+    @Benchmark
+    public Label multiply() {
+        return this.first.multiply(0.5);
+    }
+
+    @Benchmark
+    public Label normalize() {
+        return this.first.normalize(Label.NormType.MANHATTAN);
+    }
+
+    @Benchmark
+    public double distance() {
+        return this.first.diff(this.second).euclideanNorm();
+    }
+
+    @Benchmark
+    public double entropy() {
+        return this.first.entropy();
+    }
+
+}
@@ -0,0 +1,31 @@
+package be.stophr.ml.benchmarks;
+
+import java.util.Random;
+
+import be.stophr.ml.classification.labels.MultiLabel;
+
+/**
+ * Random inputs shared by the benchmarks.
+ *
+ * @author Christophe Van Gysel
+ */
+public class Labels {
+
+    public static MultiLabel random(final MultiLabel.Factory factory,
+            final Random random) {
+        final double[] classes = new double[factory.getNumClasses()];
+        double sum = 0.0;
+
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = random.nextDouble();
+            sum += classes[i];
+        }
+
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] /= sum;
+        }
+
+        return factory.create(classes);
+    }
+
+}
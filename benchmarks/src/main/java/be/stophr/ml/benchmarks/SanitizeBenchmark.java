@@ -0,0 +1,70 @@
+package be.stophr.ml.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import be.stophr.ml.classification.Utils;
+
+/**
+ * Sanitizes tweet-sized strings, either pure ASCII or with accents and line
+ * breaks.
+ *
+ * @author Christophe Van Gysel
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SanitizeBenchmark {
+
+    protected static final String ASCII = "abcdefghijklmnopqrstuvwxyzABCDEF"
+            + "     .,!?#@0123";
+
+    protected static final String ACCENTED = "abcdefghijklmnopqrstuvwxyz"
+            + "\u00e9\u00e8\u00eb\u00e7\u00f1\u00f6\u00fc\u00c9"
+            + "     .,!?#@\t\n";
+
+    @Param({ "ascii", "accented" })
+    public String input;
+
+    protected String string;
+
+    @Setup
+    public void setup() {
+        final String characters = "ascii".equals(this.input) ? ASCII
+                : ACCENTED;
+        final Random random = new Random(42);
+        final char[] string = new char[140];
+
+        for (int i = 0; i < string.length; i++) {
+            string[i] = characters.charAt(random.nextInt(characters.length()));
+        }
+
+        this.string = new String(string);
+    }
+
+    @Benchmark
+    public String sanitizeString() {
+        return Utils.sanitizeString(this.string);
+    }
+
+    @Benchmark
+    public String normalizeString() {
+        return Utils.normalizeString(this.string);
+    }
+
+}
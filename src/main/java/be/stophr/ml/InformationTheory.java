@@ -7,6 +7,8 @@ package be.stophr.ml;
  */
 public class InformationTheory {
 
+    public static final double LOG_2 = Math.log(2);
+
     public static double entropy(String input) {
         long[] statistics = new long[36];
 
@@ -42,7 +44,7 @@ public class InformationTheory {
             assert probability >= 0.0;
 
             if (probability > 0.0) {
-                entropy -= probability * (Math.log(probability) / Math.log(2));
+                entropy -= probability * (Math.log(probability) / LOG_2);
             }
         }
 
@@ -0,0 +1,284 @@
+package be.stophr.ml.classification;
+
+import java.io.Serializable;
+
+import org.apache.crunch.CrunchRuntimeException;
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.FilterFn;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.PipelineResult;
+import org.apache.crunch.lib.Join;
+import org.apache.crunch.types.PTableType;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.writable.Writables;
+
+import be.stophr.ml.classification.graph.Adjacency;
+import be.stophr.ml.classification.labels.Label;
+
+/**
+ * Preprocessing and helpers shared by the implementations of Adsorption: the
+ * seed labels are moved to their shadow nodes, which are connected to the
+ * seeds, and the pipeline is run once per iteration where required.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public abstract class AbstractAdsorption<LabelT extends Label> implements
+        Adsorption<LabelT>, Serializable {
+
+    protected final Class<LabelT> labelClass;
+    protected final Label.Factory labelFactory;
+
+    protected final ShadowNodes shadowNodes;
+
+    protected AbstractAdsorption(final Class<LabelT> labelClass,
+            final Label.Factory labelFactory, final ShadowNodes shadowNodes) {
+        assert labelClass != null;
+        assert labelFactory != null;
+        assert shadowNodes != null;
+
+        this.labelClass = labelClass;
+        this.labelFactory = labelFactory;
+        this.shadowNodes = shadowNodes;
+    }
+
+    public Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> run(
+            final PTable<Long, Pair<Long, Double>> initialWeights,
+            final PTable<Long, LabelT> initialLabels,
+            final Double updateConstant,
+            final int iterations) {
+        assert iterations >= 1;
+
+        return this.run(initialWeights, initialLabels, updateConstant,
+                StoppingCriterion.fixed(iterations));
+    }
+
+    protected PTable<Long, LabelT> preprocessLabels(
+            final PTable<Long, LabelT> initialLabels) {
+        return initialLabels.mapKeys("MoveToShadowNode",
+                new MapFn<Long, Long>() {
+
+                    @Override
+                    public Long map(Long node) {
+                        return AbstractAdsorption.this.shadowNodes
+                                .getShadow(node);
+                    }
+                }, Writables.longs());
+    }
+
+    protected PTable<Long, Pair<Long, Double>> preprocessWeights(
+            final PTable<Long, Pair<Long, Double>> initialWeights,
+            final PTable<Long, LabelT> initialLabels,
+            final double updateConstant) {
+        assert updateConstant > 0.0;
+
+        final PTable<Long, Pair<Long, Double>> shadowWeights = initialLabels
+                .parallelDo(
+                        "ShadowEdges",
+                        new DoFn<Pair<Long, LabelT>, Pair<Long, Pair<Long, Double>>>() {
+
+                            @Override
+                            public void process(
+                                    Pair<Long, LabelT> instance,
+                                    Emitter<Pair<Long, Pair<Long, Double>>> emitter) {
+                                final Long node = instance.first();
+                                final Long shadow = AbstractAdsorption.this.shadowNodes
+                                        .getShadow(node);
+
+                                // Edge from shadow node to seed node with updateConstant weight.
+                                emitter.emit(Pair.of(shadow,
+                                        Pair.of(node, updateConstant)));
+
+                                // Edge from shadow node to shadow node with unit weight.
+                                emitter.emit(Pair.of(shadow, Pair.of(shadow, 1.0)));
+                            }
+
+                        }, Writables.tableOf(
+                                Writables.longs(),
+                                Writables.pairs(Writables.longs(),
+                                        Writables.doubles())));
+
+        return initialWeights.union(shadowWeights);
+    }
+
+
+    /**
+     * Materializes the given collections (skipping nulls) in a single run of
+     * the pipeline. Later runs then read them instead of recomputing them,
+     * along with all of the iterations before.
+     */
+    protected PipelineResult runPipeline(final int iteration,
+            final PCollection<?>... collections) {
+        for (final PCollection<?> collection : collections) {
+            if (collection != null) {
+                collection.materialize();
+            }
+        }
+
+        final PipelineResult result = collections[0].getPipeline().run();
+
+        if (!result.succeeded()) {
+            throw new CrunchRuntimeException("Iteration " + iteration
+                    + " failed.");
+        }
+
+        return result;
+    }
+
+    /**
+     * Sends the label of every source, together with the edge weight, to all
+     * of its targets (see AdjacencyOp).
+     */
+    protected PTable<Long, Pair<LabelT, Double>> sendAdjacency(
+            PTable<Long, Pair<Adjacency, LabelT>> instances) {
+        return instances
+                .parallelDo(
+                        "PropagateAdjacency",
+                        new DoFn<Pair<Long, Pair<Adjacency, LabelT>>, Pair<Long, Pair<LabelT, Double>>>() {
+
+                            protected transient long joined;
+                            protected transient long sent;
+                            protected transient long skipped;
+
+                            @Override
+                            public void process(
+                                    Pair<Long, Pair<Adjacency, LabelT>> instance,
+                                    Emitter<Pair<Long, Pair<LabelT, Double>>> emitter) {
+                                final Adjacency edges = instance.second()
+                                        .first();
+                                final LabelT label = instance.second()
+                                        .second();
+                                assert edges != null;
+
+                                this.joined++;
+
+                                if (label == null) {
+                                    this.skipped += edges.size();
+
+                                    return;
+                                }
+
+                                for (int i = 0; i < edges.size(); i++) {
+                                    emitter.emit(Pair.of(edges.getTarget(i),
+                                            Pair.of(label, edges.getWeight(i))));
+                                }
+
+                                this.sent += edges.size();
+                            }
+
+                            @Override
+                            public void cleanup(
+                                    Emitter<Pair<Long, Pair<LabelT, Double>>> emitter) {
+                                this.increment(
+                                        AdsorptionCounters.JOINED_RECORDS,
+                                        this.joined);
+                                this.increment(AdsorptionCounters.LABELS_SENT,
+                                        this.sent);
+                                this.increment(
+                                        AdsorptionCounters.NULL_LABELS_SKIPPED,
+                                        this.skipped);
+
+                                this.joined = this.sent = this.skipped = 0L;
+                            }
+
+                        }, this.getWeightedLabelType());
+    }
+
+    @SuppressWarnings("unchecked")
+    protected PType<LabelT> getLabelType() {
+        return (PType<LabelT>) this.labelFactory.getLabelType();
+    }
+
+    protected PTableType<Long, Pair<LabelT, Double>> getWeightedLabelType() {
+        return Writables.tableOf(
+                Writables.longs(),
+                Writables.pairs(this.getLabelType(),
+                        Writables.doubles()));
+    }
+
+    /**
+     * Returns the euclidean distance between the labels of two consecutive
+     * iterations, for every node labeled in the next one.
+     */
+    protected PTable<Long, Double> computeDistances(
+            final PTable<Long, LabelT> next,
+            final PTable<Long, LabelT> previous) {
+        assert next.getTypeFamily() != null;
+        assert previous.getTypeFamily() != null;
+
+        return Join
+                .leftJoin(next, previous)
+                .parallelDo(
+                        "CompareIterations",
+                        new MapFn<Pair<Long, Pair<LabelT, LabelT>>, Pair<Long, Double>>() {
+
+                            @Override
+                            public Pair<Long, Double> map(
+                                    Pair<Long, Pair<LabelT, LabelT>> data) {
+                                final Long node = data.first();
+
+                                final Pair<LabelT, LabelT> labels = data
+                                        .second();
+
+                                final LabelT next = labels.first();
+                                final LabelT previous = labels.second();
+
+                                // Longest possible distance, unless the node
+                                // had a label before.
+                                final double euclideanDistance = (previous != null) ? previous
+                                        .diff(next).euclideanNorm()
+                                        : Math.sqrt(2.0);
+
+                                this.increment(AdsorptionCounters.COMPARED_NODES);
+
+                                return Pair.of(node, euclideanDistance);
+                            }
+
+                        },
+                        Writables.tableOf(Writables.longs(),
+                                Writables.doubles()));
+    }
+
+    /**
+     * Returns the nodes whose distance exceeds the threshold, keyed by the
+     * given iteration.
+     */
+    protected PTable<Integer, Pair<Long, Double>> filterUnconverged(
+            final PTable<Long, Double> distances, final int iteration,
+            final double convergence_threshold) {
+        assert iteration >= 1;
+        assert convergence_threshold >= 0.0
+                && convergence_threshold <= Math.sqrt(2.0);
+
+        return distances
+                .filter(new FilterFn<Pair<Long, Double>>() {
+
+                    @Override
+                    public boolean accept(Pair<Long, Double> pair) {
+                        return pair.second() > convergence_threshold;
+                    }
+
+                })
+                .parallelDo(
+                        new MapFn<Pair<Long, Double>, Pair<Integer, Pair<Long, Double>>>() {
+
+                            @Override
+                            public Pair<Integer, Pair<Long, Double>> map(
+                                    Pair<Long, Double> pair) {
+                                this.increment(AdsorptionCounters.UNCONVERGED_NODES);
+
+                                return Pair.of(iteration, pair);
+                            }
+
+                        },
+                        Writables.tableOf(
+                                Writables.ints(),
+                                Writables.pairs(Writables.longs(),
+                                        Writables.doubles())));
+    }
+
+}
@@ -0,0 +1,31 @@
+package be.stophr.ml.classification;
+
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+
+import be.stophr.ml.classification.labels.Label;
+
+/**
+ * Entry point shared by the implementations of the Adsorption algorithm:
+ * GraphAdsorption and the engines that compute the same labels differently
+ * (InMemoryGraphAdsorption, DeltaGraphAdsorption and VertexGraphAdsorption).
+ *
+ * Both return the labels of the nodes, together with the nodes which had
+ * not converged at every check of the stopping criterion, keyed by the
+ * iteration.
+ *
+ * @author Christophe Van Gysel
+ */
+public interface Adsorption<LabelT extends Label> {
+
+    public Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> run(
+            final PTable<Long, Pair<Long, Double>> initialWeights,
+            final PTable<Long, LabelT> initialLabels,
+            final Double updateConstant, final int iterations);
+
+    public Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> run(
+            final PTable<Long, Pair<Long, Double>> initialWeights,
+            final PTable<Long, LabelT> initialLabels,
+            final Double updateConstant, final StoppingCriterion criterion);
+
+}
@@ -0,0 +1,53 @@
+package be.stophr.ml.classification;
+
+/**
+ * Counters incremented by the functions of GraphAdsorption. They are reported
+ * per iteration to an AdsorptionListener (see IterationReport).
+ *
+ * The join with the labels is performed by Crunch, hence its output is
+ * counted as the input of PropagateLabels (or PropagateAdjacency). The
+ * aggregation receives the labels sent and the injected seeds. The
+ * distribution of the distances between consecutive iterations is reported
+ * by the ConvergenceSummary of an iteration instead.
+ *
+ * @author Christophe Van Gysel
+ */
+public enum AdsorptionCounters {
+
+    /**
+     * Records (edges, or adjacencies) joined with the labels.
+     */
+    JOINED_RECORDS,
+
+    /**
+     * Labels sent along an edge.
+     */
+    LABELS_SENT,
+
+    /**
+     * Edges skipped because their source has no label (yet).
+     */
+    NULL_LABELS_SKIPPED,
+
+    /**
+     * Messages of the shadow nodes injected by runInjected.
+     */
+    SEEDS_INJECTED,
+
+    /**
+     * Nodes whose incoming labels were summed.
+     */
+    AGGREGATED_NODES,
+
+    /**
+     * Labels normalized, including the normalized seeds of runInjected.
+     */
+    NORMALIZED_LABELS,
+
+    /**
+     * Nodes compared to the previous iteration, and those that have not
+     * converged yet.
+     */
+    COMPARED_NODES, UNCONVERGED_NODES
+
+}
@@ -0,0 +1,15 @@
+package be.stophr.ml.classification;
+
+/**
+ * Receives the progress of GraphAdsorption. The listener is called on the
+ * client, never from within the pipeline.
+ *
+ * @author Christophe Van Gysel
+ */
+public interface AdsorptionListener {
+
+    public void iterationStarted(final int iteration);
+
+    public void iterationFinished(final IterationReport report);
+
+}
@@ -1,24 +1,48 @@
 package be.stophr.ml.classification;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Map;
 
 import com.google.common.collect.HashBiMap;
 
 /**
  * An alphabet provides a mapping between strings and tokens.
- * 
+ *
  * It is commonly used as a mapping between internal label identifiers
  * and human-readable representations.
- * 
+ *
+ * Once locked, the tokens are stored in an array indexed by their identifier
+ * and looked up through an open-addressing hash table, such that a locked
+ * alphabet holds no boxed values. It is then serialized as the plain list of
+ * its (UTF-8 encoded) tokens, which keeps the functions that carry an
+ * alphabet small.
+ *
  * @author Christophe Van Gysel
  */
 @SuppressWarnings("serial")
 public class Alphabet implements Serializable {
 
-    protected final HashBiMap<Long, String> map = HashBiMap.create();
-    protected long nextIndex = 0;
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
 
-    protected boolean locked = false;
+    protected transient HashBiMap<Long, String> map = HashBiMap.create();
+    protected transient long nextIndex = 0;
+
+    protected transient boolean locked = false;
+
+    /**
+     * Tokens by identifier, once locked.
+     */
+    protected transient String[] tokens = null;
+
+    /**
+     * Open-addressing table of identifier + 1 by token hash; 0 marks an empty
+     * slot. Its size is a power of two, at least twice the number of tokens.
+     */
+    protected transient int[] slots = null;
 
     public Alphabet() {
     }
@@ -28,7 +52,20 @@ public class Alphabet implements Serializable {
             this.add(token);
         }
 
-        this.finalize();
+        this.lock();
+    }
+
+    /**
+     * Returns a locked alphabet in which every token has its position in the
+     * given array as identifier. The tokens must be distinct.
+     */
+    public static Alphabet fromTokens(final String... tokens) {
+        final Alphabet alphabet = new Alphabet();
+        alphabet.freeze(tokens.clone());
+
+        assert alphabet.isDistinct();
+
+        return alphabet;
     }
 
     public long add(final String token) {
@@ -39,11 +76,18 @@ public class Alphabet implements Serializable {
     }
 
     public long get(final String token) {
-        if (this.map.containsValue(token)) {
-            return this.map.inverse().get(token);
-        } else {
-            assert !this.locked;
+        if (this.locked) {
+            final long index = this.indexOf(token);
+            assert index >= 0;
 
+            return index;
+        }
+
+        final Long existing = this.map.inverse().get(token);
+
+        if (existing != null) {
+            return existing;
+        } else {
             final long index = this.nextIndex;
 
             this.map.put(index, token);
@@ -53,16 +97,104 @@ public class Alphabet implements Serializable {
         }
     }
 
-    public void finalize() {
+    /**
+     * Returns the identifier of the given token, or -1 if it is not part of
+     * the alphabet.
+     */
+    public long indexOf(final String token) {
+        if (!this.locked) {
+            final Long index = this.map.inverse().get(token);
+
+            return index == null ? -1 : index;
+        }
+
+        final int mask = this.slots.length - 1;
+
+        for (int slot = hash(token) & mask;; slot = (slot + 1) & mask) {
+            final int entry = this.slots[slot];
+
+            if (entry == 0) {
+                return -1;
+            } else if (this.tokens[entry - 1].equals(token)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Locks the alphabet, after which no tokens can be added.
+     */
+    public void lock() {
+        if (this.locked) {
+            return;
+        }
+
+        final String[] tokens = new String[this.map.size()];
+
+        for (final Map.Entry<Long, String> entry : this.map.entrySet()) {
+            assert entry.getKey() < tokens.length;
+
+            tokens[entry.getKey().intValue()] = entry.getValue();
+        }
+
+        this.freeze(tokens);
+    }
+
+    protected void freeze(final String[] tokens) {
+        int capacity = 2;
+
+        while (capacity < 2 * tokens.length) {
+            capacity *= 2;
+        }
+
+        final int[] slots = new int[capacity];
+        final int mask = capacity - 1;
+
+        for (int i = 0; i < tokens.length; i++) {
+            int slot = hash(tokens[i]) & mask;
+
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            slots[slot] = i + 1;
+        }
+
+        this.tokens = tokens;
+        this.slots = slots;
+        this.map = null;
+        this.nextIndex = tokens.length;
         this.locked = true;
     }
 
+    protected boolean isDistinct() {
+        for (int i = 0; i < this.tokens.length; i++) {
+            if (this.indexOf(this.tokens[i]) != i) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    protected static int hash(final String token) {
+        // Spreads the bits of String.hashCode over the table.
+        final int hash = token.hashCode() * 0x9e3779b9;
+
+        return hash ^ (hash >>> 16);
+    }
+
     public String getToken(final long index) {
+        if (this.locked) {
+            return (index >= 0 && index < this.tokens.length) ? this.tokens[(int) index]
+                    : null;
+        }
+
         return this.map.get(index);
     }
 
     public int size() {
-        return this.map.size();
+        return this.locked ? this.tokens.length : this.map.size();
     }
 
     public boolean isLocked() {
@@ -71,7 +203,87 @@ public class Alphabet implements Serializable {
 
     @Override
     public String toString() {
-        return this.map.toString();
+        if (!this.locked) {
+            return this.map.toString();
+        }
+
+        final StringBuilder builder = new StringBuilder();
+        builder.append("{");
+
+        for (int i = 0; i < this.tokens.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+
+            builder.append(i).append("=").append(this.tokens[i]);
+        }
+
+        builder.append("}");
+
+        return builder.toString();
+    }
+
+    private void writeObject(final ObjectOutputStream output)
+            throws IOException {
+        output.writeBoolean(this.locked);
+        output.writeInt(this.size());
+
+        if (this.locked) {
+            for (final String token : this.tokens) {
+                writeToken(output, token);
+            }
+        } else {
+            output.writeLong(this.nextIndex);
+
+            for (final Map.Entry<Long, String> entry : this.map.entrySet()) {
+                output.writeLong(entry.getKey());
+                writeToken(output, entry.getValue());
+            }
+        }
+    }
+
+    private void readObject(final ObjectInputStream input) throws IOException {
+        final boolean locked = input.readBoolean();
+        final int size = input.readInt();
+
+        if (locked) {
+            final String[] tokens = new String[size];
+
+            for (int i = 0; i < size; i++) {
+                tokens[i] = readToken(input);
+            }
+
+            this.freeze(tokens);
+        } else {
+            this.map = HashBiMap.create(size);
+            this.nextIndex = input.readLong();
+
+            for (int i = 0; i < size; i++) {
+                final long index = input.readLong();
+
+                this.map.put(index, readToken(input));
+            }
+        }
+    }
+
+    /**
+     * Writes the length of the encoded token followed by its bytes, as
+     * writeUTF cannot write tokens of more than 64KB.
+     */
+    protected static void writeToken(final ObjectOutputStream output,
+            final String token) throws IOException {
+        final byte[] bytes = token.getBytes(UTF8);
+
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    protected static String readToken(final ObjectInputStream input)
+            throws IOException {
+        final byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+
+        return new String(bytes, UTF8);
     }
 
 }
@@ -0,0 +1,161 @@
+package be.stophr.ml.classification;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.crunch.CrunchRuntimeException;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.Pipeline;
+import org.apache.crunch.PipelineResult;
+import org.apache.crunch.Target;
+import org.apache.crunch.io.From;
+import org.apache.crunch.io.To;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Checkpoints of the intermediate labels of the Adsorption algorithm.
+ *
+ * Every interval iterations the labels (and the convergence table gathered so
+ * far) are written to sequence files and read back, after which nothing
+ * refers to the earlier iterations anymore. Hence every plan submitted to the
+ * cluster spans at most interval iterations, and an interrupted run can be
+ * resumed from the latest checkpoint.
+ *
+ * A checkpoint is only considered once its pipeline has succeeded, which is
+ * marked by an empty file in its directory.
+ *
+ * @author Christophe Van Gysel
+ */
+public class Checkpoints {
+
+    protected static final Pattern NAME_PATTERN = Pattern
+            .compile("iteration-(\\d+)");
+
+    protected static final String LABELS = "labels";
+    protected static final String CONVERGENCE = "convergence";
+    protected static final String COMPLETE = "_COMPLETE";
+
+    protected final Path directory;
+    protected final int interval;
+
+    public Checkpoints(final String directory, final int interval) {
+        assert directory != null;
+        assert interval >= 1;
+
+        this.directory = new Path(directory);
+        this.interval = interval;
+    }
+
+    public int getInterval() {
+        return this.interval;
+    }
+
+    public boolean isCheckpointIteration(final int iteration) {
+        return iteration % this.interval == 0;
+    }
+
+    public Path getPath(final int iteration) {
+        return new Path(this.directory, String.format("iteration-%05d",
+                iteration));
+    }
+
+    /**
+     * Returns the iteration of the latest complete checkpoint, or -1 if there
+     * is none.
+     */
+    public int findLatest(final Configuration conf) {
+        try {
+            final FileSystem fs = this.directory.getFileSystem(conf);
+
+            if (!fs.exists(this.directory)) {
+                return -1;
+            }
+
+            int latest = -1;
+
+            for (final FileStatus status : fs.listStatus(this.directory)) {
+                final Matcher matcher = NAME_PATTERN.matcher(status.getPath()
+                        .getName());
+
+                if (matcher.matches()
+                        && fs.exists(new Path(status.getPath(), COMPLETE))) {
+                    latest = Math.max(latest,
+                            Integer.parseInt(matcher.group(1)));
+                }
+            }
+
+            return latest;
+        } catch (IOException e) {
+            throw new CrunchRuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes the labels and the convergence table (which may be null) of the
+     * given iteration, runs the pipeline and returns the tables as read from
+     * the checkpoint.
+     */
+    public <LabelT> Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> write(
+            final int iteration, final PTable<Long, LabelT> labels,
+            final PTable<Integer, Pair<Long, Double>> convergence,
+            final PType<LabelT> labelType) {
+        final Pipeline pipeline = labels.getPipeline();
+        final Path path = this.getPath(iteration);
+
+        labels.write(To.sequenceFile(new Path(path, LABELS)),
+                Target.WriteMode.OVERWRITE);
+
+        if (convergence != null) {
+            convergence.write(To.sequenceFile(new Path(path, CONVERGENCE)),
+                    Target.WriteMode.OVERWRITE);
+        }
+
+        final PipelineResult result = pipeline.run();
+
+        if (!result.succeeded()) {
+            throw new CrunchRuntimeException("Checkpoint of iteration "
+                    + iteration + " failed.");
+        }
+
+        try {
+            path.getFileSystem(pipeline.getConfiguration())
+                    .create(new Path(path, COMPLETE)).close();
+        } catch (IOException e) {
+            throw new CrunchRuntimeException(e);
+        }
+
+        return this.read(pipeline, iteration, labelType);
+    }
+
+    public <LabelT> Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> read(
+            final Pipeline pipeline, final int iteration,
+            final PType<LabelT> labelType) {
+        final Path path = this.getPath(iteration);
+
+        final PTable<Long, LabelT> labels = pipeline.read(From.sequenceFile(
+                new Path(path, LABELS), Writables.longs(), labelType));
+
+        try {
+            final Path convergencePath = new Path(path, CONVERGENCE);
+
+            final PTable<Integer, Pair<Long, Double>> convergence = convergencePath
+                    .getFileSystem(pipeline.getConfiguration()).exists(
+                            convergencePath) ? pipeline.read(From
+                    .sequenceFile(convergencePath, Writables.ints(), Writables
+                            .pairs(Writables.longs(), Writables.doubles())))
+                    : null;
+
+            return Pair.of(labels, convergence);
+        } catch (IOException e) {
+            throw new CrunchRuntimeException(e);
+        }
+    }
+
+}
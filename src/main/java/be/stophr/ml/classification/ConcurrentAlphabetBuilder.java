@@ -0,0 +1,111 @@
+package be.stophr.ml.classification;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe counterpart of an unlocked Alphabet, for reading tokens with
+ * several threads at once. Every distinct token receives a single
+ * identifier, but the identifiers depend on the order in which the threads
+ * present the tokens.
+ *
+ * No lock is taken: the thread that inserts a token into the map draws its
+ * identifier from a counter afterwards. Only the inserting threads draw
+ * identifiers, hence they are contiguous. If an inserting thread dies before
+ * its identifier is drawn, get and build fail instead of waiting for it.
+ *
+ * @author Christophe Van Gysel
+ */
+public class ConcurrentAlphabetBuilder {
+
+    /**
+     * Time a thread waits for the identifier of a token inserted by another
+     * thread, which only fails to draw it if it died in between.
+     */
+    protected static final long MAX_WAIT_NANOS = 1000000000L;
+
+    protected final ConcurrentMap<String, AtomicLong> map;
+    protected final AtomicLong nextIndex = new AtomicLong();
+
+    public ConcurrentAlphabetBuilder() {
+        this(16, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ConcurrentAlphabetBuilder(final int expectedSize,
+            final int concurrency) {
+        this.map = new ConcurrentHashMap<String, AtomicLong>(expectedSize,
+                0.75f, concurrency);
+    }
+
+    /**
+     * Returns the identifier of the given token, which is added if needed.
+     */
+    public long get(final String token) {
+        AtomicLong index = this.map.get(token);
+
+        if (index == null) {
+            final AtomicLong created = new AtomicLong(-1L);
+            index = this.map.putIfAbsent(token, created);
+
+            if (index == null) {
+                created.set(this.nextIndex.getAndIncrement());
+
+                return created.get();
+            }
+        }
+
+        long value;
+        long deadline = 0L;
+
+        // Another thread inserted the token, but may not have drawn its
+        // identifier yet. It only has to draw it, unless it died.
+        while ((value = index.get()) < 0L) {
+            if (deadline == 0L) {
+                deadline = System.nanoTime() + MAX_WAIT_NANOS;
+            } else if (System.nanoTime() - deadline > 0L) {
+                throw new IllegalStateException("No identifier was assigned to "
+                        + token + ".");
+            }
+
+            Thread.yield();
+        }
+
+        return value;
+    }
+
+    public int size() {
+        return this.map.size();
+    }
+
+    /**
+     * Returns the locked alphabet holding the tokens added so far. No tokens
+     * may be added concurrently. Throws an IllegalStateException if a token
+     * or an identifier was not assigned.
+     */
+    public Alphabet build() {
+        final String[] tokens = new String[(int) this.nextIndex.get()];
+
+        for (final Map.Entry<String, AtomicLong> entry : this.map.entrySet()) {
+            final long index = entry.getValue().get();
+
+            if (index < 0L) {
+                throw new IllegalStateException("No identifier was assigned to "
+                        + entry.getKey() + ".");
+            }
+
+            tokens[(int) index] = entry.getKey();
+        }
+
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i] == null) {
+                throw new IllegalStateException("No token was assigned to "
+                        + i + ".");
+            }
+        }
+
+        return Alphabet.fromTokens(tokens);
+    }
+
+}
@@ -0,0 +1,161 @@
+package be.stophr.ml.classification;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Mergeable summary of the distances between the labels of two consecutive
+ * iterations: the number of nodes compared, the number of those that have not
+ * converged yet (i.e. whose distance exceeds epsilon), the largest and the
+ * mean distance and a histogram of the distances in decades.
+ *
+ * Bin i of the histogram holds the distances in [10^(i - numBins), 10^(i -
+ * numBins + 1)), except for the first and the last bin, which also hold the
+ * smaller and the larger distances respectively.
+ *
+ * @author Christophe Van Gysel
+ */
+public class ConvergenceSummary implements Writable {
+
+    protected double epsilon;
+    protected int numBins;
+
+    protected long count;
+    protected long unconverged;
+
+    protected double max;
+    protected double sum;
+
+    protected long[] histogram;
+
+    public ConvergenceSummary() {
+    }
+
+    public ConvergenceSummary(final double epsilon, final int numBins) {
+        assert epsilon >= 0.0;
+        assert numBins >= 1;
+
+        this.epsilon = epsilon;
+        this.numBins = numBins;
+
+        this.histogram = new long[numBins];
+    }
+
+    public void add(final double distance) {
+        assert distance >= 0.0;
+
+        this.count++;
+
+        if (distance > this.epsilon) {
+            this.unconverged++;
+        }
+
+        this.max = Math.max(this.max, distance);
+        this.sum += distance;
+
+        this.histogram[this.getBin(distance)]++;
+    }
+
+    public void merge(final ConvergenceSummary other) {
+        assert this.epsilon == other.epsilon;
+        assert this.numBins == other.numBins;
+
+        this.count += other.count;
+        this.unconverged += other.unconverged;
+
+        this.max = Math.max(this.max, other.max);
+        this.sum += other.sum;
+
+        for (int i = 0; i < this.numBins; i++) {
+            this.histogram[i] += other.histogram[i];
+        }
+    }
+
+    protected int getBin(final double distance) {
+        if (distance <= 0.0) {
+            return 0;
+        }
+
+        final int bin = (int) Math.floor(Math.log10(distance)) + this.numBins;
+
+        return Math.max(0, Math.min(bin, this.numBins - 1));
+    }
+
+    /**
+     * Lower bound of the given bin, which is zero for the first bin.
+     */
+    public double getBinLowerBound(final int bin) {
+        assert bin >= 0 && bin < this.numBins;
+
+        return (bin == 0) ? 0.0 : Math.pow(10.0, bin - this.numBins);
+    }
+
+    public double getEpsilon() {
+        return this.epsilon;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public long getUnconverged() {
+        return this.unconverged;
+    }
+
+    public double getMax() {
+        return this.max;
+    }
+
+    public double getMean() {
+        return this.count > 0 ? this.sum / this.count : 0.0;
+    }
+
+    public long[] getHistogram() {
+        return this.histogram.clone();
+    }
+
+    public void readFields(DataInput input) throws IOException {
+        this.epsilon = input.readDouble();
+        this.numBins = input.readInt();
+
+        this.count = input.readLong();
+        this.unconverged = input.readLong();
+
+        this.max = input.readDouble();
+        this.sum = input.readDouble();
+
+        this.histogram = new long[this.numBins];
+
+        for (int i = 0; i < this.numBins; i++) {
+            this.histogram[i] = input.readLong();
+        }
+    }
+
+    public void write(DataOutput output) throws IOException {
+        output.writeDouble(this.epsilon);
+        output.writeInt(this.numBins);
+
+        output.writeLong(this.count);
+        output.writeLong(this.unconverged);
+
+        output.writeDouble(this.max);
+        output.writeDouble(this.sum);
+
+        for (final long value : this.histogram) {
+            output.writeLong(value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "ConvergenceSummary(count=%d, unconverged=%d, max=%.6f, mean=%.6f, histogram=%s)",
+                this.count, this.unconverged, this.max, this.getMean(),
+                Arrays.toString(this.histogram));
+    }
+
+}
@@ -0,0 +1,413 @@
+package be.stophr.ml.classification;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.lib.Join;
+import org.apache.crunch.lib.join.JoinType;
+import org.apache.crunch.lib.join.MapsideJoinStrategy;
+import org.apache.crunch.types.PTableType;
+import org.apache.crunch.types.writable.Writables;
+
+import be.stophr.ml.classification.crunch.AggregateLabelsOp;
+import be.stophr.ml.classification.crunch.ConvergenceSummaryOp;
+import be.stophr.ml.classification.crunch.SkewedAggregateOp;
+import be.stophr.ml.classification.graph.Adjacency;
+import be.stophr.ml.classification.graph.crunch.AdjacencyOp;
+import be.stophr.ml.classification.labels.Label;
+import be.stophr.ml.classification.labels.Label.NormType;
+
+/**
+ * Frontier-based (delta) variant of the Adsorption algorithm.
+ *
+ * Instead of recomputing the label of every node from scratch, every node
+ * keeps the (unnormalized) sum of its incoming contributions, along with its
+ * Kahan compensation, together with the label it has last sent to its
+ * neighbours. Only the nodes in the frontier, i.e. those whose label moved
+ * more than the tolerance since they last sent it, propagate the difference
+ * along their edges. The targets add the differences to their sums; nodes
+ * that receive nothing keep their sum and therefore their label.
+ *
+ * The edges are packed per source (see AdjacencyOp) and the state holds
+ * every node, such that an iteration only joins the frontier with the
+ * adjacency of its sources and the summed differences with the state of
+ * their targets. Whenever the frontier (or the summed differences) holds at
+ * most maxInMemory records, it is loaded into the memory of every task and
+ * joined in the map phase, in which case neither the edges nor the state
+ * are shuffled. Otherwise it is joined in the reduce phase. Either way, the
+ * state is materialized in every iteration.
+ *
+ * As in GraphAdsorption, the shadow nodes send the seed labels as given in
+ * the first iteration. With a tolerance of zero the results are those of
+ * GraphAdsorption, up to floating point rounding. A positive tolerance
+ * trades accuracy for fewer messages: small differences are not lost, but
+ * held back until they have accumulated beyond the tolerance.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public class DeltaGraphAdsorption<LabelT extends Label> extends
+        AbstractAdsorption<LabelT> {
+
+    public static final long DEFAULT_MAX_IN_MEMORY = 1L << 20;
+
+    protected final double tolerance;
+    protected final long maxInMemory;
+
+    public DeltaGraphAdsorption(final Class<LabelT> labelClass,
+            final Label.Factory labelFactory, final double tolerance) {
+        this(labelClass, labelFactory, tolerance, DEFAULT_MAX_IN_MEMORY);
+    }
+
+    public DeltaGraphAdsorption(final Class<LabelT> labelClass,
+            final Label.Factory labelFactory, final double tolerance,
+            final long maxInMemory) {
+        super(labelClass, labelFactory, ShadowNodes.negated());
+
+        assert tolerance >= 0.0;
+        assert maxInMemory >= 0;
+
+        this.tolerance = tolerance;
+        this.maxInMemory = maxInMemory;
+    }
+
+    @Override
+    public Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> run(
+            final PTable<Long, Pair<Long, Double>> initialWeights,
+            final PTable<Long, LabelT> initialLabels,
+            final Double updateConstant,
+            final StoppingCriterion criterion) {
+        assert initialWeights.getTypeFamily() != null;
+        assert initialLabels.getTypeFamily() != null;
+        assert updateConstant > 0;
+        assert criterion != null;
+
+        final PTable<Long, Pair<Long, Double>> weights = this
+                .preprocessWeights(initialWeights, initialLabels,
+                        updateConstant);
+        final PTable<Long, Adjacency> adjacency = new AdjacencyOp(
+                Adjacency.WeightEncoding.DOUBLE).pack(weights);
+
+        final PTable<Long, LabelT> seeds = this
+                .preprocessLabels(initialLabels);
+
+        final AggregateLabelsOp<LabelT> aggregateLabels = new AggregateLabelsOp<LabelT>(
+                this.labelClass, this.labelFactory);
+        final ConvergenceSummaryOp<LabelT> summarizeConvergence = new ConvergenceSummaryOp<LabelT>(
+                criterion.getEpsilon());
+
+        PTable<Integer, Pair<Long, Double>> convergence = null;
+
+        PTable<Long, Pair<Pair<LabelT, LabelT>, LabelT>> state = this
+                .initializeState(weights, seeds);
+        PTable<Long, LabelT> labels = this.normalizeState(state);
+
+        for (int i = 1; i <= criterion.getMaxIterations(); i++) {
+            // The shadow nodes send the seed labels as given first.
+            final PTable<Long, LabelT> deltas = (i == 1) ? seeds : this
+                    .computeFrontier(state);
+
+            // The following iterations start from the materialized state.
+            this.runPipeline(i, state, deltas);
+
+            final PTable<Long, LabelT> deltaSums = aggregateLabels
+                    .sumWeighted(this.sendAdjacency(
+                            this.joinFrontier(adjacency, deltas, false))
+                            .groupByKey());
+
+            this.runPipeline(i, deltaSums);
+
+            final PTable<Long, Pair<Pair<Pair<LabelT, LabelT>, LabelT>, LabelT>> joined = this
+                    .joinFrontier(state, deltaSums, true);
+
+            state = this.updateState(joined, i > 1);
+            labels = this.normalizeState(state);
+
+            if (criterion.isCheckIteration(i)) {
+                final PTable<Long, Double> distances = this
+                        .computeDistances(joined);
+                final PTable<Integer, Pair<Long, Double>> intermediateConvergence = this
+                        .filterUnconverged(distances, i,
+                                criterion.getEpsilon());
+
+                if (convergence == null) {
+                    convergence = intermediateConvergence;
+                } else {
+                    convergence = convergence.union(intermediateConvergence);
+                }
+
+                if (criterion.canStopEarly()) {
+                    final PCollection<ConvergenceSummary> summaries = summarizeConvergence
+                            .summarize(distances.values());
+
+                    // The next iterations start from the materialized state.
+                    this.runPipeline(i, state, intermediateConvergence,
+                            summaries);
+
+                    final ConvergenceSummary summary = summarizeConvergence
+                            .merge(summaries);
+
+                    if (criterion.isConverged(summary.getUnconverged(),
+                            summary.getCount())) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        return Pair.of(labels, convergence);
+    }
+
+    /**
+     * Returns the (empty) state of every node that can receive a label, i.e.
+     * of every target, including the shadow nodes through their self-loops.
+     * The shadow nodes send their seed labels in the first iteration, hence
+     * these are recorded as the labels they have last sent. Later iterations
+     * then only send the difference with the normalized seed labels, as do
+     * the shadow nodes of GraphAdsorption.
+     */
+    protected PTable<Long, Pair<Pair<LabelT, LabelT>, LabelT>> initializeState(
+            final PTable<Long, Pair<Long, Double>> weights,
+            final PTable<Long, LabelT> seeds) {
+        return this.joinFrontier(SkewedAggregateOp.inDegrees(weights), seeds,
+                true).mapValues("InitializeState",
+                new MapFn<Pair<Long, LabelT>, Pair<Pair<LabelT, LabelT>, LabelT>>() {
+
+                    @Override
+                    public Pair<Pair<LabelT, LabelT>, LabelT> map(
+                            Pair<Long, LabelT> data) {
+                        return Pair.of(Pair.of((LabelT) null, (LabelT) null),
+                                data.second());
+                    }
+
+                }, this.getStateType().getValueType());
+    }
+
+    /**
+     * Joins the given table with the right one, which must be materialized.
+     * Unless it holds more than maxInMemory records, the right table is
+     * loaded into the memory of every task and joined in the map phase.
+     */
+    protected <U, V> PTable<Long, Pair<U, V>> joinFrontier(
+            final PTable<Long, U> left, final PTable<Long, V> right,
+            final boolean outer) {
+        if (right.length().getValue() <= this.maxInMemory) {
+            return new MapsideJoinStrategy<Long, U, V>().join(left, right,
+                    outer ? JoinType.LEFT_OUTER_JOIN : JoinType.INNER_JOIN);
+        } else if (outer) {
+            return Join.leftJoin(left, right);
+        } else {
+            return Join.join(left, right);
+        }
+    }
+
+    /**
+     * Emits the difference between the current label and the label last sent
+     * for every node in the frontier.
+     */
+    protected PTable<Long, LabelT> computeFrontier(
+            final PTable<Long, Pair<Pair<LabelT, LabelT>, LabelT>> state) {
+        return state
+                .parallelDo(
+                        "ComputeFrontier",
+                        new DoFn<Pair<Long, Pair<Pair<LabelT, LabelT>, LabelT>>, Pair<Long, LabelT>>() {
+
+                            @Override
+                            public void process(
+                                    Pair<Long, Pair<Pair<LabelT, LabelT>, LabelT>> instance,
+                                    Emitter<Pair<Long, LabelT>> emitter) {
+                                final Label sum = instance.second().first()
+                                        .first();
+                                final Label emitted = instance.second()
+                                        .second();
+
+                                final Label label = (sum != null) ? sum
+                                        .normalize(NormType.MANHATTAN) : null;
+
+                                if (DeltaGraphAdsorption.this.isChanged(label,
+                                        emitted)) {
+                                    final Label delta;
+
+                                    if (emitted == null) {
+                                        delta = label;
+                                    } else if (label == null) {
+                                        delta = emitted.multiply(-1.0);
+                                    } else {
+                                        delta = label.diff(emitted);
+                                    }
+
+                                    emitter.emit(Pair.of(instance.first(),
+                                            DeltaGraphAdsorption.this.labelClass
+                                                    .cast(delta)));
+                                }
+                            }
+
+                        }, Writables.tableOf(Writables.longs(),
+                                this.getLabelType()));
+    }
+
+    /**
+     * Adds the incoming differences, if any, to the sums using Kahan
+     * summation. If the frontier was computed from the state, the labels it
+     * sent are recorded as well.
+     */
+    protected PTable<Long, Pair<Pair<LabelT, LabelT>, LabelT>> updateState(
+            final PTable<Long, Pair<Pair<Pair<LabelT, LabelT>, LabelT>, LabelT>> joined,
+            final boolean sent) {
+        return joined
+                .mapValues(
+                        "UpdateState",
+                        new MapFn<Pair<Pair<Pair<LabelT, LabelT>, LabelT>, LabelT>, Pair<Pair<LabelT, LabelT>, LabelT>>() {
+
+                            @Override
+                            public Pair<Pair<LabelT, LabelT>, LabelT> map(
+                                    Pair<Pair<Pair<LabelT, LabelT>, LabelT>, LabelT> data) {
+                                final DeltaGraphAdsorption<LabelT> op = DeltaGraphAdsorption.this;
+
+                                final LabelT sum = data.first().first()
+                                        .first();
+                                final LabelT compensation = data.first()
+                                        .first().second();
+                                LabelT emitted = data.first().second();
+
+                                final LabelT deltaSum = data.second();
+
+                                if (sent) {
+                                    final LabelT label = (sum != null) ? op.labelClass
+                                            .cast(sum
+                                                    .normalize(NormType.MANHATTAN))
+                                            : null;
+
+                                    // Same decision as taken in
+                                    // computeFrontier.
+                                    if (op.isChanged(label, emitted)) {
+                                        emitted = label;
+                                    }
+                                }
+
+                                return Pair.of(op.addDelta(sum,
+                                        compensation, deltaSum), emitted);
+                            }
+
+                        }, this.getStateType().getValueType());
+    }
+
+    /**
+     * Returns the euclidean distance between the labels before and after
+     * updateState, for every node labeled after it. Both are derived from
+     * the joined state and differences, hence the labels of consecutive
+     * iterations need not be joined as in AbstractAdsorption.
+     */
+    protected PTable<Long, Double> computeDistances(
+            final PTable<Long, Pair<Pair<Pair<LabelT, LabelT>, LabelT>, LabelT>> joined) {
+        return joined
+                .parallelDo(
+                        "CompareIterations",
+                        new DoFn<Pair<Long, Pair<Pair<Pair<LabelT, LabelT>, LabelT>, LabelT>>, Pair<Long, Double>>() {
+
+                            @Override
+                            public void process(
+                                    Pair<Long, Pair<Pair<Pair<LabelT, LabelT>, LabelT>, LabelT>> instance,
+                                    Emitter<Pair<Long, Double>> emitter) {
+                                final Pair<Pair<Pair<LabelT, LabelT>, LabelT>, LabelT> data = instance
+                                        .second();
+
+                                final LabelT sum = data.first().first()
+                                        .first();
+                                final LabelT next = DeltaGraphAdsorption.this
+                                        .addDelta(sum,
+                                                data.first().first().second(),
+                                                data.second()).first();
+
+                                if (next == null) {
+                                    return;
+                                }
+
+                                // Longest possible distance, unless the node
+                                // had a label before.
+                                final double distance = (sum != null) ? sum
+                                        .normalize(NormType.MANHATTAN)
+                                        .diff(next.normalize(NormType.MANHATTAN))
+                                        .euclideanNorm() : Math.sqrt(2.0);
+
+                                this.increment(AdsorptionCounters.COMPARED_NODES);
+
+                                emitter.emit(Pair.of(instance.first(), distance));
+                            }
+
+                        },
+                        Writables.tableOf(Writables.longs(),
+                                Writables.doubles()));
+    }
+
+    /**
+     * Adds the difference, if any, to the sum using Kahan summation. Returns
+     * the new sum and compensation.
+     */
+    protected Pair<LabelT, LabelT> addDelta(final LabelT sum,
+            final LabelT compensation, final LabelT deltaSum) {
+        if (deltaSum == null) {
+            return Pair.of(sum, compensation);
+        } else if (sum == null) {
+            return Pair.of(deltaSum, (LabelT) null);
+        }
+
+        final Label corrected = (compensation != null) ? deltaSum
+                .diff(compensation) : deltaSum;
+        final Label next = sum.add(corrected);
+
+        return Pair.of(this.labelClass.cast(next),
+                this.labelClass.cast(next.diff(sum).diff(corrected)));
+    }
+
+    protected PTable<Long, LabelT> normalizeState(
+            final PTable<Long, Pair<Pair<LabelT, LabelT>, LabelT>> state) {
+        return state
+                .parallelDo(
+                        "NormalizeLabels",
+                        new DoFn<Pair<Long, Pair<Pair<LabelT, LabelT>, LabelT>>, Pair<Long, LabelT>>() {
+
+                            @Override
+                            public void process(
+                                    Pair<Long, Pair<Pair<LabelT, LabelT>, LabelT>> instance,
+                                    Emitter<Pair<Long, LabelT>> emitter) {
+                                final LabelT sum = instance.second().first()
+                                        .first();
+
+                                if (sum != null) {
+                                    emitter.emit(Pair.of(instance.first(),
+                                            DeltaGraphAdsorption.this.labelClass
+                                                    .cast(sum
+                                                            .normalize(NormType.MANHATTAN))));
+                                }
+                            }
+
+                        }, Writables.tableOf(Writables.longs(),
+                                this.getLabelType()));
+    }
+
+    protected boolean isChanged(final Label label, final Label emitted) {
+        if (emitted == null) {
+            return label != null;
+        } else if (label == null) {
+            return true;
+        } else {
+            return label.diff(emitted).euclideanNorm() > this.tolerance;
+        }
+    }
+
+    /**
+     * The state of a node: its sum and Kahan compensation, and the label it
+     * has last sent.
+     */
+    protected PTableType<Long, Pair<Pair<LabelT, LabelT>, LabelT>> getStateType() {
+        return Writables.tableOf(
+                Writables.longs(),
+                Writables.pairs(Writables.pairs(this.getLabelType(),
+                        this.getLabelType()), this.getLabelType()));
+    }
+
+}
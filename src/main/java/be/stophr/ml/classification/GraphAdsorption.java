@@ -1,20 +1,26 @@
 package be.stophr.ml.classification;
 
-import java.io.Serializable;
-import java.util.ArrayList;
-
 import org.apache.crunch.DoFn;
 import org.apache.crunch.Emitter;
 import org.apache.crunch.FilterFn;
 import org.apache.crunch.MapFn;
+import org.apache.crunch.PCollection;
 import org.apache.crunch.PGroupedTable;
 import org.apache.crunch.PTable;
 import org.apache.crunch.Pair;
+import org.apache.crunch.PipelineResult;
+import org.apache.crunch.impl.mem.MemPipeline;
 import org.apache.crunch.lib.Join;
 import org.apache.crunch.types.writable.Writables;
 
 import be.stophr.ml.classification.crunch.AggregateLabelsOp;
+import be.stophr.ml.classification.crunch.ConvergenceSummaryOp;
+import be.stophr.ml.classification.crunch.SkewedAggregateOp;
+import be.stophr.ml.classification.graph.Adjacency;
+import be.stophr.ml.classification.graph.crunch.AdjacencyOp;
+import be.stophr.ml.classification.graph.crunch.ReachabilityOp;
 import be.stophr.ml.classification.labels.Label;
+import be.stophr.ml.classification.labels.PruningPolicy;
 
 /**
  * Implementation of the Adsorption algorithm by Baluja et al. (2008) using the
@@ -32,126 +38,582 @@ import be.stophr.ml.classification.labels.Label;
  * @author Christophe Van Gysel
  */
 @SuppressWarnings("serial")
-public class GraphAdsorption<LabelT extends Label> implements Serializable {
+public class GraphAdsorption<LabelT extends Label> extends
+        AbstractAdsorption<LabelT> {
+
+    protected final PruningPolicy pruning;
+
+    protected final transient SkewedAggregateOp<LabelT> skewedAggregate;
 
-    protected final Class<LabelT> labelClass;
-    protected final Label.Factory labelFactory;
+    protected final transient AdsorptionListener listener;
+    protected final boolean summaryOnly;
 
     public GraphAdsorption(final Class<LabelT> labelClass,
             final Label.Factory labelFactory) {
-        assert labelClass != null;
-        assert labelFactory != null;
+        this(labelClass, labelFactory, null);
+    }
+
+    /**
+     * After every iteration the labels are pruned according to the given
+     * policy, if not null. This bounds the support of sparse labels when the
+     * number of classes is large.
+     */
+    public GraphAdsorption(final Class<LabelT> labelClass,
+            final Label.Factory labelFactory, final PruningPolicy pruning) {
+        this(labelClass, labelFactory, pruning, ShadowNodes.negated());
+    }
+
+    /**
+     * The shadow nodes determine the identifiers of the nodes injecting the
+     * seed labels; the default negates the identifier of the seed. Use
+     * ShadowNodes.offset when the identifiers were made dense (see
+     * DenseIdsOp), such that 0 is a valid identifier as well.
+     */
+    public GraphAdsorption(final Class<LabelT> labelClass,
+            final Label.Factory labelFactory, final PruningPolicy pruning,
+            final ShadowNodes shadowNodes) {
+        this(labelClass, labelFactory, pruning, shadowNodes, null, null,
+                false);
+    }
 
-        this.labelClass = labelClass;
-        this.labelFactory = labelFactory;
+    /**
+     * If not null, skewedAggregate pre-aggregates the labels sent to its hot
+     * keys (see SkewedAggregateOp), which leaves the resulting labels equal
+     * up to rounding.
+     *
+     * If not null, every iteration is reported to the listener. The pipeline
+     * is then run at the end of every iteration, such that the counters of
+     * every iteration can be told apart.
+     *
+     * If summaryOnly is set, the unconverged nodes are not emitted, in which
+     * case the convergence table of the result is null. Convergence is then
+     * only summarized (see ConvergenceSummary): for early stopping and, if a
+     * listener is given, in the report of every iteration in which it is
+     * checked.
+     */
+    public GraphAdsorption(final Class<LabelT> labelClass,
+            final Label.Factory labelFactory, final PruningPolicy pruning,
+            final ShadowNodes shadowNodes,
+            final SkewedAggregateOp<LabelT> skewedAggregate,
+            final AdsorptionListener listener, final boolean summaryOnly) {
+        super(labelClass, labelFactory, shadowNodes);
+
+        this.pruning = pruning;
+        this.skewedAggregate = skewedAggregate;
+        this.listener = listener;
+        this.summaryOnly = summaryOnly;
     }
 
+    /**
+     * Runs the algorithm until the given criterion is met. Whenever the
+     * criterion can stop the iterations early, the pipeline is run at every
+     * check in order to count the unconverged nodes. The labels are then
+     * materialized, such that every run starts from the labels of the
+     * previous check rather than from the inputs.
+     */
     public Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> run(
             final PTable<Long, Pair<Long, Double>> initialWeights,
             final PTable<Long, LabelT> initialLabels,
             final Double updateConstant,
-            final int iterations) {
+            final StoppingCriterion criterion) {
+        return this.run(initialWeights, initialLabels, updateConstant,
+                criterion, null);
+    }
+
+    /**
+     * Same as above, but the labels are checkpointed (unless checkpoints is
+     * null) and the iterations resume from the latest checkpoint, if any.
+     */
+    public Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> run(
+            final PTable<Long, Pair<Long, Double>> initialWeights,
+            final PTable<Long, LabelT> initialLabels,
+            final Double updateConstant,
+            final StoppingCriterion criterion, final Checkpoints checkpoints) {
         assert initialWeights.getTypeFamily() != null;
         assert initialLabels.getTypeFamily() != null;
         assert updateConstant > 0;
-        assert iterations >= 1;
+        assert criterion != null;
 
         final PTable<Long, Pair<Long, Double>> weights = this
                 .preprocessWeights(initialWeights, initialLabels,
                         updateConstant);
 
+        return this.iterate(this.preprocessLabels(initialLabels),
+                new Iteration<LabelT>() {
+
+                    public PTable<Long, Pair<LabelT, Double>> compute(
+                            final int iteration,
+                            final PTable<Long, LabelT> labels) {
+                        return GraphAdsorption.this.sendLabels(Join.leftJoin(
+                                weights, labels));
+                    }
+
+                }, criterion, checkpoints);
+    }
+
+    public Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> runAdjacency(
+            final PTable<Long, Adjacency> initialAdjacency,
+            final PTable<Long, LabelT> initialLabels,
+            final Double updateConstant,
+            final int iterations) {
+        assert iterations >= 1;
+
+        return this.runAdjacency(initialAdjacency, initialLabels,
+                updateConstant, StoppingCriterion.fixed(iterations));
+    }
+
+    /**
+     * Same as run, but reads the edges from the compact adjacency table (see
+     * AdjacencyOp) which holds a single record per source node. Every
+     * iteration then joins the labels with one record per node instead of
+     * one record per edge.
+     */
+    public Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> runAdjacency(
+            final PTable<Long, Adjacency> initialAdjacency,
+            final PTable<Long, LabelT> initialLabels,
+            final Double updateConstant,
+            final StoppingCriterion criterion) {
+        assert initialAdjacency.getTypeFamily() != null;
+        assert initialLabels.getTypeFamily() != null;
+        assert updateConstant > 0;
+        assert criterion != null;
+
+        final PTable<Long, Adjacency> adjacency = this.preprocessAdjacency(
+                initialAdjacency, initialLabels, updateConstant);
+
+        return this.iterate(this.preprocessLabels(initialLabels),
+                new Iteration<LabelT>() {
+
+                    public PTable<Long, Pair<LabelT, Double>> compute(
+                            final int iteration,
+                            final PTable<Long, LabelT> labels) {
+                        // Sources without a label do not propagate anything,
+                        // hence an inner join suffices.
+                        return GraphAdsorption.this.sendAdjacency(Join.join(
+                                adjacency, labels));
+                    }
+
+                }, criterion, null);
+    }
+
+    public Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> runInjected(
+            final PTable<Long, Pair<Long, Double>> initialWeights,
+            final PTable<Long, LabelT> initialLabels,
+            final Double updateConstant,
+            final int iterations) {
+        assert iterations >= 1;
+
+        return this.runInjected(initialWeights, initialLabels,
+                updateConstant, StoppingCriterion.fixed(iterations), null);
+    }
+
+    /**
+     * Same as run, but without shadow nodes in the graph: the contribution
+     * of the shadow node of every seed, updateConstant times its label, is
+     * added to the messages of the seed directly. Hence the seeds are never
+     * joined with the edges and no shadow edges are shuffled. The labels of
+     * the shadow nodes are added to the result, which then equals that of
+     * run.
+     *
+     * The seeds are used in every iteration, hence they must be the same
+     * when resuming from a checkpoint.
+     */
+    public Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> runInjected(
+            final PTable<Long, Pair<Long, Double>> initialWeights,
+            final PTable<Long, LabelT> initialLabels,
+            final Double updateConstant,
+            final StoppingCriterion criterion, final Checkpoints checkpoints) {
+        return this.runInjected(initialWeights, initialLabels,
+                updateConstant, criterion, checkpoints, null);
+    }
+
+    /**
+     * Same as runInjected, but the edges are pruned beforehand (see
+     * ReachabilityOp): the edges of nodes that cannot be reached from any
+     * seed within the maximum number of iterations are dropped, and the
+     * edges of a node at distance d from the nearest seed only take part
+     * from iteration d + 2 onwards, when its label can be non-null. The
+     * results are those of runInjected.
+     */
+    public Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> runReachable(
+            final PTable<Long, Pair<Long, Double>> initialWeights,
+            final PTable<Long, LabelT> initialLabels,
+            final Double updateConstant,
+            final StoppingCriterion criterion, final Checkpoints checkpoints) {
+        // Edges of nodes beyond this level never carry a label.
+        final int maxLevel = Math.max(criterion.getMaxIterations() - 2, 0);
+
+        return this.runInjected(initialWeights, initialLabels,
+                updateConstant, criterion, checkpoints, ReachabilityOp
+                        .annotate(initialWeights, ReachabilityOp.levels(
+                                initialWeights, initialLabels, maxLevel)));
+    }
+
+    /**
+     * If edges is not null, the edges annotated with the level of their
+     * source are used instead of the weights, and only those whose source
+     * can have a label in the given iteration.
+     */
+    protected Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> runInjected(
+            final PTable<Long, Pair<Long, Double>> initialWeights,
+            final PTable<Long, LabelT> initialLabels,
+            final Double updateConstant,
+            final StoppingCriterion criterion, final Checkpoints checkpoints,
+            final PTable<Long, Pair<Pair<Long, Double>, Integer>> edges) {
+        assert initialWeights.getTypeFamily() != null;
+        assert initialLabels.getTypeFamily() != null;
+        assert updateConstant > 0;
+        assert criterion != null;
+
+        final AggregateLabelsOp<LabelT> aggregateLabels = new AggregateLabelsOp<LabelT>(
+                this.labelClass, this.labelFactory, this.pruning);
+
+        // After the first iteration, the shadow nodes hold the normalized
+        // seed labels because of their self-loops.
+        final PTable<Long, LabelT> seeds = aggregateLabels
+                .normalize(initialLabels);
+
+        final PTable<Long, Pair<LabelT, Double>> initialInjections = this
+                .injectSeeds(initialLabels, updateConstant);
+        final PTable<Long, Pair<LabelT, Double>> injections = this
+                .injectSeeds(seeds, updateConstant);
+
+        // The first iteration starts without labels, as the seed labels
+        // reside on the shadow nodes.
+        final PTable<Long, LabelT> noLabels = initialLabels.filter(
+                "NoLabels", new FilterFn<Pair<Long, LabelT>>() {
+
+                    @Override
+                    public boolean accept(Pair<Long, LabelT> instance) {
+                        return false;
+                    }
+
+                });
+
+        final Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> result = this
+                .iterate(noLabels, new Iteration<LabelT>() {
+
+                    public PTable<Long, Pair<LabelT, Double>> compute(
+                            final int iteration,
+                            final PTable<Long, LabelT> labels) {
+                        // Sources labeled in the previous iteration have
+                        // at most level iteration - 2.
+                        final PTable<Long, Pair<Long, Double>> weights = (edges != null) ? ReachabilityOp
+                                .activeEdges(edges, iteration - 2)
+                                : initialWeights;
+
+                        return GraphAdsorption.this.sendLabels(
+                                Join.join(weights, labels)).union(
+                                iteration == 1 ? initialInjections
+                                        : injections);
+                    }
+
+                }, criterion, checkpoints);
+
+        return Pair.of(result.first().union(this.preprocessLabels(seeds)),
+                result.second());
+    }
+
+    /**
+     * Returns the message of the shadow node of every seed to the seed.
+     */
+    protected PTable<Long, Pair<LabelT, Double>> injectSeeds(
+            final PTable<Long, LabelT> labels, final double updateConstant) {
+        return labels.mapValues("InjectSeeds",
+                new MapFn<LabelT, Pair<LabelT, Double>>() {
+
+                    @Override
+                    public Pair<LabelT, Double> map(LabelT label) {
+                        this.increment(AdsorptionCounters.SEEDS_INJECTED);
+
+                        return Pair.of(label, updateConstant);
+                    }
+
+                }, Writables.pairs(this.getLabelType(), Writables.doubles()));
+    }
+
+    /**
+     * Computes the weighted labels sent to every node in the given iteration
+     * from the labels of the previous one. Their weighted average is the
+     * label of the node (see iterate).
+     */
+    protected static interface Iteration<LabelT extends Label> {
+
+        PTable<Long, Pair<LabelT, Double>> compute(int iteration,
+                PTable<Long, LabelT> labels);
+
+    }
+
+    /**
+     * Iterates until the criterion is met. Only the labels of the current and
+     * the previous iteration are referenced.
+     *
+     * In the iterations in which convergence is checked, the previous label
+     * of every node is sent to the node along with its messages, such that
+     * the distance between both is computed by the aggregation (see
+     * AggregateLabelsOp.runTracked) rather than by joining the labels of both
+     * iterations. Early stopping relies on a summary of these distances (see
+     * ConvergenceSummaryOp) instead of counting the unconverged nodes.
+     */
+    protected Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> iterate(
+            final PTable<Long, LabelT> initialLabels,
+            final Iteration<LabelT> iteration,
+            final StoppingCriterion criterion, final Checkpoints checkpoints) {
+        final AggregateLabelsOp<LabelT> aggregateLabels = new AggregateLabelsOp<LabelT>(
+                this.labelClass, this.labelFactory, this.pruning);
+        final ConvergenceSummaryOp<LabelT> summarizeConvergence = new ConvergenceSummaryOp<LabelT>(
+                criterion.getEpsilon());
+
+        PTable<Long, LabelT> labels = initialLabels;
         PTable<Integer, Pair<Long, Double>> convergence = null;
 
-        final ArrayList<PTable<Long, LabelT>> labels = new ArrayList<PTable<Long, LabelT>>(
-                iterations + 1);
+        int first = 1;
+
+        if (checkpoints != null) {
+            final int latest = checkpoints.findLatest(initialLabels
+                    .getPipeline().getConfiguration());
+
+            if (latest >= 0) {
+                final Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> checkpoint = checkpoints
+                        .read(initialLabels.getPipeline(), latest,
+                                this.getLabelType());
+
+                labels = checkpoint.first();
+                convergence = checkpoint.second();
+
+                first = latest + 1;
+            }
+        }
+
+        for (int i = first; i <= criterion.getMaxIterations(); i++) {
+            final long start = System.currentTimeMillis();
+
+            if (this.listener != null) {
+                this.startIteration(i, labels);
+            }
+
+            final PTable<Long, LabelT> previous = labels;
+            PTable<Long, Pair<LabelT, Double>> messages = iteration.compute(
+                    i, previous);
 
-        labels.add(this.preprocessLabels(initialLabels));
+            if (this.skewedAggregate != null) {
+                messages = this.skewedAggregate.presum(messages);
+            }
+
+            PTable<Integer, Pair<Long, Double>> unconverged = null;
+            PCollection<ConvergenceSummary> summaries = null;
+
+            if (criterion.isCheckIteration(i)) {
+                final PTable<Long, Pair<LabelT, Double>> distances = aggregateLabels
+                        .runTracked(messages, previous);
 
-        for (int i = 1; i <= iterations; i++) {
-            final PTable<Long, Pair<Pair<Long, Double>, LabelT>> instances = Join
-                    .leftJoin(weights, labels.get(i - 1));
+                labels = this.dropDistances(distances, criterion.getEpsilon());
 
-            labels.add(this.computeLabels(instances));
+                if (!this.summaryOnly) {
+                    unconverged = this.selectUnconverged(distances, i,
+                            criterion.getEpsilon());
 
-            if (i % 5 == 0) {
-                final PTable<Integer, Pair<Long, Double>> intermediateConvergence = this
-                        .computeConvergence(labels.get(i), labels.get(i - 1),
-                                i, 0.05);
+                    convergence = (convergence == null) ? unconverged
+                            : convergence.union(unconverged);
+                }
 
-                if (convergence == null) {
-                    convergence = intermediateConvergence;
-                } else {
-                    convergence = convergence.union(intermediateConvergence);
+                if (criterion.canStopEarly() || this.listener != null) {
+                    summaries = summarizeConvergence.run(distances);
                 }
+            } else {
+                labels = aggregateLabels.runWeighted(messages.groupByKey());
+            }
+
+            ConvergenceSummary summary = null;
+
+            if (this.listener != null || summaries != null) {
+                summary = this.finishIteration(i, labels, unconverged,
+                        summaries, summarizeConvergence, start);
+            }
+
+            if (summary != null
+                    && criterion.canStopEarly()
+                    && criterion.isConverged(summary.getUnconverged(),
+                            summary.getCount())) {
+                break;
             }
 
-            assert labels.size() - 1 == i;
+            if (checkpoints != null && checkpoints.isCheckpointIteration(i)) {
+                final Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> checkpoint = checkpoints
+                        .write(i, labels, convergence, this.getLabelType());
+
+                labels = checkpoint.first();
+                convergence = checkpoint.second();
+            }
         }
 
-        return Pair.of(labels.get(iterations), convergence);
+        return Pair.of(labels, convergence);
     }
 
-    protected PTable<Long, LabelT> preprocessLabels(
-            final PTable<Long, LabelT> initialLabels) {
-        return initialLabels.mapKeys("MoveToShadowNode",
-                new MapFn<Long, Long>() {
+    protected void startIteration(final int iteration,
+            final PTable<Long, LabelT> labels) {
+        // The in-memory pipeline keeps its counters across runs.
+        if (labels.getPipeline() instanceof MemPipeline) {
+            MemPipeline.clearCounters();
+        }
+
+        this.listener.iterationStarted(iteration);
+    }
+
+    /**
+     * Runs the pipeline in order to compute the labels of the given iteration
+     * (and its unconverged nodes and convergence summary, unless null), and
+     * reports its counters to the listener, if any. Returns the convergence
+     * summary, if any.
+     */
+    protected ConvergenceSummary finishIteration(final int iteration,
+            final PTable<Long, LabelT> labels,
+            final PTable<Integer, Pair<Long, Double>> unconverged,
+            final PCollection<ConvergenceSummary> summaries,
+            final ConvergenceSummaryOp<LabelT> summarizeConvergence,
+            final long start) {
+        final PipelineResult result = this.runPipeline(iteration, labels,
+                unconverged, summaries);
+
+        final ConvergenceSummary summary = (summaries != null) ? summarizeConvergence
+                .merge(summaries) : null;
+
+        if (this.listener != null) {
+            this.listener.iterationFinished(IterationReport.fromResult(
+                    iteration, System.currentTimeMillis() - start, result,
+                    summary));
+        }
+
+        return summary;
+    }
+
+    /**
+     * Returns the labels of runTracked without their distances.
+     */
+    protected PTable<Long, LabelT> dropDistances(
+            final PTable<Long, Pair<LabelT, Double>> distances,
+            final double epsilon) {
+        return distances.mapValues("DropDistances",
+                new MapFn<Pair<LabelT, Double>, LabelT>() {
 
                     @Override
-                    public Long map(Long node) {
-                        assert node > 0;
+                    public LabelT map(Pair<LabelT, Double> label) {
+                        final double distance = label.second();
+
+                        this.increment(AdsorptionCounters.AGGREGATED_NODES);
+                        this.increment(AdsorptionCounters.NORMALIZED_LABELS);
+                        this.increment(AdsorptionCounters.COMPARED_NODES);
+
+                        if (distance > epsilon) {
+                            this.increment(AdsorptionCounters.UNCONVERGED_NODES);
+                        }
 
-                        return -node;
+                        return label.first();
                     }
-                }, Writables.longs());
-    }
 
-    protected PTable<Long, Pair<Long, Double>> preprocessWeights(
-            final PTable<Long, Pair<Long, Double>> initialWeights,
-            final PTable<Long, LabelT> initialLabels,
-            final double updateConstant) {
-        assert updateConstant > 0.0;
+                }, this.getLabelType());
+    }
 
-        final PTable<Long, Pair<Long, Double>> shadowWeights = initialLabels
+    /**
+     * Returns the nodes whose distance exceeds epsilon, keyed by the given
+     * iteration, as filterUnconverged.
+     */
+    protected PTable<Integer, Pair<Long, Double>> selectUnconverged(
+            final PTable<Long, Pair<LabelT, Double>> distances,
+            final int iteration, final double epsilon) {
+        return distances
                 .parallelDo(
-                        "ShadowEdges",
-                        new DoFn<Pair<Long, LabelT>, Pair<Long, Pair<Long, Double>>>() {
+                        "SelectUnconverged",
+                        new DoFn<Pair<Long, Pair<LabelT, Double>>, Pair<Integer, Pair<Long, Double>>>() {
 
                             @Override
                             public void process(
-                                    Pair<Long, LabelT> instance,
-                                    Emitter<Pair<Long, Pair<Long, Double>>> emitter) {
-                                final Long node = instance.first();
-
-                                // Edge from shadow node to seed node with updateConstant weight.
-                                emitter.emit(Pair.of(-node,
-                                        Pair.of(node, updateConstant)));
+                                    Pair<Long, Pair<LabelT, Double>> instance,
+                                    Emitter<Pair<Integer, Pair<Long, Double>>> emitter) {
+                                final double distance = instance.second()
+                                        .second();
 
-                                // Edge from shadow node to shadow node with unit weight.
-                                emitter.emit(Pair.of(-node, Pair.of(-node, 1.0)));
+                                if (distance > epsilon) {
+                                    emitter.emit(Pair.of(iteration, Pair.of(
+                                            instance.first(), distance)));
+                                }
                             }
 
-                        }, Writables.tableOf(
-                                Writables.longs(),
+                        },
+                        Writables.tableOf(
+                                Writables.ints(),
                                 Writables.pairs(Writables.longs(),
                                         Writables.doubles())));
+    }
 
-        return initialWeights.union(shadowWeights);
+    protected PTable<Long, Adjacency> preprocessAdjacency(
+            final PTable<Long, Adjacency> initialAdjacency,
+            final PTable<Long, LabelT> initialLabels,
+            final double updateConstant) {
+        assert updateConstant > 0.0;
+
+        final PTable<Long, Adjacency> shadowAdjacency = initialLabels
+                .parallelDo("ShadowAdjacency",
+                        new DoFn<Pair<Long, LabelT>, Pair<Long, Adjacency>>() {
+
+                            @Override
+                            public void process(Pair<Long, LabelT> instance,
+                                    Emitter<Pair<Long, Adjacency>> emitter) {
+                                final Long node = instance.first();
+                                final Long shadow = GraphAdsorption.this.shadowNodes
+                                        .getShadow(node);
+
+                                // Same edges as in preprocessWeights, kept at
+                                // full precision.
+                                emitter.emit(Pair.of(shadow, new Adjacency(
+                                        new long[] { node, shadow },
+                                        new double[] { updateConstant, 1.0 },
+                                        Adjacency.WeightEncoding.DOUBLE)));
+                            }
+
+                        }, AdjacencyOp.getTableType());
+
+        return initialAdjacency.union(shadowAdjacency);
     }
 
     protected PTable<Long, LabelT> computeLabels(
             PTable<Long, Pair<Pair<Long, Double>, LabelT>> instances) {
         final AggregateLabelsOp<LabelT> aggregateLabels = new AggregateLabelsOp<LabelT>(
-                this.labelClass, this.labelFactory);
+                this.labelClass, this.labelFactory, this.pruning);
+
+        return aggregateLabels.runWeighted(this.propagateLabels(instances));
+    }
 
-        final PGroupedTable<Long, LabelT> incomingEdges = instances
+    /**
+     * Sends the label of every source, together with the edge weight, to its
+     * targets and groups these by target. The labels are only multiplied by
+     * their weights when they are summed.
+     */
+    protected PGroupedTable<Long, Pair<LabelT, Double>> propagateLabels(
+            PTable<Long, Pair<Pair<Long, Double>, LabelT>> instances) {
+        return this.sendLabels(instances).groupByKey();
+    }
+
+    /**
+     * Same as propagateLabels, without grouping.
+     */
+    protected PTable<Long, Pair<LabelT, Double>> sendLabels(
+            PTable<Long, Pair<Pair<Long, Double>, LabelT>> instances) {
+        return instances
                 .parallelDo(
                         "PropagateLabels",
-                        new DoFn<Pair<Long, Pair<Pair<Long, Double>, LabelT>>, Pair<Long, LabelT>>() {
+                        new DoFn<Pair<Long, Pair<Pair<Long, Double>, LabelT>>, Pair<Long, Pair<LabelT, Double>>>() {
+
+                            // Counted locally and added to the counters at
+                            // the end of the task.
+                            protected transient long joined;
+                            protected transient long sent;
+                            protected transient long skipped;
 
                             @Override
                             public void process(
                                     Pair<Long, Pair<Pair<Long, Double>, LabelT>> instance,
-                                    Emitter<Pair<Long, LabelT>> emitter) {
+                                    Emitter<Pair<Long, Pair<LabelT, Double>>> emitter) {
                                 final Long source = instance.first();
                                 final Pair<Pair<Long, Double>, LabelT> data = instance
                                         .second();
@@ -164,89 +626,34 @@ public class GraphAdsorption<LabelT extends Label> implements Serializable {
                                 final long target = edge.first();
                                 final double weight = edge.second();
 
-                                if (label != null) {
-                                    final Label influence = label
-                                            .multiply(weight);
+                                this.joined++;
 
+                                if (label != null) {
                                     emitter.emit(Pair.of(target,
-                                            GraphAdsorption.this.labelClass
-                                                    .cast(influence)));
-                                }
-                            }
+                                            Pair.of(label, weight)));
 
-                        },
-                        Writables.tableOf(Writables.longs(),
-                                Writables.records(this.labelClass)))
-                .groupByKey();
-
-        return aggregateLabels.run(incomingEdges);
-    }
-
-    protected PTable<Integer, Pair<Long, Double>> computeConvergence(
-            final PTable<Long, LabelT> next,
-            final PTable<Long, LabelT> previous, final int iteration,
-            final double convergence_threshold) {
-        assert next.getTypeFamily() != null;
-        assert previous.getTypeFamily() != null;
-        assert iteration >= 1;
-        assert convergence_threshold >= 0.0
-                && convergence_threshold <= Math.sqrt(2.0);
-
-        final PTable<Long, Double> differenceNorms = Join
-                .leftJoin(next, previous)
-                .parallelDo(
-                        "CompareIterations",
-                        new MapFn<Pair<Long, Pair<LabelT, LabelT>>, Pair<Long, Double>>() {
-
-                            @Override
-                            public Pair<Long, Double> map(
-                                    Pair<Long, Pair<LabelT, LabelT>> data) {
-                                final Long node = data.first();
-
-                                final Pair<LabelT, LabelT> labels = data
-                                        .second();
-
-                                final LabelT next = labels.first();
-                                final LabelT previous = labels.second();
-
-                                if (previous != null) {
-                                    final double euclideanDistance = previous
-                                            .diff(next).euclideanNorm();
-
-                                    return Pair.of(node, euclideanDistance);
+                                    this.sent++;
                                 } else {
-                                    // Longest possible distance.
-                                    return Pair.of(node, Math.sqrt(2.0));
+                                    this.skipped++;
                                 }
                             }
 
-                        },
-                        Writables.tableOf(Writables.longs(),
-                                Writables.doubles()));
-
-        return differenceNorms
-                .filter(new FilterFn<Pair<Long, Double>>() {
-
-                    @Override
-                    public boolean accept(Pair<Long, Double> pair) {
-                        return pair.second() > convergence_threshold;
-                    }
-
-                })
-                .parallelDo(
-                        new MapFn<Pair<Long, Double>, Pair<Integer, Pair<Long, Double>>>() {
-
                             @Override
-                            public Pair<Integer, Pair<Long, Double>> map(
-                                    Pair<Long, Double> pair) {
-                                return Pair.of(iteration, pair);
+                            public void cleanup(
+                                    Emitter<Pair<Long, Pair<LabelT, Double>>> emitter) {
+                                this.increment(
+                                        AdsorptionCounters.JOINED_RECORDS,
+                                        this.joined);
+                                this.increment(AdsorptionCounters.LABELS_SENT,
+                                        this.sent);
+                                this.increment(
+                                        AdsorptionCounters.NULL_LABELS_SKIPPED,
+                                        this.skipped);
+
+                                this.joined = this.sent = this.skipped = 0L;
                             }
 
-                        },
-                        Writables.tableOf(
-                                Writables.ints(),
-                                Writables.pairs(Writables.longs(),
-                                        Writables.doubles())));
+                        }, this.getWeightedLabelType());
     }
 
 }
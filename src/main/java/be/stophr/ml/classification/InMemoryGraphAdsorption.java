@@ -0,0 +1,401 @@
+package be.stophr.ml.classification;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.writable.Writables;
+
+import be.stophr.ml.classification.crunch.AggregateLabelsOp;
+import be.stophr.ml.classification.graph.CompressedGraph;
+import be.stophr.ml.classification.labels.Label;
+import be.stophr.ml.classification.labels.Label.NormType;
+
+/**
+ * Single-JVM implementation of the Adsorption algorithm.
+ *
+ * The weights and seed labels are preprocessed exactly like GraphAdsorption
+ * does, after which the graph is packed once into compressed sparse arrays.
+ * Every iteration is then a loop over the incoming edges of every node,
+ * instead of a join and a shuffle of the complete edge table. This is only
+ * applicable when the graph fits in the memory of a single machine.
+ *
+ * The results (and the convergence side table) are identical to those of
+ * GraphAdsorption and are returned as in-memory tables.
+ *
+ * When constructed with a parallelism larger than one, the nodes are split in
+ * ranges of roughly equal numbers of incoming edges which are processed on a
+ * fork/join pool. Every range writes to its own slice of the next iteration,
+ * hence no locking or shared accumulators are required. Every label is still
+ * summed in the order of its incoming edges, which makes the results
+ * bit-identical to the sequential computation. If splitHubs is set, the
+ * incoming edges of hub nodes are split in chunks as well, whose partial
+ * Kahan sums are merged along with their compensations (see
+ * Label.Accumulator.merge). The labels of the hubs may then differ from the
+ * sequential computation in their last bits, though not from one run to the
+ * next.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public class InMemoryGraphAdsorption<LabelT extends Label> extends
+        AbstractAdsorption<LabelT> {
+
+    /**
+     * Number of incoming edges below which a range of nodes is no longer
+     * split.
+     */
+    protected static final int GRAIN = 4096;
+
+    protected final int parallelism;
+    protected final boolean splitHubs;
+
+    public InMemoryGraphAdsorption(final Class<LabelT> labelClass,
+            final Label.Factory labelFactory) {
+        this(labelClass, labelFactory, 1, false);
+    }
+
+    public InMemoryGraphAdsorption(final Class<LabelT> labelClass,
+            final Label.Factory labelFactory, final int parallelism,
+            final boolean splitHubs) {
+        super(labelClass, labelFactory, ShadowNodes.negated());
+
+        assert parallelism >= 1;
+
+        this.parallelism = parallelism;
+        this.splitHubs = splitHubs;
+    }
+
+    @Override
+    public Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> run(
+            final PTable<Long, Pair<Long, Double>> initialWeights,
+            final PTable<Long, LabelT> initialLabels,
+            final Double updateConstant,
+            final StoppingCriterion criterion) {
+        assert initialWeights.getTypeFamily() != null;
+        assert initialLabels.getTypeFamily() != null;
+        assert updateConstant > 0;
+        assert criterion != null;
+
+        // Incoming edges, such that every node pulls the labels of its
+        // neighbours.
+        final CompressedGraph graph = CompressedGraph.fromEdges(
+                this.preprocessWeights(initialWeights, initialLabels,
+                        updateConstant).materialize()).reverse();
+
+        Label[] labels = new Label[graph.size()];
+
+        for (final Pair<Long, LabelT> seed : this.preprocessLabels(
+                initialLabels).materialize()) {
+            final int index = graph.indexOf(seed.first());
+            assert index >= 0;
+
+            labels[index] = seed.second();
+        }
+
+        final List<Pair<Integer, Pair<Long, Double>>> convergence = new ArrayList<Pair<Integer, Pair<Long, Double>>>();
+
+        final ForkJoinPool pool = (this.parallelism > 1) ? new ForkJoinPool(
+                this.parallelism) : null;
+
+        boolean checked = false;
+
+        try {
+            for (int i = 1; i <= criterion.getMaxIterations(); i++) {
+                final Label[] next = new Label[graph.size()];
+
+                if (pool != null) {
+                    pool.invoke(new PropagateLabels(graph, labels, next, 0,
+                            graph.size()));
+                } else {
+                    this.computeLabels(graph, labels, next, 0, graph.size());
+                }
+
+                final Label[] previous = labels;
+                labels = next;
+
+                if (criterion.isCheckIteration(i)) {
+                    final int unconverged = this.computeConvergence(graph,
+                            next, previous, i, criterion.getEpsilon(),
+                            convergence);
+
+                    checked = true;
+
+                    if (criterion.isConverged(unconverged,
+                            this.countLabels(next))) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+
+        return Pair.of(this.toTable(graph, labels),
+                checked ? Utils.CreatePTable(Writables.tableOf(
+                        Writables.ints(),
+                        Writables.pairs(Writables.longs(),
+                                Writables.doubles())), convergence) : null);
+    }
+
+    /**
+     * Computes the labels of the nodes with index in [from, to), given the
+     * labels of the previous iteration and the incoming edges of every node.
+     */
+    protected void computeLabels(final CompressedGraph graph,
+            final Label[] previous, final Label[] next, final int from,
+            final int to) {
+        final int[] offsets = graph.getOffsets();
+
+        final AggregateLabelsOp.KahanAggregator<Label> aggregator = new AggregateLabelsOp.KahanAggregator<Label>(
+                this.labelFactory);
+
+        for (int target = from; target < to; target++) {
+            if (this.sumLabels(graph, previous, offsets[target],
+                    offsets[target + 1], aggregator)) {
+                next[target] = aggregator.sum().normalize(NormType.MANHATTAN);
+            }
+        }
+    }
+
+    /**
+     * Kahan sum of the weighted labels of the incoming edges in [from, to)
+     * into the aggregator, which is reset first. Returns false, leaving the
+     * aggregator as is, when none of the sources carries a label.
+     */
+    protected boolean sumLabels(final CompressedGraph graph,
+            final Label[] previous, final int from, final int to,
+            final AggregateLabelsOp.KahanAggregator<Label> aggregator) {
+        final int[] sources = graph.getTargets();
+        final double[] weights = graph.getWeights();
+
+        boolean reached = false;
+
+        for (int j = from; j < to; j++) {
+            final Label label = previous[sources[j]];
+
+            if (label != null) {
+                if (!reached) {
+                    aggregator.reset();
+                    reached = true;
+                }
+
+                aggregator.update(label, weights[j]);
+            }
+        }
+
+        return reached;
+    }
+
+    /**
+     * Fork/join task which computes the labels of a range of nodes.
+     */
+    protected class PropagateLabels extends RecursiveAction {
+
+        protected final CompressedGraph graph;
+        protected final Label[] previous;
+        protected final Label[] next;
+
+        protected final int from;
+        protected final int to;
+
+        public PropagateLabels(final CompressedGraph graph,
+                final Label[] previous, final Label[] next, final int from,
+                final int to) {
+            this.graph = graph;
+            this.previous = previous;
+            this.next = next;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            final int[] offsets = this.graph.getOffsets();
+            final int numEdges = offsets[this.to] - offsets[this.from];
+
+            if (numEdges <= GRAIN || this.to - this.from == 1) {
+                if (InMemoryGraphAdsorption.this.splitHubs
+                        && numEdges > GRAIN) {
+                    this.computeHub(this.from);
+                } else {
+                    InMemoryGraphAdsorption.this.computeLabels(this.graph,
+                            this.previous, this.next, this.from, this.to);
+                }
+
+                return;
+            }
+
+            // Split such that both halves have about the same number of
+            // incoming edges.
+            int middle = Arrays.binarySearch(offsets, this.from, this.to,
+                    offsets[this.from] + numEdges / 2);
+
+            if (middle < 0) {
+                middle = -middle - 1;
+            }
+
+            middle = Math.min(Math.max(middle, this.from + 1), this.to - 1);
+
+            invokeAll(new PropagateLabels(this.graph, this.previous,
+                    this.next, this.from, middle), new PropagateLabels(
+                    this.graph, this.previous, this.next, middle, this.to));
+        }
+
+        /**
+         * Splits the incoming edges of a single node in chunks, sums these
+         * independently and merges the partial sums, along with their
+         * compensations, in chunk order.
+         */
+        protected void computeHub(final int target) {
+            final int[] offsets = this.graph.getOffsets();
+
+            final int numChunks = (offsets[target + 1] - offsets[target]
+                    + GRAIN - 1) / GRAIN;
+
+            final List<AggregateLabelsOp.KahanAggregator<Label>> partials = new ArrayList<AggregateLabelsOp.KahanAggregator<Label>>(
+                    numChunks);
+            final List<SumEdges> tasks = new ArrayList<SumEdges>(numChunks);
+
+            for (int chunk = 0; chunk < numChunks; chunk++) {
+                tasks.add(new SumEdges(this.graph, this.previous,
+                        offsets[target] + chunk * GRAIN, Math.min(
+                                offsets[target] + (chunk + 1) * GRAIN,
+                                offsets[target + 1]), partials, chunk));
+                partials.add(null);
+            }
+
+            invokeAll(tasks);
+
+            final AggregateLabelsOp.KahanAggregator<Label> aggregator = new AggregateLabelsOp.KahanAggregator<Label>(
+                    InMemoryGraphAdsorption.this.labelFactory);
+            aggregator.reset();
+
+            boolean reached = false;
+
+            for (final AggregateLabelsOp.KahanAggregator<Label> partial : partials) {
+                if (partial != null) {
+                    aggregator.merge(partial);
+                    reached = true;
+                }
+            }
+
+            if (reached) {
+                this.next[target] = aggregator.sum().normalize(
+                        NormType.MANHATTAN);
+            }
+        }
+
+    }
+
+    /**
+     * Fork/join task which computes the partial sum over a chunk of the
+     * incoming edges of a node. Its aggregator is kept, or null when none of
+     * the sources carries a label.
+     */
+    protected class SumEdges extends RecursiveAction {
+
+        protected final CompressedGraph graph;
+        protected final Label[] previous;
+
+        protected final int from;
+        protected final int to;
+
+        protected final List<AggregateLabelsOp.KahanAggregator<Label>> partials;
+        protected final int chunk;
+
+        public SumEdges(final CompressedGraph graph, final Label[] previous,
+                final int from, final int to,
+                final List<AggregateLabelsOp.KahanAggregator<Label>> partials,
+                final int chunk) {
+            this.graph = graph;
+            this.previous = previous;
+            this.from = from;
+            this.to = to;
+            this.partials = partials;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            final AggregateLabelsOp.KahanAggregator<Label> aggregator = new AggregateLabelsOp.KahanAggregator<Label>(
+                    InMemoryGraphAdsorption.this.labelFactory);
+
+            if (InMemoryGraphAdsorption.this.sumLabels(this.graph,
+                    this.previous, this.from, this.to, aggregator)) {
+                this.partials.set(this.chunk, aggregator);
+            }
+        }
+
+    }
+
+    /**
+     * Appends the nodes that moved more than the threshold to the convergence
+     * table and returns their number.
+     */
+    protected int computeConvergence(final CompressedGraph graph,
+            final Label[] next, final Label[] previous, final int iteration,
+            final double convergence_threshold,
+            final List<Pair<Integer, Pair<Long, Double>>> convergence) {
+        assert iteration >= 1;
+        assert convergence_threshold >= 0.0
+                && convergence_threshold <= Math.sqrt(2.0);
+
+        int unconverged = 0;
+
+        for (int node = 0; node < next.length; node++) {
+            if (next[node] == null) {
+                continue;
+            }
+
+            final double euclideanDistance = (previous[node] != null) ? previous[node]
+                    .diff(next[node]).euclideanNorm()
+                    // Longest possible distance.
+                    : Math.sqrt(2.0);
+
+            if (euclideanDistance > convergence_threshold) {
+                convergence.add(Pair.of(iteration,
+                        Pair.of(graph.getNode(node), euclideanDistance)));
+
+                unconverged++;
+            }
+        }
+
+        return unconverged;
+    }
+
+    protected int countLabels(final Label[] labels) {
+        int count = 0;
+
+        for (final Label label : labels) {
+            if (label != null) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    protected PTable<Long, LabelT> toTable(final CompressedGraph graph,
+            final Label[] labels) {
+        final List<Pair<Long, LabelT>> pairs = new ArrayList<Pair<Long, LabelT>>();
+
+        for (int node = 0; node < labels.length; node++) {
+            if (labels[node] != null) {
+                pairs.add(Pair.of(graph.getNode(node),
+                        this.labelClass.cast(labels[node])));
+            }
+        }
+
+        return Utils.CreatePTable(
+                Writables.tableOf(Writables.longs(),
+                        this.getLabelType()), pairs);
+    }
+
+}
@@ -0,0 +1,131 @@
+package be.stophr.ml.classification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.crunch.PipelineResult;
+
+/**
+ * The wall time and counters of a single iteration of GraphAdsorption.
+ *
+ * The counters are summed over the stages (i.e. MapReduce jobs) that were run
+ * for the iteration. Besides AdsorptionCounters, these include the counters
+ * of the framework, such as the number of bytes shuffled. The stages fuse
+ * the functions of an iteration, hence the wall time of every stage is best
+ * looked up by its name in the job history.
+ *
+ * @author Christophe Van Gysel
+ */
+public class IterationReport {
+
+    public static final String TASK_COUNTERS = "org.apache.hadoop.mapreduce.TaskCounter";
+
+    protected final int iteration;
+    protected final long wallTime;
+
+    protected final List<String> stageNames;
+    protected final Map<String, Map<String, Long>> counters;
+
+    protected final ConvergenceSummary convergence;
+
+    /**
+     * The convergence summary is null unless convergence was checked in this
+     * iteration.
+     */
+    public IterationReport(final int iteration, final long wallTime,
+            final List<String> stageNames,
+            final Map<String, Map<String, Long>> counters,
+            final ConvergenceSummary convergence) {
+        assert iteration >= 1;
+        assert wallTime >= 0;
+
+        this.iteration = iteration;
+        this.wallTime = wallTime;
+        this.stageNames = Collections.unmodifiableList(stageNames);
+        this.counters = Collections.unmodifiableMap(counters);
+        this.convergence = convergence;
+    }
+
+    public static IterationReport fromResult(final int iteration,
+            final long wallTime, final PipelineResult result,
+            final ConvergenceSummary convergence) {
+        final List<String> stageNames = new ArrayList<String>();
+        final Map<String, Map<String, Long>> counters = new TreeMap<String, Map<String, Long>>();
+
+        for (final PipelineResult.StageResult stage : result
+                .getStageResults()) {
+            stageNames.add(stage.getStageName());
+
+            for (final Map.Entry<String, Set<String>> group : stage
+                    .getCounterNames().entrySet()) {
+                Map<String, Long> values = counters.get(group.getKey());
+
+                if (values == null) {
+                    values = new TreeMap<String, Long>();
+                    counters.put(group.getKey(), values);
+                }
+
+                for (final String name : group.getValue()) {
+                    final Long value = values.get(name);
+
+                    values.put(name, (value == null ? 0L : value)
+                            + stage.getCounterValue(group.getKey(), name));
+                }
+            }
+        }
+
+        return new IterationReport(iteration, wallTime, stageNames, counters,
+                convergence);
+    }
+
+    public int getIteration() {
+        return this.iteration;
+    }
+
+    /**
+     * Milliseconds from the start of the iteration until its labels (and
+     * convergence, if checked) were computed.
+     */
+    public long getWallTime() {
+        return this.wallTime;
+    }
+
+    public ConvergenceSummary getConvergence() {
+        return this.convergence;
+    }
+
+    public List<String> getStageNames() {
+        return this.stageNames;
+    }
+
+    /**
+     * Counter values by name, by group.
+     */
+    public Map<String, Map<String, Long>> getCounters() {
+        return this.counters;
+    }
+
+    public long getCounter(final String group, final String name) {
+        final Map<String, Long> values = this.counters.get(group);
+        final Long value = (values != null) ? values.get(name) : null;
+
+        return (value != null) ? value : 0L;
+    }
+
+    public long getCounter(final Enum<?> counter) {
+        return this.getCounter(counter.getDeclaringClass().getName(),
+                counter.name());
+    }
+
+    /**
+     * Bytes shuffled to the reducers; zero on an in-memory pipeline.
+     */
+    public long getBytesShuffled() {
+        return this.getCounter(TASK_COUNTERS, "REDUCE_SHUFFLE_BYTES");
+    }
+
+}
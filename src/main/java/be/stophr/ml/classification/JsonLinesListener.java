@@ -0,0 +1,141 @@
+package be.stophr.ml.classification;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+import org.apache.crunch.CrunchRuntimeException;
+
+/**
+ * Writes every iteration report as a JSON object on a line of its own, e.g.
+ *
+ * {"iteration":1,"wallTime":1520,"stages":["..."],"counters":{"group":{"NAME":3}}}
+ *
+ * followed, if convergence was checked, by
+ *
+ * "convergence":{"count":5,"unconverged":2,"max":0.5,"mean":0.2,"histogram":[0,...]}
+ *
+ * @author Christophe Van Gysel
+ */
+public class JsonLinesListener implements AdsorptionListener, Closeable {
+
+    protected final Writer writer;
+
+    public JsonLinesListener(final Writer writer) {
+        assert writer != null;
+
+        this.writer = writer;
+    }
+
+    public void iterationStarted(final int iteration) {
+    }
+
+    public void iterationFinished(final IterationReport report) {
+        final StringBuilder builder = new StringBuilder();
+
+        builder.append("{\"iteration\":").append(report.getIteration());
+        builder.append(",\"wallTime\":").append(report.getWallTime());
+
+        builder.append(",\"stages\":[");
+
+        for (int i = 0; i < report.getStageNames().size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+
+            appendString(builder, report.getStageNames().get(i));
+        }
+
+        builder.append("],\"counters\":{");
+
+        boolean firstGroup = true;
+
+        for (final Map.Entry<String, Map<String, Long>> group : report
+                .getCounters().entrySet()) {
+            if (!firstGroup) {
+                builder.append(',');
+            }
+
+            firstGroup = false;
+
+            appendString(builder, group.getKey());
+            builder.append(":{");
+
+            boolean firstCounter = true;
+
+            for (final Map.Entry<String, Long> counter : group.getValue()
+                    .entrySet()) {
+                if (!firstCounter) {
+                    builder.append(',');
+                }
+
+                firstCounter = false;
+
+                appendString(builder, counter.getKey());
+                builder.append(':').append(counter.getValue());
+            }
+
+            builder.append('}');
+        }
+
+        builder.append('}');
+
+        final ConvergenceSummary convergence = report.getConvergence();
+
+        if (convergence != null) {
+            builder.append(",\"convergence\":{\"count\":")
+                    .append(convergence.getCount())
+                    .append(",\"unconverged\":")
+                    .append(convergence.getUnconverged())
+                    .append(",\"max\":").append(convergence.getMax())
+                    .append(",\"mean\":").append(convergence.getMean())
+                    .append(",\"histogram\":[");
+
+            final long[] histogram = convergence.getHistogram();
+
+            for (int i = 0; i < histogram.length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+
+                builder.append(histogram[i]);
+            }
+
+            builder.append("]}");
+        }
+
+        builder.append("}\n");
+
+        try {
+            this.writer.write(builder.toString());
+            this.writer.flush();
+        } catch (IOException e) {
+            throw new CrunchRuntimeException(e);
+        }
+    }
+
+    protected static void appendString(final StringBuilder builder,
+            final String string) {
+        builder.append('"');
+
+        for (int i = 0; i < string.length(); i++) {
+            final char character = string.charAt(i);
+
+            if (character == '"' || character == '\\') {
+                builder.append('\\').append(character);
+            } else if (character < 0x20) {
+                builder.append(String.format("\\u%04x", (int) character));
+            } else {
+                builder.append(character);
+            }
+        }
+
+        builder.append('"');
+    }
+
+    public void close() throws IOException {
+        this.writer.close();
+    }
+
+}
@@ -0,0 +1,484 @@
+package be.stophr.ml.classification;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the lines of a (large) text file in parallel.
+ *
+ * The file is split into byte ranges whose boundaries are moved to the start
+ * of the next line, and every range is memory-mapped and parsed by a separate
+ * thread. The tab-separated fields of a line are parsed in place (see Line),
+ * without creating a String per line. The records are handed to a sink in
+ * the order of the file, in batches, while the ranges are being parsed. A
+ * range can only be a few batches ahead of the sink, hence the records are
+ * never all held in memory. If a parser or the sink fails, the remaining
+ * ranges are cancelled and the failure is rethrown by read.
+ *
+ * Lines end with '\n', optionally preceded by '\r'; empty lines are skipped.
+ * The file is assumed to be UTF-8 encoded.
+ *
+ * @author Christophe Van Gysel
+ */
+public class ParallelLineReader {
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Maximum size of a range, as a mapped buffer is indexed by an int.
+     */
+    protected static final long MAX_RANGE_SIZE = 1L << 30;
+
+    /**
+     * Number of records handed from a range to the sink at once.
+     */
+    protected static final int BATCH_SIZE = 4096;
+
+    /**
+     * Number of batches a range can be ahead of the sink.
+     */
+    protected static final int MAX_PENDING_BATCHES = 4;
+
+    /**
+     * Powers of ten that are exactly representable as a double.
+     */
+    protected static final double[] POWERS_OF_TEN = new double[23];
+
+    /**
+     * Numbers the threads parsing the ranges.
+     */
+    protected static final AtomicInteger THREADS = new AtomicInteger();
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    /**
+     * Converts a line into a record, or returns null to skip it. Parsers are
+     * called concurrently from several threads.
+     */
+    public static interface Parser<T> {
+
+        public T parse(final Line line);
+
+    }
+
+    /**
+     * Receives the records in the order of the file. Sinks are only called
+     * from the thread calling read, hence they need not be thread-safe.
+     */
+    public static interface Sink<T> {
+
+        public void add(final T record) throws IOException;
+
+    }
+
+    /**
+     * The tab-separated fields of a line within a mapped range. Only valid
+     * during the call to the parser.
+     */
+    public static class Line {
+
+        protected final ByteBuffer buffer;
+
+        protected int[] starts = new int[8];
+        protected int[] ends = new int[8];
+        protected int numFields = 0;
+
+        protected Line(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        protected void set(final int start, final int end) {
+            this.numFields = 0;
+
+            int fieldStart = start;
+
+            for (int i = start; i <= end; i++) {
+                if (i == end || this.buffer.get(i) == '\t') {
+                    if (this.numFields == this.starts.length) {
+                        this.starts = Arrays.copyOf(this.starts,
+                                2 * this.numFields);
+                        this.ends = Arrays.copyOf(this.ends,
+                                2 * this.numFields);
+                    }
+
+                    this.starts[this.numFields] = fieldStart;
+                    this.ends[this.numFields] = i;
+                    this.numFields++;
+
+                    fieldStart = i + 1;
+                }
+            }
+        }
+
+        public int numFields() {
+            return this.numFields;
+        }
+
+        public String getString(final int field) {
+            this.check(field);
+
+            final int length = this.ends[field] - this.starts[field];
+            final byte[] bytes = new byte[length];
+
+            for (int i = 0; i < length; i++) {
+                bytes[i] = this.buffer.get(this.starts[field] + i);
+            }
+
+            return new String(bytes, UTF8);
+        }
+
+        public long getLong(final int field) {
+            this.check(field);
+
+            int i = this.starts[field];
+            final int end = this.ends[field];
+
+            final boolean negative = i < end && this.buffer.get(i) == '-';
+
+            if (negative || (i < end && this.buffer.get(i) == '+')) {
+                i++;
+            }
+
+            if (i == end || end - i > 19) {
+                return Long.parseLong(this.getString(field));
+            }
+
+            long value = 0L;
+
+            for (; i < end; i++) {
+                final int digit = this.buffer.get(i) - '0';
+
+                if (digit < 0 || digit > 9) {
+                    throw new NumberFormatException("Not a number: "
+                            + this.getString(field));
+                }
+
+                value = 10L * value + digit;
+
+                if (value < 0L) {
+                    // Overflow, which Long.parseLong reports (except for
+                    // Long.MIN_VALUE).
+                    return Long.parseLong(this.getString(field));
+                }
+            }
+
+            return negative ? -value : value;
+        }
+
+        /**
+         * Parses decimal numbers of at most 15 significant digits with a
+         * small exponent directly, which then yields the correctly rounded
+         * value; anything else is handed to Double.parseDouble.
+         */
+        public double getDouble(final int field) {
+            this.check(field);
+
+            int i = this.starts[field];
+            final int end = this.ends[field];
+
+            final boolean negative = i < end && this.buffer.get(i) == '-';
+
+            if (negative || (i < end && this.buffer.get(i) == '+')) {
+                i++;
+            }
+
+            long mantissa = 0L;
+            int digits = 0;
+            int exponent = 0;
+            boolean any = false;
+
+            for (; i < end && isDigit(this.buffer.get(i)); i++) {
+                mantissa = 10L * mantissa + (this.buffer.get(i) - '0');
+                any = true;
+
+                if (mantissa > 0L) {
+                    digits++;
+                }
+            }
+
+            if (i < end && this.buffer.get(i) == '.') {
+                for (i++; i < end && isDigit(this.buffer.get(i)); i++) {
+                    mantissa = 10L * mantissa + (this.buffer.get(i) - '0');
+                    exponent--;
+                    any = true;
+
+                    if (mantissa > 0L) {
+                        digits++;
+                    }
+                }
+            }
+
+            if (i < end && (this.buffer.get(i) == 'e' || this.buffer.get(i) == 'E')) {
+                i++;
+
+                final boolean negativeExponent = i < end
+                        && this.buffer.get(i) == '-';
+
+                if (negativeExponent || (i < end && this.buffer.get(i) == '+')) {
+                    i++;
+                }
+
+                int explicit = 0;
+                boolean anyExponent = false;
+
+                for (; i < end && isDigit(this.buffer.get(i)) && explicit < 1000; i++) {
+                    explicit = 10 * explicit + (this.buffer.get(i) - '0');
+                    anyExponent = true;
+                }
+
+                if (!anyExponent) {
+                    return Double.parseDouble(this.getString(field));
+                }
+
+                exponent += negativeExponent ? -explicit : explicit;
+            }
+
+            if (!any || i != end || digits > 15
+                    || Math.abs(exponent) >= POWERS_OF_TEN.length) {
+                return Double.parseDouble(this.getString(field));
+            }
+
+            double value = mantissa;
+
+            if (exponent < 0) {
+                value /= POWERS_OF_TEN[-exponent];
+            } else {
+                value *= POWERS_OF_TEN[exponent];
+            }
+
+            return negative ? -value : value;
+        }
+
+        protected static boolean isDigit(final byte character) {
+            return character >= '0' && character <= '9';
+        }
+
+        protected void check(final int field) {
+            if (field < 0 || field >= this.numFields) {
+                throw new IllegalArgumentException("Line has no field "
+                        + field + ".");
+            }
+        }
+
+    }
+
+    protected final File file;
+    protected final int parallelism;
+
+    public ParallelLineReader(final File file, final int parallelism) {
+        assert file != null;
+        assert parallelism >= 1;
+
+        this.file = file;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Parses all lines and hands the records to the sink in the order of the
+     * file.
+     */
+    public <T> void read(final Parser<T> parser, final Sink<T> sink)
+            throws IOException {
+        final RandomAccessFile input = new RandomAccessFile(this.file, "r");
+
+        try {
+            final FileChannel channel = input.getChannel();
+            final long[] boundaries = this.split(input);
+
+            // Daemon threads, such that a range which is never drained
+            // cannot keep the JVM alive.
+            final ExecutorService executor = Executors.newFixedThreadPool(
+                    this.parallelism, new ThreadFactory() {
+
+                        public Thread newThread(final Runnable runnable) {
+                            final Thread thread = new Thread(runnable,
+                                    "ParallelLineReader-"
+                                            + THREADS.incrementAndGet());
+                            thread.setDaemon(true);
+
+                            return thread;
+                        }
+
+                    });
+
+            try {
+                final List<BlockingQueue<List<T>>> batches = new ArrayList<BlockingQueue<List<T>>>();
+                final List<Future<Void>> ranges = new ArrayList<Future<Void>>();
+
+                for (int i = 0; i + 1 < boundaries.length; i++) {
+                    final long start = boundaries[i];
+                    final long end = boundaries[i + 1];
+
+                    final BlockingQueue<List<T>> queue = new ArrayBlockingQueue<List<T>>(
+                            MAX_PENDING_BATCHES);
+                    batches.add(queue);
+
+                    // The ranges are submitted in order, hence the range
+                    // drained by the sink is always being parsed.
+                    ranges.add(executor.submit(new Callable<Void>() {
+
+                        public Void call() throws IOException,
+                                InterruptedException {
+                            parse(channel.map(FileChannel.MapMode.READ_ONLY,
+                                    start, end - start), parser, queue);
+
+                            return null;
+                        }
+
+                    }));
+                }
+
+                for (int i = 0; i < ranges.size(); i++) {
+                    List<T> batch;
+
+                    // An empty batch ends the range.
+                    while (!(batch = batches.get(i).take()).isEmpty()) {
+                        for (final T record : batch) {
+                            sink.add(record);
+                        }
+                    }
+
+                    ranges.get(i).get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                } else if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                } else {
+                    throw new IOException(e.getCause());
+                }
+            } finally {
+                // Interrupts the ranges still waiting for the sink.
+                executor.shutdownNow();
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Returns the boundaries of the ranges, each of which is at the start of
+     * a line (or the end of the file).
+     */
+    protected long[] split(final RandomAccessFile input) throws IOException {
+        final long length = input.length();
+        final int numRanges = (int) Math.max(this.parallelism,
+                (length + MAX_RANGE_SIZE - 1) / MAX_RANGE_SIZE);
+
+        final long[] boundaries = new long[numRanges + 1];
+        boundaries[numRanges] = length;
+
+        for (int i = 1; i < numRanges; i++) {
+            long position = Math.max(boundaries[i - 1], length * i / numRanges);
+
+            if (position > 0 && position < length) {
+                // Move to the start of the next line, unless the previous
+                // byte already ends a line.
+                input.seek(position - 1);
+
+                int character = input.read();
+
+                while (character != -1 && character != '\n') {
+                    character = input.read();
+                }
+
+                position = input.getFilePointer();
+            }
+
+            boundaries[i] = Math.min(position, length);
+        }
+
+        return boundaries;
+    }
+
+    /**
+     * Parses the lines of the buffer into batches, which are followed by an
+     * empty batch even if the parser fails. Once interrupted, the batches are
+     * no longer drained, hence the empty batch is left out.
+     */
+    protected static <T> void parse(final MappedByteBuffer buffer,
+            final Parser<T> parser, final BlockingQueue<List<T>> batches)
+            throws InterruptedException {
+        boolean interrupted = false;
+
+        try {
+            List<T> batch = new ArrayList<T>(BATCH_SIZE);
+            final Line line = new Line(buffer);
+
+            final int limit = buffer.limit();
+            int start = 0;
+
+            while (start < limit) {
+                int end = start;
+
+                while (end < limit && buffer.get(end) != '\n') {
+                    end++;
+                }
+
+                final int next = end + 1;
+
+                if (end > start && buffer.get(end - 1) == '\r') {
+                    end--;
+                }
+
+                if (end > start) {
+                    line.set(start, end);
+
+                    final T record = parser.parse(line);
+
+                    if (record != null) {
+                        batch.add(record);
+
+                        if (batch.size() == BATCH_SIZE) {
+                            batches.put(batch);
+                            batch = new ArrayList<T>(BATCH_SIZE);
+                        }
+                    }
+                }
+
+                start = next;
+            }
+
+            if (!batch.isEmpty()) {
+                batches.put(batch);
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+
+            throw e;
+        } finally {
+            if (!interrupted) {
+                batches.put(new ArrayList<T>(0));
+            }
+        }
+    }
+
+}
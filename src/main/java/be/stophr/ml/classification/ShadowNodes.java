@@ -0,0 +1,62 @@
+package be.stophr.ml.classification;
+
+import java.io.Serializable;
+
+/**
+ * Determines the identifiers of the shadow nodes of the seeds, which inject
+ * the seed labels into the graph (see GraphAdsorption).
+ *
+ * By default the shadow node of a node is its negated identifier, which
+ * requires the identifiers to be strictly positive. When the identifiers are
+ * dense, i.e. in [0, size), the shadow nodes are placed right after them
+ * instead.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public class ShadowNodes implements Serializable {
+
+    protected final boolean negated;
+    protected final long offset;
+
+    protected ShadowNodes(final boolean negated, final long offset) {
+        this.negated = negated;
+        this.offset = offset;
+    }
+
+    public static ShadowNodes negated() {
+        return new ShadowNodes(true, 0);
+    }
+
+    /**
+     * Shadow nodes for the identifiers in [0, size).
+     */
+    public static ShadowNodes offset(final long size) {
+        assert size >= 0;
+
+        return new ShadowNodes(false, size);
+    }
+
+    public long getShadow(final long node) {
+        if (this.negated) {
+            assert node > 0;
+
+            return -node;
+        } else {
+            assert node >= 0 && node < this.offset;
+
+            return node + this.offset;
+        }
+    }
+
+    public boolean isShadow(final long node) {
+        return this.negated ? node < 0 : node >= this.offset;
+    }
+
+    public long getNode(final long shadow) {
+        assert this.isShadow(shadow);
+
+        return this.negated ? -shadow : shadow - this.offset;
+    }
+
+}
@@ -0,0 +1,97 @@
+package be.stophr.ml.classification;
+
+import java.io.Serializable;
+
+/**
+ * Determines when the iterations of the Adsorption algorithm may stop.
+ *
+ * Every checkInterval iterations the labels are compared to those of the
+ * previous iteration. A node has not converged yet when the euclidean distance
+ * between both exceeds epsilon. The iterations stop as soon as the number (or
+ * the fraction) of unconverged nodes is at most the given target, or when the
+ * hard cap of maxIterations is reached.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public class StoppingCriterion implements Serializable {
+
+    public static enum TargetType {
+        COUNT, FRACTION;
+    }
+
+    /**
+     * Target of a criterion which never stops before maxIterations.
+     */
+    public static final double NO_TARGET = -1.0;
+
+    protected final int maxIterations;
+    protected final int checkInterval;
+
+    protected final double epsilon;
+
+    protected final TargetType targetType;
+    protected final double target;
+
+    public StoppingCriterion(final int maxIterations, final int checkInterval,
+            final double epsilon, final TargetType targetType,
+            final double target) {
+        assert maxIterations >= 1;
+        assert checkInterval >= 1;
+        assert epsilon >= 0.0 && epsilon <= Math.sqrt(2.0);
+        assert targetType != null;
+        assert target >= 0.0 || target == NO_TARGET;
+        assert targetType != TargetType.FRACTION || target <= 1.0;
+
+        this.maxIterations = maxIterations;
+        this.checkInterval = checkInterval;
+        this.epsilon = epsilon;
+        this.targetType = targetType;
+        this.target = target;
+    }
+
+    /**
+     * Runs exactly the given number of iterations. Convergence is still
+     * reported every 5 iterations with a threshold of 0.05.
+     */
+    public static StoppingCriterion fixed(final int iterations) {
+        return new StoppingCriterion(iterations, 5, 0.05, TargetType.COUNT,
+                NO_TARGET);
+    }
+
+    public int getMaxIterations() {
+        return this.maxIterations;
+    }
+
+    public int getCheckInterval() {
+        return this.checkInterval;
+    }
+
+    public double getEpsilon() {
+        return this.epsilon;
+    }
+
+    public boolean isCheckIteration(final int iteration) {
+        return iteration % this.checkInterval == 0;
+    }
+
+    /**
+     * Whether the criterion can stop the iterations before maxIterations.
+     */
+    public boolean canStopEarly() {
+        return this.target != NO_TARGET;
+    }
+
+    public boolean isConverged(final long unconverged, final long total) {
+        assert unconverged >= 0 && unconverged <= total;
+
+        if (!this.canStopEarly()) {
+            return false;
+        } else if (this.targetType == TargetType.COUNT) {
+            return unconverged <= this.target;
+        } else {
+            return total == 0 || ((double) unconverged) / total <= this.target;
+        }
+    }
+
+}
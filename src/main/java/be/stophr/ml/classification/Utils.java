@@ -1,12 +1,15 @@
 package be.stophr.ml.classification;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.text.Normalizer;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
@@ -17,6 +20,7 @@ import org.apache.crunch.Pair;
 import org.apache.crunch.impl.mem.MemPipeline;
 import org.apache.crunch.types.PTableType;
 import org.apache.crunch.types.PType;
+import org.apache.crunch.types.writable.Writables;
 
 /**
  * Utility classes that provide helper functions for Crunch-oriented
@@ -77,19 +81,221 @@ public class Utils {
         return data;
     }
 
+    /**
+     * Same as above, but reads the file with the given number of threads
+     * (see ParallelLineReader).
+     */
+    public static Map<String, String> readStringTable(final File file,
+            final int parallelism) throws IOException {
+        final Map<String, String> data = new TreeMap<String, String>();
+
+        new ParallelLineReader(file, parallelism).read(
+                new ParallelLineReader.Parser<Pair<String, String>>() {
+
+                    public Pair<String, String> parse(
+                            final ParallelLineReader.Line line) {
+                        assert line.numFields() >= 2;
+
+                        return Pair.of(line.getString(0), line.getString(1));
+                    }
+
+                }, new ParallelLineReader.Sink<Pair<String, String>>() {
+
+                    public void add(final Pair<String, String> entry) {
+                        data.put(entry.first(), entry.second());
+                    }
+
+                });
+
+        return data;
+    }
+
+    /**
+     * Reads tab-separated (node, class) lines and returns the index of the
+     * class of every node. The classes are added to the alphabet in the order
+     * of the file.
+     */
+    public static PTable<Long, Long> readSeeds(final File file,
+            final int parallelism, final Alphabet alphabet) throws IOException {
+        final List<Pair<Long, Long>> classes = new ArrayList<Pair<Long, Long>>();
+
+        new ParallelLineReader(file, parallelism).read(
+                new ParallelLineReader.Parser<Pair<Long, String>>() {
+
+                    public Pair<Long, String> parse(
+                            final ParallelLineReader.Line line) {
+                        return Pair.of(line.getLong(0), line.getString(1));
+                    }
+
+                }, new ParallelLineReader.Sink<Pair<Long, String>>() {
+
+                    // Called from this thread only, as the alphabet is not
+                    // thread-safe.
+                    public void add(final Pair<Long, String> seed) {
+                        classes.add(Pair.of(seed.first(),
+                                alphabet.get(seed.second())));
+                    }
+
+                });
+
+        return CreatePTable(
+                Writables.tableOf(Writables.longs(), Writables.longs()),
+                classes);
+    }
+
+    /**
+     * Decomposes the string (NFD), drops all non-ASCII characters and
+     * replaces tabs, line breaks, form feeds and vertical tabs by spaces.
+     *
+     * A decomposed character never interacts with its neighbours once the
+     * non-ASCII combining marks are dropped, hence every character is mapped
+     * through a table (see SanitizeTable) in a single pass. Pure ASCII
+     * strings without such whitespace are returned as is.
+     */
     public static String sanitizeString(final String str) {
+        final int length = str.length();
+
+        int i = 0;
+
+        while (i < length) {
+            final char character = str.charAt(i);
+
+            if (character >= 0x80 || isReplacedWhitespace(character)) {
+                break;
+            }
+
+            i++;
+        }
+
+        if (i == length) {
+            return str;
+        }
+
+        final char[] result = new char[length];
+        str.getChars(0, i, result, 0);
+
+        int size = i;
+
+        for (; i < length; i++) {
+            final byte mapped = SanitizeTable.TABLE[str.charAt(i)];
+
+            if (mapped >= 0) {
+                result[size++] = (char) mapped;
+            } else if (mapped == SanitizeTable.EXPAND) {
+                return sanitizeStringSlow(str);
+            }
+        }
+
+        return new String(result, 0, size);
+    }
+
+    protected static String sanitizeStringSlow(final String str) {
         return Normalizer.normalize(str, Normalizer.Form.NFD)
                 .replaceAll("[^\\p{ASCII}]", "")
                 .replaceAll("[\\t\\n\\r\\f\\v]", " ");
     }
 
+    /**
+     * Same as sanitizeString, after which everything but letters and spaces
+     * is dropped, runs of spaces are collapsed and the result is converted to
+     * lower case, in a single pass.
+     */
     public static String normalizeString(final String str) {
         if (str == null) {
             return "";
         }
 
-        return sanitizeString(str).replaceAll("[^a-zA-Z ]", "")
-                .replaceAll("\\s{2,}", " ").toLowerCase();
+        final String sanitized = sanitizeString(str);
+        final int length = sanitized.length();
+
+        // String.toLowerCase is locale-sensitive: in Turkish and Azeri, 'I'
+        // becomes a dotless i. Lithuanian is handled by String.toLowerCase as
+        // well, to be safe.
+        final String language = Locale.getDefault().getLanguage();
+        final boolean asciiLowerCase = !("tr".equals(language)
+                || "az".equals(language) || "lt".equals(language));
+
+        final char[] result = new char[length];
+        int size = 0;
+
+        for (int i = 0; i < length; i++) {
+            char character = sanitized.charAt(i);
+
+            if (character == ' ') {
+                // Runs of spaces, also those left by dropped characters, are
+                // collapsed into one.
+                if (size == 0 || result[size - 1] != ' ') {
+                    result[size++] = ' ';
+                }
+            } else if ((character >= 'a' && character <= 'z')
+                    || (character >= 'A' && character <= 'Z')) {
+                if (asciiLowerCase && character <= 'Z') {
+                    character += 'a' - 'A';
+                }
+
+                result[size++] = character;
+            }
+        }
+
+        final String normalized = new String(result, 0, size);
+
+        return asciiLowerCase ? normalized : normalized.toLowerCase();
+    }
+
+    protected static boolean isReplacedWhitespace(final char character) {
+        return character == '\t' || character == '\n' || character == '\r'
+                || character == '\f' || character == 0x0B;
+    }
+
+    /**
+     * Maps every char onto its ASCII residue after canonical decomposition.
+     * Initialized on first use.
+     */
+    protected static class SanitizeTable {
+
+        /**
+         * Marks a char that is dropped.
+         */
+        protected static final byte DROP = -1;
+
+        /**
+         * Marks a char that decomposes into several ASCII characters, which
+         * is handled by sanitizeStringSlow.
+         */
+        protected static final byte EXPAND = -2;
+
+        protected static final byte[] TABLE = new byte[Character.MAX_VALUE + 1];
+
+        static {
+            for (int character = 0; character <= Character.MAX_VALUE; character++) {
+                if (character < 0x80) {
+                    TABLE[character] = isReplacedWhitespace((char) character) ? (byte) ' '
+                            : (byte) character;
+
+                    continue;
+                }
+
+                final String decomposed = Normalizer.normalize(
+                        String.valueOf((char) character), Normalizer.Form.NFD);
+
+                byte residue = DROP;
+
+                for (int i = 0; i < decomposed.length(); i++) {
+                    final char part = decomposed.charAt(i);
+
+                    if (part < 0x80) {
+                        residue = (residue == DROP) ? (byte) part : EXPAND;
+                    }
+                }
+
+                if (residue >= 0 && isReplacedWhitespace((char) residue)) {
+                    residue = (byte) ' ';
+                }
+
+                TABLE[character] = residue;
+            }
+        }
+
     }
 
 }
@@ -0,0 +1,309 @@
+package be.stophr.ml.classification;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.crunch.Aggregator;
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.lib.Join;
+import org.apache.crunch.types.PTableType;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+
+import be.stophr.ml.classification.crunch.AggregateLabelsOp;
+import be.stophr.ml.classification.crunch.ConvergenceSummaryOp;
+import be.stophr.ml.classification.labels.Label;
+import be.stophr.ml.classification.labels.Label.NormType;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Vertex-centric (Pregel-style) variant of the Adsorption algorithm.
+ *
+ * Every node is represented by a single record holding its outgoing edges and
+ * its current label. During an iteration every record sends its structure to
+ * itself and its weighted label to its neighbours. A single shuffle then
+ * combines the messages per node and rebuilds the records, instead of the
+ * join and the grouping performed by GraphAdsorption. Messages are summed in
+ * the combiner as well, hence the map output is of the order of the number of
+ * nodes rather than the number of edges.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public class VertexGraphAdsorption<LabelT extends Label> extends
+        AbstractAdsorption<LabelT> {
+
+    public VertexGraphAdsorption(final Class<LabelT> labelClass,
+            final Label.Factory labelFactory) {
+        super(labelClass, labelFactory, ShadowNodes.negated());
+    }
+
+    @Override
+    public Pair<PTable<Long, LabelT>, PTable<Integer, Pair<Long, Double>>> run(
+            final PTable<Long, Pair<Long, Double>> initialWeights,
+            final PTable<Long, LabelT> initialLabels,
+            final Double updateConstant,
+            final StoppingCriterion criterion) {
+        assert initialWeights.getTypeFamily() != null;
+        assert initialLabels.getTypeFamily() != null;
+        assert updateConstant > 0;
+        assert criterion != null;
+
+        PTable<Long, Pair<Collection<Pair<Long, Double>>, LabelT>> vertices = this
+                .createVertices(this.preprocessWeights(initialWeights,
+                        initialLabels, updateConstant), this
+                        .preprocessLabels(initialLabels));
+
+        final ConvergenceSummaryOp<LabelT> summarizeConvergence = new ConvergenceSummaryOp<LabelT>(
+                criterion.getEpsilon());
+
+        PTable<Integer, Pair<Long, Double>> convergence = null;
+
+        PTable<Long, LabelT> labels = this.extractLabels(vertices);
+
+        for (int i = 1; i <= criterion.getMaxIterations(); i++) {
+            vertices = this.computeVertices(vertices);
+
+            final PTable<Long, LabelT> previous = labels;
+            labels = this.extractLabels(vertices);
+
+            if (criterion.isCheckIteration(i)) {
+                final PTable<Long, Double> distances = this.computeDistances(
+                        labels, previous);
+                final PTable<Integer, Pair<Long, Double>> intermediateConvergence = this
+                        .filterUnconverged(distances, i,
+                                criterion.getEpsilon());
+
+                if (convergence == null) {
+                    convergence = intermediateConvergence;
+                } else {
+                    convergence = convergence.union(intermediateConvergence);
+                }
+
+                if (criterion.canStopEarly()) {
+                    final PCollection<ConvergenceSummary> summaries = summarizeConvergence
+                            .summarize(distances.values());
+
+                    // The next iterations start from the materialized vertices.
+                    this.runPipeline(i, vertices, intermediateConvergence,
+                            summaries);
+
+                    final ConvergenceSummary summary = summarizeConvergence
+                            .merge(summaries);
+
+                    if (criterion.isConverged(summary.getUnconverged(),
+                            summary.getCount())) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        return Pair.of(labels, convergence);
+    }
+
+    /**
+     * Builds the vertex records from the edge table and the initial labels.
+     * This is the only time the edges are joined with the labels.
+     */
+    protected PTable<Long, Pair<Collection<Pair<Long, Double>>, LabelT>> createVertices(
+            final PTable<Long, Pair<Long, Double>> weights,
+            final PTable<Long, LabelT> labels) {
+        final PTable<Long, Collection<Pair<Long, Double>>> adjacency = weights
+                .groupByKey()
+                .mapValues(
+                        "CollectEdges",
+                        new MapFn<Iterable<Pair<Long, Double>>, Collection<Pair<Long, Double>>>() {
+
+                            @Override
+                            public Collection<Pair<Long, Double>> map(
+                                    Iterable<Pair<Long, Double>> edges) {
+                                final Collection<Pair<Long, Double>> collection = new ArrayList<Pair<Long, Double>>();
+
+                                for (final Pair<Long, Double> edge : edges) {
+                                    collection.add(edge);
+                                }
+
+                                return collection;
+                            }
+
+                        }, this.getAdjacencyType());
+
+        return Join
+                .fullJoin(adjacency, labels)
+                .mapValues(
+                        "CreateVertices",
+                        new MapFn<Pair<Collection<Pair<Long, Double>>, LabelT>, Pair<Collection<Pair<Long, Double>>, LabelT>>() {
+
+                            @Override
+                            public Pair<Collection<Pair<Long, Double>>, LabelT> map(
+                                    Pair<Collection<Pair<Long, Double>>, LabelT> vertex) {
+                                if (vertex.first() == null) {
+                                    return Pair.of(Collections
+                                            .<Pair<Long, Double>> emptyList(),
+                                            vertex.second());
+                                } else {
+                                    return vertex;
+                                }
+                            }
+
+                        }, this.getVertexType().getValueType());
+    }
+
+    /**
+     * Performs a single iteration: one map which emits the messages and a
+     * single shuffle which combines them into the new vertex records.
+     */
+    protected PTable<Long, Pair<Collection<Pair<Long, Double>>, LabelT>> computeVertices(
+            final PTable<Long, Pair<Collection<Pair<Long, Double>>, LabelT>> vertices) {
+        return vertices
+                .parallelDo(
+                        "SendMessages",
+                        new DoFn<Pair<Long, Pair<Collection<Pair<Long, Double>>, LabelT>>, Pair<Long, Pair<Collection<Pair<Long, Double>>, LabelT>>>() {
+
+                            @Override
+                            public void process(
+                                    Pair<Long, Pair<Collection<Pair<Long, Double>>, LabelT>> vertex,
+                                    Emitter<Pair<Long, Pair<Collection<Pair<Long, Double>>, LabelT>>> emitter) {
+                                final Collection<Pair<Long, Double>> edges = vertex
+                                        .second().first();
+                                final LabelT label = vertex.second().second();
+
+                                // The structure of the vertex is sent to
+                                // itself.
+                                emitter.emit(Pair.of(vertex.first(), Pair.of(
+                                        edges, (LabelT) null)));
+
+                                if (label == null) {
+                                    return;
+                                }
+
+                                for (final Pair<Long, Double> edge : edges) {
+                                    final Label influence = label
+                                            .multiply(edge.second());
+
+                                    emitter.emit(Pair.of(edge.first(), Pair
+                                            .of((Collection<Pair<Long, Double>>) null,
+                                                    VertexGraphAdsorption.this.labelClass
+                                                            .cast(influence))));
+                                }
+                            }
+
+                        }, this.getVertexType())
+                .groupByKey()
+                .combineValues(new CombineMessages<LabelT>(this.labelFactory))
+                .mapValues(
+                        "NormalizeVertices",
+                        new MapFn<Pair<Collection<Pair<Long, Double>>, LabelT>, Pair<Collection<Pair<Long, Double>>, LabelT>>() {
+
+                            @Override
+                            public Pair<Collection<Pair<Long, Double>>, LabelT> map(
+                                    Pair<Collection<Pair<Long, Double>>, LabelT> vertex) {
+                                final Collection<Pair<Long, Double>> edges = (vertex
+                                        .first() != null) ? vertex.first()
+                                        : Collections
+                                                .<Pair<Long, Double>> emptyList();
+
+                                final LabelT label = (vertex.second() != null) ? VertexGraphAdsorption.this.labelClass
+                                        .cast(vertex.second().normalize(
+                                                NormType.MANHATTAN)) : null;
+
+                                return Pair.of(edges, label);
+                            }
+
+                        }, this.getVertexType().getValueType());
+    }
+
+    protected PTable<Long, LabelT> extractLabels(
+            final PTable<Long, Pair<Collection<Pair<Long, Double>>, LabelT>> vertices) {
+        return vertices
+                .parallelDo(
+                        "ExtractLabels",
+                        new DoFn<Pair<Long, Pair<Collection<Pair<Long, Double>>, LabelT>>, Pair<Long, LabelT>>() {
+
+                            @Override
+                            public void process(
+                                    Pair<Long, Pair<Collection<Pair<Long, Double>>, LabelT>> vertex,
+                                    Emitter<Pair<Long, LabelT>> emitter) {
+                                if (vertex.second().second() != null) {
+                                    emitter.emit(Pair.of(vertex.first(), vertex
+                                            .second().second()));
+                                }
+                            }
+
+                        },
+                        Writables.tableOf(Writables.longs(),
+                                this.getLabelType()));
+    }
+
+    protected PType<Collection<Pair<Long, Double>>> getAdjacencyType() {
+        return Writables.collections(Writables.pairs(Writables.longs(),
+                Writables.doubles()));
+    }
+
+    protected PTableType<Long, Pair<Collection<Pair<Long, Double>>, LabelT>> getVertexType() {
+        return Writables.tableOf(
+                Writables.longs(),
+                Writables.pairs(this.getAdjacencyType(),
+                        this.getLabelType()));
+    }
+
+    /**
+     * Combines the messages sent to a single vertex: the structure is kept as
+     * is, the weighted labels are summed using Kahan summation. The result is
+     * a single message holding both.
+     */
+    protected static class CombineMessages<LabelT extends Label> implements
+            Aggregator<Pair<Collection<Pair<Long, Double>>, LabelT>> {
+
+        protected final AggregateLabelsOp.KahanAggregator<LabelT> aggregator;
+
+        protected Collection<Pair<Long, Double>> edges = null;
+        protected boolean reached = false;
+
+        public CombineMessages(final Label.Factory labelFactory) {
+            this.aggregator = new AggregateLabelsOp.KahanAggregator<LabelT>(
+                    labelFactory);
+        }
+
+        public void initialize(Configuration conf) {
+            this.aggregator.initialize(conf);
+        }
+
+        public void reset() {
+            this.aggregator.reset();
+
+            this.edges = null;
+            this.reached = false;
+        }
+
+        public void update(Pair<Collection<Pair<Long, Double>>, LabelT> message) {
+            if (message.first() != null) {
+                this.edges = message.first();
+            }
+
+            if (message.second() != null) {
+                this.aggregator.update(message.second());
+                this.reached = true;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public Iterable<Pair<Collection<Pair<Long, Double>>, LabelT>> results() {
+            final LabelT sum = this.reached ? (LabelT) this.aggregator.sum()
+                    : null;
+
+            return ImmutableList.of(Pair.of(this.edges, sum));
+        }
+
+    }
+
+}
@@ -6,11 +6,15 @@ import org.apache.crunch.Aggregator;
 import org.apache.crunch.MapFn;
 import org.apache.crunch.PGroupedTable;
 import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.PType;
 import org.apache.crunch.types.writable.Writables;
 import org.apache.hadoop.conf.Configuration;
 
+import be.stophr.ml.classification.AdsorptionCounters;
 import be.stophr.ml.classification.labels.Label;
 import be.stophr.ml.classification.labels.Label.NormType;
+import be.stophr.ml.classification.labels.PruningPolicy;
 
 import com.google.common.collect.ImmutableList;
 
@@ -29,50 +33,331 @@ public class AggregateLabelsOp<LabelT extends Label> implements Serializable {
     protected final Class<LabelT> labelClass;
     protected final Label.Factory labelFactory;
 
+    protected final PruningPolicy pruning;
+
     public AggregateLabelsOp(final Class<LabelT> labelClass,
             final Label.Factory labelFactory) {
+        this(labelClass, labelFactory, null);
+    }
+
+    /**
+     * The aggregated labels are pruned according to the given policy (if not
+     * null) before they are normalized.
+     */
+    public AggregateLabelsOp(final Class<LabelT> labelClass,
+            final Label.Factory labelFactory, final PruningPolicy pruning) {
         this.labelClass = labelClass;
         this.labelFactory = labelFactory;
+        this.pruning = pruning;
+    }
+
+    /**
+     * Aggregator which implements the Kahan summation algorithm over label
+     * instances. The sum is accumulated in place, such that no labels are
+     * allocated per update.
+     */
+    public static class KahanAggregator<LabelT extends Label> implements
+            Aggregator<LabelT> {
+
+        protected final Label.Factory labelFactory;
+
+        protected transient Label.Accumulator accumulator = null;
+
+        public KahanAggregator(final Label.Factory labelFactory) {
+            this.labelFactory = labelFactory;
+        }
+
+        public void initialize(Configuration arg0) {
+        }
+
+        public void reset() {
+            if (this.accumulator == null) {
+                this.accumulator = this.labelFactory.createAccumulator();
+            }
+
+            this.accumulator.reset();
+        }
+
+        public void update(LabelT other) {
+            this.accumulator.addScaled(other, 1.0);
+        }
+
+        /**
+         * Adds weight * label to the sum.
+         */
+        public void update(final Label label, final double weight) {
+            this.accumulator.addScaled(label, weight);
+        }
+
+        /**
+         * Adds the sum and the compensation of the other aggregator (see
+         * Label.Accumulator.merge).
+         */
+        public void merge(final KahanAggregator<?> other) {
+            this.accumulator.merge(other.accumulator);
+        }
+
+        public Label sum() {
+            return this.accumulator.result();
+        }
+
+        @SuppressWarnings("unchecked")
+        public Iterable<LabelT> results() {
+            return (Iterable<LabelT>) ImmutableList.of(this.sum());
+        }
+
+    }
+
+    /**
+     * Kahan aggregator over (label, weight) pairs, which sums the weighted
+     * labels without multiplying every label first. The result carries a unit
+     * weight, such that it can be used as a combiner.
+     */
+    public static class WeightedKahanAggregator<LabelT extends Label>
+            implements Aggregator<Pair<LabelT, Double>> {
+
+        protected final KahanAggregator<LabelT> aggregator;
+
+        public WeightedKahanAggregator(final Label.Factory labelFactory) {
+            this.aggregator = new KahanAggregator<LabelT>(labelFactory);
+        }
+
+        public void initialize(Configuration conf) {
+            this.aggregator.initialize(conf);
+        }
+
+        public void reset() {
+            this.aggregator.reset();
+        }
+
+        public void update(Pair<LabelT, Double> value) {
+            this.aggregator.update(value.first(), value.second());
+        }
+
+        @SuppressWarnings("unchecked")
+        public Iterable<Pair<LabelT, Double>> results() {
+            return ImmutableList.of(Pair.of((LabelT) this.aggregator.sum(),
+                    1.0));
+        }
+
+    }
+
+    /**
+     * Weighted Kahan aggregator over tagged values (see runTracked): the
+     * weighted labels sent to a node, tagged false, and its previous label,
+     * tagged true. As a combiner (op is null), it emits the partial sum and
+     * the previous label, tagged likewise. As a reducer, it emits the
+     * normalized sum together with its euclidean distance to the previous
+     * label, or the longest possible distance if there is none. A node
+     * without incoming labels is dropped.
+     */
+    public static class TrackingKahanAggregator<LabelT extends Label>
+            implements Aggregator<Pair<LabelT, Pair<Boolean, Double>>> {
+
+        protected final Label.Factory labelFactory;
+        protected final AggregateLabelsOp<LabelT> op;
+
+        protected final KahanAggregator<LabelT> aggregator;
+
+        protected transient boolean empty;
+        protected transient LabelT previous;
+
+        public TrackingKahanAggregator(final Label.Factory labelFactory,
+                final AggregateLabelsOp<LabelT> op) {
+            this.labelFactory = labelFactory;
+            this.op = op;
+
+            this.aggregator = new KahanAggregator<LabelT>(labelFactory);
+        }
+
+        public void initialize(Configuration conf) {
+            this.aggregator.initialize(conf);
+        }
+
+        public void reset() {
+            this.aggregator.reset();
+
+            this.empty = true;
+            this.previous = null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void update(Pair<LabelT, Pair<Boolean, Double>> value) {
+            if (value.second().first()) {
+                // Copied, as the framework may reuse the instance.
+                this.previous = (LabelT) value.first().multiply(1.0);
+            } else {
+                this.aggregator.update(value.first(), value.second()
+                        .second());
+                this.empty = false;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public Iterable<Pair<LabelT, Pair<Boolean, Double>>> results() {
+            final ImmutableList.Builder<Pair<LabelT, Pair<Boolean, Double>>> results = ImmutableList
+                    .builder();
+
+            if (this.op == null) {
+                if (!this.empty) {
+                    results.add(Pair.of((LabelT) this.aggregator.sum(),
+                            Pair.of(false, 1.0)));
+                }
+
+                if (this.previous != null) {
+                    results.add(Pair.of(this.previous, Pair.of(true, 0.0)));
+                }
+            } else if (!this.empty) {
+                final LabelT label = this.op.normalizeLabel(this.aggregator
+                        .sum());
+
+                // Longest possible distance, unless the node had a label
+                // before.
+                final double distance = (this.previous != null) ? this.previous
+                        .diff(label).euclideanNorm() : Math.sqrt(2.0);
+
+                results.add(Pair.of(label, Pair.of(false, distance)));
+            }
+
+            return results.build();
+        }
+
     }
 
     public PTable<Long, LabelT> run(final PGroupedTable<Long, LabelT> table) {
-        return table
+        return this.normalize(this.sum(table));
+    }
+
+    /**
+     * Sums the label instances without normalizing the result.
+     */
+    public PTable<Long, LabelT> sum(final PGroupedTable<Long, LabelT> table) {
         // Implements the Kahan summation algorithm.
-                .combineValues(new Aggregator<LabelT>() {
+        return table.combineValues(new KahanAggregator<LabelT>(
+                this.labelFactory));
+    }
 
-                    protected Label sum = null;
-                    protected Label c = null;
+    /**
+     * Same as run, but every label is multiplied by its weight first.
+     */
+    public PTable<Long, LabelT> runWeighted(
+            final PGroupedTable<Long, Pair<LabelT, Double>> table) {
+        return this.normalize(this.sumWeighted(table));
+    }
 
-                    public void initialize(Configuration arg0) {
-                    }
+    /**
+     * Sums the weighted label instances without normalizing the result.
+     */
+    public PTable<Long, LabelT> sumWeighted(
+            final PGroupedTable<Long, Pair<LabelT, Double>> table) {
+        return table.combineValues(
+                new WeightedKahanAggregator<LabelT>(this.labelFactory))
+                .mapValues("DropWeights", new MapFn<Pair<LabelT, Double>, LabelT>() {
 
-                    public void reset() {
-                        this.sum = labelFactory.create();
-                        this.c = labelFactory.create();
+                    @Override
+                    public LabelT map(Pair<LabelT, Double> sum) {
+                        assert sum.second() == 1.0;
+
+                        this.increment(AdsorptionCounters.AGGREGATED_NODES);
+
+                        return sum.first();
                     }
 
-                    public void update(LabelT other) {
-                        final Label y = other.diff(this.c);
-                        final Label t = this.sum.add(y);
+                }, this.getLabelType());
+    }
 
-                        this.c = t.diff(this.sum).diff(y);
+    /**
+     * Same as runWeighted, but the previous label of every node is sent to
+     * the node along with the weighted labels, tagged such that it cannot be
+     * mistaken for one of these. Returns the labels together with their
+     * distance to the previous label (see TrackingKahanAggregator), without
+     * a join with the previous labels.
+     */
+    public PTable<Long, Pair<LabelT, Double>> runTracked(
+            final PTable<Long, Pair<LabelT, Double>> labels,
+            final PTable<Long, LabelT> previous) {
+        return this
+                .tagLabels(labels)
+                .union(this.tagPrevious(previous))
+                .groupByKey()
+                .combineValues(
+                        new TrackingKahanAggregator<LabelT>(this.labelFactory,
+                                null),
+                        new TrackingKahanAggregator<LabelT>(this.labelFactory,
+                                this))
+                .mapValues("DropTags",
+                        new MapFn<Pair<LabelT, Pair<Boolean, Double>>, Pair<LabelT, Double>>() {
 
-                        this.sum = t;
-                    }
+                            @Override
+                            public Pair<LabelT, Double> map(
+                                    Pair<LabelT, Pair<Boolean, Double>> label) {
+                                return Pair.of(label.first(), label.second()
+                                        .second());
+                            }
 
-                    @SuppressWarnings("unchecked")
-                    public Iterable<LabelT> results() {
-                        return (Iterable<LabelT>) ImmutableList.of(this.sum);
+                        },
+                        Writables.pairs(this.getLabelType(),
+                                Writables.doubles()));
+    }
+
+    protected PTable<Long, Pair<LabelT, Pair<Boolean, Double>>> tagLabels(
+            final PTable<Long, Pair<LabelT, Double>> labels) {
+        return labels.mapValues("TagLabels",
+                new MapFn<Pair<LabelT, Double>, Pair<LabelT, Pair<Boolean, Double>>>() {
+
+                    @Override
+                    public Pair<LabelT, Pair<Boolean, Double>> map(
+                            Pair<LabelT, Double> label) {
+                        return Pair.of(label.first(),
+                                Pair.of(false, label.second()));
                     }
 
-                }).mapValues("NormalizeLabels", new MapFn<LabelT, LabelT>() {
+                }, this.getTaggedLabelType());
+    }
+
+    protected PTable<Long, Pair<LabelT, Pair<Boolean, Double>>> tagPrevious(
+            final PTable<Long, LabelT> labels) {
+        return labels.mapValues("TagPrevious",
+                new MapFn<LabelT, Pair<LabelT, Pair<Boolean, Double>>>() {
 
                     @Override
-                    public LabelT map(LabelT label) {
-                        return AggregateLabelsOp.this.labelClass.cast(label
-                                .normalize(NormType.MANHATTAN));
+                    public Pair<LabelT, Pair<Boolean, Double>> map(LabelT label) {
+                        return Pair.of(label, Pair.of(true, 0.0));
                     }
-                }, Writables.records(this.labelClass));
+
+                }, this.getTaggedLabelType());
+    }
+
+    protected PType<Pair<LabelT, Pair<Boolean, Double>>> getTaggedLabelType() {
+        return Writables.pairs(this.getLabelType(), Writables.pairs(
+                Writables.booleans(), Writables.doubles()));
+    }
+
+    @SuppressWarnings("unchecked")
+    protected PType<LabelT> getLabelType() {
+        return (PType<LabelT>) this.labelFactory.getLabelType();
+    }
+
+    /**
+     * Prunes (if a policy is given) and normalizes the given labels.
+     */
+    public PTable<Long, LabelT> normalize(final PTable<Long, LabelT> table) {
+        return table.mapValues("NormalizeLabels", new MapFn<LabelT, LabelT>() {
+
+            @Override
+            public LabelT map(LabelT label) {
+                this.increment(AdsorptionCounters.NORMALIZED_LABELS);
+
+                return AggregateLabelsOp.this.normalizeLabel(label);
+            }
+        }, this.getLabelType());
+    }
+
+    protected LabelT normalizeLabel(final Label label) {
+        final Label pruned = (this.pruning != null) ? this.pruning.apply(label)
+                : label;
+
+        return this.labelClass.cast(pruned.normalize(NormType.MANHATTAN));
     }
 
 }
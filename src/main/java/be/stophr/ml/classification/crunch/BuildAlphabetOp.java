@@ -0,0 +1,143 @@
+package be.stophr.ml.classification.crunch;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.FilterFn;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.writable.Writables;
+
+import be.stophr.ml.classification.Alphabet;
+
+/**
+ * Apache Crunch operation which builds a locked alphabet from a collection of
+ * tokens, such as screen names or hashtags.
+ *
+ * The distinct tokens are counted in parallel and those that occur less than
+ * the minimum frequency are dropped. The tokens are then hashed into buckets,
+ * and the identifier of a token is the number of tokens in the preceding
+ * buckets plus its rank within its own bucket. Hence the identifiers are
+ * stable: they only depend on the set of tokens and the number of buckets.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public class BuildAlphabetOp implements Serializable {
+
+    protected final long minFrequency;
+    protected final int numBuckets;
+
+    public BuildAlphabetOp(final long minFrequency, final int numBuckets) {
+        assert minFrequency >= 1;
+        assert numBuckets >= 1;
+
+        this.minFrequency = minFrequency;
+        this.numBuckets = numBuckets;
+    }
+
+    public Alphabet run(final PCollection<String> tokens) {
+        final Pair<PTable<String, Long>, Long> identifiers = this
+                .assignIdentifiers(tokens);
+
+        assert identifiers.second() <= Integer.MAX_VALUE;
+
+        final String[] alphabet = new String[identifiers.second().intValue()];
+
+        for (final Pair<String, Long> entry : identifiers.first()
+                .materialize()) {
+            alphabet[entry.second().intValue()] = entry.first();
+        }
+
+        return Alphabet.fromTokens(alphabet);
+    }
+
+    /**
+     * Returns the identifier of every frequent token and the number of
+     * frequent tokens, without collecting them on the driver.
+     */
+    public Pair<PTable<String, Long>, Long> assignIdentifiers(
+            final PCollection<String> tokens) {
+        final PTable<Integer, String> buckets = tokens.count()
+                .filter("MinimumFrequency",
+                        new FilterFn<Pair<String, Long>>() {
+
+                            @Override
+                            public boolean accept(Pair<String, Long> count) {
+                                return count.second() >= BuildAlphabetOp.this.minFrequency;
+                            }
+
+                        }).keys().by("Bucket", new MapFn<String, Integer>() {
+
+                    @Override
+                    public Integer map(String token) {
+                        return BuildAlphabetOp.this.getBucket(token);
+                    }
+
+                }, Writables.ints());
+
+        // Counting the buckets runs the pipeline; the identifiers are then
+        // assigned from the materialized buckets.
+        buckets.materialize();
+
+        final Map<Integer, Long> bucketSizes = buckets.keys().count()
+                .materializeToMap();
+
+        final long[] offsets = new long[this.numBuckets];
+        long size = 0L;
+
+        for (int i = 0; i < this.numBuckets; i++) {
+            offsets[i] = size;
+
+            if (bucketSizes.containsKey(i)) {
+                size += bucketSizes.get(i);
+            }
+        }
+
+        final PTable<String, Long> identifiers = buckets.groupByKey()
+                .parallelDo("AssignIdentifiers",
+                        new DoFn<Pair<Integer, Iterable<String>>, Pair<String, Long>>() {
+
+                            @Override
+                            public void process(
+                                    Pair<Integer, Iterable<String>> instance,
+                                    Emitter<Pair<String, Long>> emitter) {
+                                String[] tokens = new String[16];
+                                int size = 0;
+
+                                for (final String token : instance.second()) {
+                                    if (size == tokens.length) {
+                                        tokens = Arrays.copyOf(tokens, 2 * size);
+                                    }
+
+                                    tokens[size++] = token;
+                                }
+
+                                Arrays.sort(tokens, 0, size);
+
+                                final long offset = offsets[instance.first()];
+
+                                for (int i = 0; i < size; i++) {
+                                    emitter.emit(Pair.of(tokens[i], offset + i));
+                                }
+                            }
+
+                        }, Writables.tableOf(Writables.strings(),
+                                Writables.longs()));
+
+        return Pair.of(identifiers, size);
+    }
+
+    protected int getBucket(final String token) {
+        // String.hashCode is the same on every JVM.
+        final int hash = token.hashCode() * 0x9e3779b9;
+
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % this.numBuckets;
+    }
+
+}
@@ -0,0 +1,80 @@
+package be.stophr.ml.classification.crunch;
+
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.writable.Writables;
+
+import be.stophr.ml.classification.ConvergenceSummary;
+import be.stophr.ml.classification.labels.Label;
+
+/**
+ * Apache Crunch operation which summarizes the distances between the labels
+ * of two consecutive iterations (see AggregateLabelsOp.runTracked) in a
+ * single pass (see SummaryOp). Only the final summary reaches the driver,
+ * instead of one record per unconverged node.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public class ConvergenceSummaryOp<LabelT extends Label> extends
+        SummaryOp<Double, ConvergenceSummary> {
+
+    public static final int DEFAULT_NUM_BINS = 8;
+
+    protected final double epsilon;
+    protected final int numBins;
+
+    public ConvergenceSummaryOp(final double epsilon) {
+        this(epsilon, DEFAULT_NUM_BINS);
+    }
+
+    public ConvergenceSummaryOp(final double epsilon, final int numBins) {
+        super("SummarizeConvergence", ConvergenceSummary.class);
+
+        assert epsilon >= 0.0;
+        assert numBins >= 1;
+
+        this.epsilon = epsilon;
+        this.numBins = numBins;
+    }
+
+    /**
+     * Returns a collection holding the summary as its single element.
+     */
+    public PCollection<ConvergenceSummary> run(
+            final PTable<Long, Pair<LabelT, Double>> distances) {
+        return this.summarize(distances.values().parallelDo("SelectDistances",
+                new MapFn<Pair<LabelT, Double>, Double>() {
+
+                    @Override
+                    public Double map(Pair<LabelT, Double> label) {
+                        return label.second();
+                    }
+
+                }, Writables.doubles()));
+    }
+
+    public ConvergenceSummary compute(
+            final PTable<Long, Pair<LabelT, Double>> distances) {
+        return this.merge(this.run(distances));
+    }
+
+    @Override
+    protected ConvergenceSummary createSummary() {
+        return new ConvergenceSummary(this.epsilon, this.numBins);
+    }
+
+    @Override
+    protected void add(final ConvergenceSummary summary, final Double distance) {
+        summary.add(distance);
+    }
+
+    @Override
+    protected void merge(final ConvergenceSummary summary,
+            final ConvergenceSummary other) {
+        summary.merge(other);
+    }
+
+}
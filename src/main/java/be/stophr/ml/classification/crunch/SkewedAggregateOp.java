@@ -0,0 +1,201 @@
+package be.stophr.ml.classification.crunch;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.FilterFn;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.writable.Writables;
+
+import be.stophr.ml.classification.labels.Label;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Apache Crunch operation which pre-aggregates the labels sent to hot keys,
+ * i.e. nodes with a huge in-degree, such that no single reducer receives all
+ * of their labels.
+ *
+ * The labels sent to a hot key are spread over numSalts salted keys, (node,
+ * salt), which are summed separately by the Kahan aggregator of
+ * AggregateLabelsOp. The partial sums, carrying a unit weight, then replace
+ * the labels of the hot key. The labels of all other nodes are left as is.
+ * Hence aggregating the result with AggregateLabelsOp yields the same labels
+ * (up to rounding) as aggregating the labels directly, while the reducer of
+ * a hot key receives at most numSalts sums.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public class SkewedAggregateOp<LabelT extends Label> implements Serializable {
+
+    protected final Label.Factory labelFactory;
+
+    /**
+     * Sorted.
+     */
+    protected final long[] hotKeys;
+    protected final int numSalts;
+
+    public SkewedAggregateOp(final Label.Factory labelFactory,
+            final long[] hotKeys, final int numSalts) {
+        assert labelFactory != null;
+        assert numSalts >= 1;
+
+        this.labelFactory = labelFactory;
+        this.hotKeys = hotKeys.clone();
+        this.numSalts = numSalts;
+
+        Arrays.sort(this.hotKeys);
+    }
+
+    /**
+     * Returns the number of incoming edges of every target.
+     */
+    public static PTable<Long, Long> inDegrees(
+            final PTable<Long, Pair<Long, Double>> weights) {
+        return weights.values()
+                .parallelDo("EdgeTargets", new MapFn<Pair<Long, Double>, Long>() {
+
+                    @Override
+                    public Long map(Pair<Long, Double> edge) {
+                        return edge.first();
+                    }
+
+                }, Writables.longs()).count();
+    }
+
+    /**
+     * Returns the targets whose in-degree exceeds skew times the mean
+     * in-degree of all targets. Runs the pipeline.
+     */
+    public static long[] findHotKeys(
+            final PTable<Long, Pair<Long, Double>> weights, final double skew) {
+        assert skew >= 1.0;
+
+        final PTable<Long, Long> inDegrees = inDegrees(weights);
+
+        final long numTargets = inDegrees.length().getValue();
+        final long numEdges = weights.length().getValue();
+
+        if (numTargets == 0) {
+            return new long[0];
+        }
+
+        final double minInDegree = skew * numEdges / numTargets;
+
+        final PTable<Long, Long> hot = inDegrees.filter("HotKeys",
+                new FilterFn<Pair<Long, Long>>() {
+
+                    @Override
+                    public boolean accept(Pair<Long, Long> inDegree) {
+                        return inDegree.second() > minInDegree;
+                    }
+
+                });
+
+        final List<Long> keys = Lists.newArrayList(hot.keys().materialize());
+        final long[] hotKeys = new long[keys.size()];
+
+        for (int i = 0; i < hotKeys.length; i++) {
+            hotKeys[i] = keys.get(i);
+        }
+
+        return hotKeys;
+    }
+
+    public long[] getHotKeys() {
+        return this.hotKeys.clone();
+    }
+
+    public boolean isHot(final long key) {
+        return Arrays.binarySearch(this.hotKeys, key) >= 0;
+    }
+
+    /**
+     * Replaces the labels sent to the hot keys by their partial sums. The
+     * result can be aggregated by AggregateLabelsOp.runWeighted (or
+     * runTracked) instead of the given labels.
+     */
+    public PTable<Long, Pair<LabelT, Double>> presum(
+            final PTable<Long, Pair<LabelT, Double>> labels) {
+        if (this.hotKeys.length == 0) {
+            return labels;
+        }
+
+        final PTable<Long, Pair<LabelT, Double>> cold = labels.filter(
+                "ColdKeys", new FilterFn<Pair<Long, Pair<LabelT, Double>>>() {
+
+                    @Override
+                    public boolean accept(Pair<Long, Pair<LabelT, Double>> label) {
+                        return !SkewedAggregateOp.this.isHot(label.first());
+                    }
+
+                });
+
+        final PTable<Pair<Long, Integer>, Pair<LabelT, Double>> salted = labels
+                .parallelDo(
+                        "SaltHotKeys",
+                        new DoFn<Pair<Long, Pair<LabelT, Double>>, Pair<Pair<Long, Integer>, Pair<LabelT, Double>>>() {
+
+                            // Spreads the labels of every task evenly.
+                            protected transient int salt;
+
+                            @Override
+                            public void process(
+                                    Pair<Long, Pair<LabelT, Double>> label,
+                                    Emitter<Pair<Pair<Long, Integer>, Pair<LabelT, Double>>> emitter) {
+                                final SkewedAggregateOp<LabelT> op = SkewedAggregateOp.this;
+
+                                if (op.isHot(label.first())) {
+                                    this.salt = (this.salt + 1) % op.numSalts;
+
+                                    emitter.emit(Pair.of(
+                                            Pair.of(label.first(), this.salt),
+                                            label.second()));
+                                }
+                            }
+
+                        },
+                        Writables.tableOf(
+                                Writables.pairs(Writables.longs(),
+                                        Writables.ints()),
+                                this.getWeightedLabelType()));
+
+        final PTable<Long, Pair<LabelT, Double>> partialSums = salted
+                .groupByKey()
+                .combineValues(
+                        new AggregateLabelsOp.WeightedKahanAggregator<LabelT>(
+                                this.labelFactory))
+                .parallelDo(
+                        "UnsaltHotKeys",
+                        new MapFn<Pair<Pair<Long, Integer>, Pair<LabelT, Double>>, Pair<Long, Pair<LabelT, Double>>>() {
+
+                            @Override
+                            public Pair<Long, Pair<LabelT, Double>> map(
+                                    Pair<Pair<Long, Integer>, Pair<LabelT, Double>> sum) {
+                                return Pair.of(sum.first().first(),
+                                        sum.second());
+                            }
+
+                        },
+                        Writables.tableOf(Writables.longs(),
+                                this.getWeightedLabelType()));
+
+        return cold.union(partialSums);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected PType<Pair<LabelT, Double>> getWeightedLabelType() {
+        return Writables.pairs(
+                (PType<LabelT>) this.labelFactory.getLabelType(),
+                Writables.doubles());
+    }
+
+}
@@ -0,0 +1,126 @@
+package be.stophr.ml.classification.crunch;
+
+import java.io.Serializable;
+
+import org.apache.crunch.Aggregator;
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Writable;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Apache Crunch operation which summarizes a collection in a single pass.
+ * Every task adds its values to a summary in memory and only emits that
+ * summary, which are then merged by a combiner and a single reducer. Hence
+ * only the final summary reaches the driver.
+ *
+ * Subclasses define the summary: how to create an empty one, add a value to
+ * it and merge two of them.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public abstract class SummaryOp<T, SummaryT extends Writable> implements
+        Serializable {
+
+    protected final String name;
+    protected final Class<SummaryT> summaryClass;
+
+    protected SummaryOp(final String name, final Class<SummaryT> summaryClass) {
+        assert name != null && summaryClass != null;
+
+        this.name = name;
+        this.summaryClass = summaryClass;
+    }
+
+    /**
+     * Returns a collection holding the summary as its single element.
+     */
+    public PCollection<SummaryT> summarize(final PCollection<T> values) {
+        return values
+                .parallelDo(this.name,
+                        new DoFn<T, Pair<Integer, SummaryT>>() {
+
+                            protected transient SummaryT summary;
+
+                            @Override
+                            public void initialize() {
+                                this.summary = SummaryOp.this.createSummary();
+                            }
+
+                            @Override
+                            public void process(T value,
+                                    Emitter<Pair<Integer, SummaryT>> emitter) {
+                                SummaryOp.this.add(this.summary, value);
+                            }
+
+                            @Override
+                            public void cleanup(
+                                    Emitter<Pair<Integer, SummaryT>> emitter) {
+                                emitter.emit(Pair.of(0, this.summary));
+                            }
+
+                        },
+                        Writables.tableOf(Writables.ints(),
+                                Writables.writables(this.summaryClass)))
+                .groupByKey(1)
+                .combineValues(new MergeAggregator<SummaryT>(this)).values();
+    }
+
+    /**
+     * Runs the pipeline (unless the summaries were computed already) and
+     * returns the merged summary.
+     */
+    public SummaryT merge(final PCollection<SummaryT> summaries) {
+        final SummaryT result = this.createSummary();
+
+        for (final SummaryT summary : summaries.materialize()) {
+            this.merge(result, summary);
+        }
+
+        return result;
+    }
+
+    protected abstract SummaryT createSummary();
+
+    protected abstract void add(SummaryT summary, T value);
+
+    /**
+     * Merges the other summary into the first one.
+     */
+    protected abstract void merge(SummaryT summary, SummaryT other);
+
+    protected static class MergeAggregator<SummaryT extends Writable>
+            implements Aggregator<SummaryT> {
+
+        protected final SummaryOp<?, SummaryT> op;
+
+        protected transient SummaryT sum;
+
+        public MergeAggregator(final SummaryOp<?, SummaryT> op) {
+            this.op = op;
+        }
+
+        public void initialize(Configuration conf) {
+        }
+
+        public void reset() {
+            this.sum = this.op.createSummary();
+        }
+
+        public void update(SummaryT summary) {
+            this.op.merge(this.sum, summary);
+        }
+
+        public Iterable<SummaryT> results() {
+            return ImmutableList.of(this.sum);
+        }
+
+    }
+
+}
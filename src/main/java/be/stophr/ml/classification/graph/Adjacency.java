@@ -0,0 +1,232 @@
+package be.stophr.ml.classification.graph;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Compact representation of the outgoing edges of a single node.
+ *
+ * The targets are kept in ascending order and serialized as variable-length
+ * differences between consecutive targets. The weights can optionally be
+ * quantized to single precision or to 16 bits (bfloat16, i.e. the upper half
+ * of a single precision float, which keeps its range). Quantization happens
+ * upon construction, such that an instance holds exactly the weights it will
+ * serialize.
+ *
+ * Instances are reused when deserialized through readFields.
+ *
+ * @author Christophe Van Gysel
+ */
+public class Adjacency implements Writable {
+
+    public static enum WeightEncoding {
+        DOUBLE, FLOAT, BFLOAT16;
+    }
+
+    protected WeightEncoding encoding = WeightEncoding.DOUBLE;
+
+    protected int size = 0;
+    protected long[] targets = new long[0];
+    protected double[] weights = new double[0];
+
+    public Adjacency() {
+    }
+
+    public Adjacency(final long[] targets, final double[] weights,
+            final WeightEncoding encoding) {
+        this(targets, weights, targets.length, encoding);
+    }
+
+    /**
+     * Creates an adjacency list from the first size entries of the given
+     * arrays, which do not need to be sorted.
+     */
+    public Adjacency(final long[] targets, final double[] weights,
+            final int size, final WeightEncoding encoding) {
+        assert targets.length >= size && weights.length >= size;
+        assert encoding != null;
+
+        final Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+
+        // Stable, hence parallel edges keep their relative order.
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer first, Integer second) {
+                final long a = targets[first];
+                final long b = targets[second];
+
+                return a < b ? -1 : (a == b ? 0 : 1);
+            }
+
+        });
+
+        this.encoding = encoding;
+        this.size = size;
+        this.targets = new long[size];
+        this.weights = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            this.targets[i] = targets[order[i]];
+            this.weights[i] = quantize(weights[order[i]], encoding);
+        }
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public long getTarget(final int index) {
+        assert index >= 0 && index < this.size;
+
+        return this.targets[index];
+    }
+
+    public double getWeight(final int index) {
+        assert index >= 0 && index < this.size;
+
+        return this.weights[index];
+    }
+
+    public WeightEncoding getEncoding() {
+        return this.encoding;
+    }
+
+    public static double quantize(final double weight,
+            final WeightEncoding encoding) {
+        switch (encoding) {
+        case FLOAT:
+            return (float) weight;
+        case BFLOAT16:
+            return fromBFloat16(toBFloat16((float) weight));
+        default:
+            return weight;
+        }
+    }
+
+    /**
+     * Rounds a single precision float to the nearest bfloat16, ties to even.
+     */
+    protected static short toBFloat16(final float value) {
+        final int bits = Float.floatToIntBits(value);
+
+        if (Float.isNaN(value)) {
+            return (short) ((bits >>> 16) | 0x0040);
+        }
+
+        return (short) ((bits + 0x7FFF + ((bits >>> 16) & 1)) >>> 16);
+    }
+
+    protected static float fromBFloat16(final short value) {
+        return Float.intBitsToFloat((value & 0xFFFF) << 16);
+    }
+
+    public void readFields(DataInput input) throws IOException {
+        this.encoding = WeightEncoding.values()[input.readByte()];
+        this.size = WritableUtils.readVInt(input);
+
+        if (this.targets.length < this.size) {
+            this.targets = new long[this.size];
+            this.weights = new double[this.size];
+        }
+
+        long target = 0;
+
+        for (int i = 0; i < this.size; i++) {
+            target = (i == 0) ? WritableUtils.readVLong(input) : target
+                    + WritableUtils.readVLong(input);
+
+            this.targets[i] = target;
+        }
+
+        for (int i = 0; i < this.size; i++) {
+            switch (this.encoding) {
+            case FLOAT:
+                this.weights[i] = input.readFloat();
+                break;
+            case BFLOAT16:
+                this.weights[i] = fromBFloat16(input.readShort());
+                break;
+            default:
+                this.weights[i] = input.readDouble();
+            }
+        }
+    }
+
+    public void write(DataOutput output) throws IOException {
+        output.writeByte(this.encoding.ordinal());
+        WritableUtils.writeVInt(output, this.size);
+
+        for (int i = 0; i < this.size; i++) {
+            WritableUtils.writeVLong(output, (i == 0) ? this.targets[i]
+                    : this.targets[i] - this.targets[i - 1]);
+        }
+
+        for (int i = 0; i < this.size; i++) {
+            switch (this.encoding) {
+            case FLOAT:
+                output.writeFloat((float) this.weights[i]);
+                break;
+            case BFLOAT16:
+                output.writeShort(toBFloat16((float) this.weights[i]));
+                break;
+            default:
+                output.writeDouble(this.weights[i]);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("[");
+
+        for (int i = 0; i < this.size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+
+            builder.append(this.targets[i]);
+            builder.append(": ");
+            builder.append(this.weights[i]);
+        }
+
+        builder.append("]");
+
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other instanceof Adjacency) {
+            final Adjacency otherAdjacency = (Adjacency) other;
+
+            return this.size == otherAdjacency.size
+                    && Arrays.equals(
+                            Arrays.copyOf(this.targets, this.size),
+                            Arrays.copyOf(otherAdjacency.targets,
+                                    otherAdjacency.size))
+                    && Arrays.equals(
+                            Arrays.copyOf(this.weights, this.size),
+                            Arrays.copyOf(otherAdjacency.weights,
+                                    otherAdjacency.size));
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(Arrays.copyOf(this.targets, this.size));
+    }
+
+}
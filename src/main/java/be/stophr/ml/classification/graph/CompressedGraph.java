@@ -0,0 +1,212 @@
+package be.stophr.ml.classification.graph;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.apache.crunch.Pair;
+
+/**
+ * Weighted, directed graph packed in compressed sparse row (CSR) format.
+ *
+ * Node identifiers are mapped onto dense indices in ascending order of their
+ * identifier. The outgoing edges of the node with index i are stored at
+ * positions offsets[i] up to (but excluding) offsets[i + 1] of the targets and
+ * weights arrays, in the order in which they were presented to the graph.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public class CompressedGraph implements Serializable {
+
+    /**
+     * Largest number of edges that can be packed: the identifiers of both
+     * endpoints of every edge are sorted in a single array, and arrays are
+     * indexed by an int.
+     */
+    public static final int MAX_EDGES = (Integer.MAX_VALUE - 8) / 2;
+
+    protected final long[] nodes;
+
+    protected final int[] offsets;
+    protected final int[] targets;
+    protected final double[] weights;
+
+    protected CompressedGraph(final long[] nodes, final int[] offsets,
+            final int[] targets, final double[] weights) {
+        assert nodes != null && offsets != null;
+        assert offsets.length == nodes.length + 1;
+        assert targets.length == weights.length;
+        assert offsets[nodes.length] == targets.length;
+
+        this.nodes = nodes;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+    }
+
+    /**
+     * Packs a list of weighted edges, as used by GraphAdsorption, into a
+     * compressed graph. The edges are only traversed once.
+     */
+    public static CompressedGraph fromEdges(
+            final Iterable<Pair<Long, Pair<Long, Double>>> edges) {
+        long[] sources = new long[1024];
+        long[] targets = new long[1024];
+        double[] weights = new double[1024];
+
+        int numEdges = 0;
+
+        for (final Pair<Long, Pair<Long, Double>> edge : edges) {
+            if (numEdges == sources.length) {
+                if (numEdges == MAX_EDGES) {
+                    throw new IllegalArgumentException(
+                            "Graph has more than " + MAX_EDGES + " edges.");
+                }
+
+                final int capacity = (int) Math.min(2L * sources.length,
+                        MAX_EDGES);
+
+                sources = Arrays.copyOf(sources, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+            }
+
+            sources[numEdges] = edge.first();
+            targets[numEdges] = edge.second().first();
+            weights[numEdges] = edge.second().second();
+
+            numEdges++;
+        }
+
+        return fromEdges(sources, targets, weights, numEdges);
+    }
+
+    /**
+     * Packs the first numEdges entries of the given parallel arrays into a
+     * compressed graph.
+     */
+    public static CompressedGraph fromEdges(final long[] sources,
+            final long[] targets, final double[] weights, final int numEdges) {
+        assert numEdges >= 0;
+
+        if (numEdges > MAX_EDGES) {
+            throw new IllegalArgumentException("Graph has more than "
+                    + MAX_EDGES + " edges.");
+        }
+
+        assert sources.length >= numEdges && targets.length >= numEdges
+                && weights.length >= numEdges;
+
+        final long[] identifiers = new long[2 * numEdges];
+        System.arraycopy(sources, 0, identifiers, 0, numEdges);
+        System.arraycopy(targets, 0, identifiers, numEdges, numEdges);
+
+        Arrays.sort(identifiers);
+
+        int numNodes = 0;
+        for (int i = 0; i < identifiers.length; i++) {
+            if (i == 0 || identifiers[i] != identifiers[i - 1]) {
+                identifiers[numNodes++] = identifiers[i];
+            }
+        }
+
+        final long[] nodes = Arrays.copyOf(identifiers, numNodes);
+
+        final int[] offsets = new int[numNodes + 1];
+        final int[] sourceIndices = new int[numEdges];
+
+        for (int i = 0; i < numEdges; i++) {
+            sourceIndices[i] = Arrays.binarySearch(nodes, sources[i]);
+            offsets[sourceIndices[i] + 1]++;
+        }
+
+        for (int i = 0; i < numNodes; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        final int[] position = Arrays.copyOf(offsets, numNodes);
+        final int[] packedTargets = new int[numEdges];
+        final double[] packedWeights = new double[numEdges];
+
+        for (int i = 0; i < numEdges; i++) {
+            final int index = position[sourceIndices[i]]++;
+
+            packedTargets[index] = Arrays.binarySearch(nodes, targets[i]);
+            packedWeights[index] = weights[i];
+        }
+
+        return new CompressedGraph(nodes, offsets, packedTargets,
+                packedWeights);
+    }
+
+    /**
+     * Returns the graph with all edges reversed, i.e. the compressed sparse
+     * column representation of this graph. The incoming edges of every node
+     * are ordered by the index of their source.
+     */
+    public CompressedGraph reverse() {
+        final int numNodes = this.size();
+
+        final int[] offsets = new int[numNodes + 1];
+
+        for (final int target : this.targets) {
+            offsets[target + 1]++;
+        }
+
+        for (int i = 0; i < numNodes; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        final int[] position = Arrays.copyOf(offsets, numNodes);
+        final int[] sources = new int[this.targets.length];
+        final double[] weights = new double[this.weights.length];
+
+        for (int source = 0; source < numNodes; source++) {
+            for (int j = this.offsets[source]; j < this.offsets[source + 1]; j++) {
+                final int index = position[this.targets[j]]++;
+
+                sources[index] = source;
+                weights[index] = this.weights[j];
+            }
+        }
+
+        return new CompressedGraph(this.nodes, offsets, sources, weights);
+    }
+
+    public int size() {
+        return this.nodes.length;
+    }
+
+    public int numEdges() {
+        return this.targets.length;
+    }
+
+    /**
+     * Returns the dense index of the given node identifier, or a negative
+     * value if the node is not part of the graph.
+     */
+    public int indexOf(final long node) {
+        return Arrays.binarySearch(this.nodes, node);
+    }
+
+    public long getNode(final int index) {
+        return this.nodes[index];
+    }
+
+    /**
+     * The arrays below are exposed for tight loops; they should be treated as
+     * read-only.
+     */
+    public int[] getOffsets() {
+        return this.offsets;
+    }
+
+    public int[] getTargets() {
+        return this.targets;
+    }
+
+    public double[] getWeights() {
+        return this.weights;
+    }
+
+}
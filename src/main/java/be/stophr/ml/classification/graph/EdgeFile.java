@@ -0,0 +1,480 @@
+package be.stophr.ml.classification.graph;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.crunch.Pair;
+
+import be.stophr.ml.classification.ParallelLineReader;
+
+/**
+ * Binary edge list of fixed-width (source, target, weight) records, which is
+ * memory-mapped when read instead of being parsed line by line.
+ *
+ * The file starts with a header of HEADER_SIZE bytes: the magic number, the
+ * format version, the flags and the number of edges. Every edge then takes
+ * RECORD_SIZE bytes: the source and target as longs and the weight as a
+ * double, all big-endian (i.e. as written by DataOutput). If the SORTED flag
+ * is set, the records are in ascending order of their source; convert
+ * can be asked to sort the records.
+ *
+ * Files beyond 2GB are mapped in several segments. Pipelines read edge files
+ * through EdgeFileInputFormat instead.
+ *
+ * @author Christophe Van Gysel
+ */
+public class EdgeFile implements Closeable {
+
+    public static final int MAGIC = 0x53474945;
+    public static final short VERSION = 1;
+
+    public static final short SORTED = 0x01;
+
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 24;
+
+    /**
+     * Number of records per mapped segment.
+     */
+    protected static final int SEGMENT_SIZE = Integer.MAX_VALUE / RECORD_SIZE;
+
+    /**
+     * Appends edges to a new edge file. The number of edges is written to the
+     * header when the writer is closed.
+     */
+    public static class Writer implements Closeable {
+
+        protected final File file;
+        protected final boolean sorted;
+
+        protected final DataOutputStream output;
+
+        protected long size = 0L;
+        protected long lastSource = Long.MIN_VALUE;
+        protected boolean ordered = true;
+
+        /**
+         * If sorted, the edges must be appended in ascending order of their
+         * source.
+         */
+        public Writer(final File file, final boolean sorted)
+                throws IOException {
+            this.file = file;
+            this.sorted = sorted;
+
+            this.output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file), 1 << 16));
+
+            this.output.writeInt(MAGIC);
+            this.output.writeShort(VERSION);
+            this.output.writeShort(sorted ? SORTED : 0);
+            this.output.writeLong(0L);
+        }
+
+        public void append(final long source, final long target,
+                final double weight) throws IOException {
+            if (this.sorted && source < this.lastSource) {
+                throw new IllegalStateException("Edges are not sorted by source.");
+            }
+
+            this.output.writeLong(source);
+            this.output.writeLong(target);
+            this.output.writeDouble(weight);
+
+            this.ordered &= source >= this.lastSource;
+            this.lastSource = source;
+            this.size++;
+        }
+
+        public long size() {
+            return this.size;
+        }
+
+        /**
+         * Whether the edges appended so far are in ascending order of their
+         * source, even if the writer was not asked to enforce it.
+         */
+        public boolean isOrdered() {
+            return this.ordered;
+        }
+
+        public void close() throws IOException {
+            this.output.close();
+
+            final RandomAccessFile file = new RandomAccessFile(this.file, "rw");
+
+            try {
+                file.seek(HEADER_SIZE - 8);
+                file.writeLong(this.size);
+            } finally {
+                file.close();
+            }
+        }
+
+    }
+
+    protected final RandomAccessFile file;
+    protected final MappedByteBuffer[] segments;
+
+    protected final boolean sorted;
+    protected final long size;
+
+    public EdgeFile(final File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+
+        try {
+            if (this.file.readInt() != MAGIC) {
+                throw new IOException(file + " is not an edge file.");
+            }
+
+            final short version = this.file.readShort();
+
+            if (version != VERSION) {
+                throw new IOException("Unsupported edge file version "
+                        + version + ".");
+            }
+
+            this.sorted = (this.file.readShort() & SORTED) != 0;
+            this.size = this.file.readLong();
+
+            if (this.file.length() != HEADER_SIZE + this.size * RECORD_SIZE) {
+                throw new IOException(file + " is truncated.");
+            }
+
+            final FileChannel channel = this.file.getChannel();
+            this.segments = new MappedByteBuffer[(int) ((this.size
+                    + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+
+            for (int i = 0; i < this.segments.length; i++) {
+                final long first = (long) i * SEGMENT_SIZE;
+                final long length = Math.min(SEGMENT_SIZE, this.size - first);
+
+                this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + first * RECORD_SIZE, length
+                                * RECORD_SIZE);
+            }
+        } catch (IOException e) {
+            this.file.close();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Converts tab-separated (source, target, weight) lines into an edge
+     * file. If sort, the edges are sorted by their source (see sort);
+     * otherwise the SORTED flag is only set if the lines happen to be in
+     * ascending order of their source. Returns the number of edges.
+     */
+    public static long convert(final InputStream stream, final File file,
+            final boolean sort) throws IOException {
+        final File unsorted = new File(file.getPath() + ".tmp");
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                stream, "UTF-8"), 1 << 16);
+
+        try {
+            final Writer writer = new Writer(unsorted, false);
+
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+
+                    final int first = line.indexOf('\t');
+                    final int second = line.indexOf('\t', first + 1);
+
+                    if (first < 0 || second < 0) {
+                        throw new IOException("Malformed edge: " + line);
+                    }
+
+                    writer.append(Long.parseLong(line.substring(0, first)),
+                            Long.parseLong(line.substring(first + 1, second)),
+                            Double.parseDouble(line.substring(second + 1)));
+                }
+            } finally {
+                reader.close();
+                writer.close();
+            }
+
+            return finish(writer, unsorted, file, sort);
+        } finally {
+            // Only left behind if the conversion failed.
+            unsorted.delete();
+        }
+    }
+
+    public static long convert(final InputStream stream, final File file)
+            throws IOException {
+        return convert(stream, file, false);
+    }
+
+    public static long convert(final File tsv, final File file)
+            throws IOException {
+        return convert(new FileInputStream(tsv), file, false);
+    }
+
+    /**
+     * Same as above, but parses the lines with the given number of threads
+     * (see ParallelLineReader). The edges are streamed into the edge file.
+     */
+    public static long convert(final File tsv, final File file,
+            final int parallelism, final boolean sort) throws IOException {
+        final File unsorted = new File(file.getPath() + ".tmp");
+
+        try {
+            final Writer writer = new Writer(unsorted, false);
+
+            try {
+                new ParallelLineReader(tsv, parallelism).read(
+                        new ParallelLineReader.Parser<Pair<Long, Pair<Long, Double>>>() {
+
+                            public Pair<Long, Pair<Long, Double>> parse(
+                                    final ParallelLineReader.Line line) {
+                                return Pair.of(line.getLong(0), Pair.of(
+                                        line.getLong(1), line.getDouble(2)));
+                            }
+
+                        },
+                        new ParallelLineReader.Sink<Pair<Long, Pair<Long, Double>>>() {
+
+                            public void add(
+                                    final Pair<Long, Pair<Long, Double>> edge)
+                                    throws IOException {
+                                writer.append(edge.first(), edge.second()
+                                        .first(), edge.second().second());
+                            }
+
+                        });
+            } finally {
+                writer.close();
+            }
+
+            return finish(writer, unsorted, file, sort);
+        } finally {
+            // Only left behind if the conversion failed.
+            unsorted.delete();
+        }
+    }
+
+    public static long convert(final File tsv, final File file,
+            final int parallelism) throws IOException {
+        return convert(tsv, file, parallelism, false);
+    }
+
+    /**
+     * Moves the written file to its final location, sorting it first if
+     * requested and it is not ordered yet. Otherwise it is marked as sorted
+     * if it happens to be. Returns the number of edges.
+     */
+    protected static long finish(final Writer writer, final File unsorted,
+            final File file, final boolean sort) throws IOException {
+        if (writer.isOrdered()) {
+            markSorted(unsorted);
+        } else if (sort) {
+            sort(unsorted, file);
+
+            return writer.size();
+        }
+
+        if (!unsorted.renameTo(file)) {
+            throw new IOException("Cannot move " + unsorted + " to " + file
+                    + ".");
+        }
+
+        return writer.size();
+    }
+
+    /**
+     * Writes the edges of the given edge file to a new, sorted edge file.
+     * The edges are bucketed by their source in the same way as
+     * CompressedGraph.fromEdges, which keeps the sort stable and only holds
+     * the sources and the permutation in memory.
+     */
+    protected static void sort(final File unsorted, final File file)
+            throws IOException {
+        final EdgeFile edges = new EdgeFile(unsorted);
+
+        try {
+            if (edges.size() > CompressedGraph.MAX_EDGES) {
+                throw new IOException("Too many edges to sort: "
+                        + edges.size());
+            }
+
+            final int numEdges = (int) edges.size();
+
+            final long[] nodes = new long[numEdges];
+            for (int i = 0; i < numEdges; i++) {
+                nodes[i] = edges.getSource(i);
+            }
+
+            Arrays.sort(nodes);
+
+            int numNodes = 0;
+            for (int i = 0; i < numEdges; i++) {
+                if (numNodes == 0 || nodes[numNodes - 1] != nodes[i]) {
+                    nodes[numNodes++] = nodes[i];
+                }
+            }
+
+            final int[] offsets = new int[numNodes + 1];
+            for (int i = 0; i < numEdges; i++) {
+                offsets[Arrays.binarySearch(nodes, 0, numNodes, edges
+                        .getSource(i)) + 1]++;
+            }
+
+            for (int i = 0; i < numNodes; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+
+            final int[] order = new int[numEdges];
+            for (int i = 0; i < numEdges; i++) {
+                order[offsets[Arrays.binarySearch(nodes, 0, numNodes, edges
+                        .getSource(i))]++] = i;
+            }
+
+            final Writer writer = new Writer(file, true);
+            boolean written = false;
+
+            try {
+                for (final int i : order) {
+                    writer.append(edges.getSource(i), edges.getTarget(i),
+                            edges.getWeight(i));
+                }
+
+                written = true;
+            } finally {
+                writer.close();
+
+                if (!written) {
+                    file.delete();
+                }
+            }
+        } finally {
+            edges.close();
+        }
+    }
+
+    protected static void markSorted(final File file) throws IOException {
+        final RandomAccessFile output = new RandomAccessFile(file, "rw");
+
+        try {
+            output.seek(6);
+            output.writeShort(SORTED);
+        } finally {
+            output.close();
+        }
+    }
+
+    public long size() {
+        return this.size;
+    }
+
+    public boolean isSorted() {
+        return this.sorted;
+    }
+
+    public long getSource(final long index) {
+        return this.getSegment(index).getLong(this.getOffset(index));
+    }
+
+    public long getTarget(final long index) {
+        return this.getSegment(index).getLong(this.getOffset(index) + 8);
+    }
+
+    public double getWeight(final long index) {
+        return this.getSegment(index).getDouble(this.getOffset(index) + 16);
+    }
+
+    protected MappedByteBuffer getSegment(final long index) {
+        assert index >= 0 && index < this.size;
+
+        return this.segments[(int) (index / SEGMENT_SIZE)];
+    }
+
+    protected int getOffset(final long index) {
+        return (int) (index % SEGMENT_SIZE) * RECORD_SIZE;
+    }
+
+    /**
+     * Iterates over the edges in the format of GraphAdsorption.
+     */
+    public Iterable<Pair<Long, Pair<Long, Double>>> edges() {
+        return new Iterable<Pair<Long, Pair<Long, Double>>>() {
+
+            public Iterator<Pair<Long, Pair<Long, Double>>> iterator() {
+                return new Iterator<Pair<Long, Pair<Long, Double>>>() {
+
+                    protected long index = 0L;
+
+                    public boolean hasNext() {
+                        return this.index < EdgeFile.this.size;
+                    }
+
+                    public Pair<Long, Pair<Long, Double>> next() {
+                        if (!this.hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+
+                        final long index = this.index++;
+
+                        return Pair.of(EdgeFile.this.getSource(index), Pair
+                                .of(EdgeFile.this.getTarget(index),
+                                        EdgeFile.this.getWeight(index)));
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                };
+            }
+
+        };
+    }
+
+    /**
+     * Packs the edges into a compressed graph, reading the records straight
+     * into the arrays of CompressedGraph.fromEdges.
+     */
+    public CompressedGraph toCompressedGraph() {
+        if (this.size > CompressedGraph.MAX_EDGES) {
+            throw new IllegalStateException(
+                    "Too many edges for a compressed graph: " + this.size);
+        }
+
+        final int numEdges = (int) this.size;
+
+        final long[] sources = new long[numEdges];
+        final long[] targets = new long[numEdges];
+        final double[] weights = new double[numEdges];
+
+        for (int i = 0; i < numEdges; i++) {
+            sources[i] = this.getSource(i);
+            targets[i] = this.getTarget(i);
+            weights[i] = this.getWeight(i);
+        }
+
+        return CompressedGraph.fromEdges(sources, targets, weights, numEdges);
+    }
+
+    public void close() throws IOException {
+        this.file.close();
+    }
+
+}
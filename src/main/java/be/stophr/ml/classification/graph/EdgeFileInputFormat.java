@@ -0,0 +1,205 @@
+package be.stophr.ml.classification.graph;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.Pipeline;
+import org.apache.crunch.io.From;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * Reads edge files (see EdgeFile) as (source, (target, weight)) records.
+ *
+ * The files are split like any other file; every split reads the records
+ * that start within it. Hence the edges are read by the tasks of a pipeline
+ * instead of being loaded on the client.
+ *
+ * @author Christophe Van Gysel
+ */
+public class EdgeFileInputFormat extends
+        FileInputFormat<LongWritable, EdgeFileInputFormat.WeightedTarget> {
+
+    /**
+     * The target and weight of an edge.
+     */
+    public static class WeightedTarget implements Writable {
+
+        protected long target;
+        protected double weight;
+
+        public WeightedTarget() {
+        }
+
+        public WeightedTarget(final long target, final double weight) {
+            this.target = target;
+            this.weight = weight;
+        }
+
+        public long getTarget() {
+            return this.target;
+        }
+
+        public double getWeight() {
+            return this.weight;
+        }
+
+        public void write(final DataOutput out) throws IOException {
+            out.writeLong(this.target);
+            out.writeDouble(this.weight);
+        }
+
+        public void readFields(final DataInput in) throws IOException {
+            this.target = in.readLong();
+            this.weight = in.readDouble();
+        }
+
+    }
+
+    /**
+     * Returns the edges of the edge files at the given path as the weights
+     * table of GraphAdsorption.
+     */
+    public static PTable<Long, Pair<Long, Double>> read(
+            final Pipeline pipeline, final Path path) {
+        return pipeline
+                .read(From.formattedFile(path, EdgeFileInputFormat.class,
+                        LongWritable.class, WeightedTarget.class))
+                .parallelDo(
+                        "ReadEdges",
+                        new MapFn<Pair<LongWritable, WeightedTarget>, Pair<Long, Pair<Long, Double>>>() {
+
+                            @Override
+                            public Pair<Long, Pair<Long, Double>> map(
+                                    Pair<LongWritable, WeightedTarget> edge) {
+                                return Pair.of(edge.first().get(), Pair.of(
+                                        edge.second().getTarget(), edge
+                                                .second().getWeight()));
+                            }
+
+                        },
+                        Writables.tableOf(Writables.longs(), Writables.pairs(
+                                Writables.longs(), Writables.doubles())));
+    }
+
+    @Override
+    public RecordReader<LongWritable, WeightedTarget> createRecordReader(
+            final InputSplit split, final TaskAttemptContext context) {
+        return new EdgeRecordReader();
+    }
+
+    /**
+     * Reads the records whose first byte lies within the split.
+     */
+    protected static class EdgeRecordReader extends
+            RecordReader<LongWritable, WeightedTarget> {
+
+        protected FSDataInputStream input;
+
+        protected long first;
+        protected long last;
+        protected long index;
+
+        protected final LongWritable key = new LongWritable();
+        protected final WeightedTarget value = new WeightedTarget();
+
+        @Override
+        public void initialize(final InputSplit genericSplit,
+                final TaskAttemptContext context) throws IOException {
+            final FileSplit split = (FileSplit) genericSplit;
+            final Path path = split.getPath();
+            final FileSystem fs = path.getFileSystem(context
+                    .getConfiguration());
+
+            this.input = fs.open(path);
+
+            if (this.input.readInt() != EdgeFile.MAGIC) {
+                throw new IOException(path + " is not an edge file.");
+            }
+
+            final short version = this.input.readShort();
+
+            if (version != EdgeFile.VERSION) {
+                throw new IOException("Unsupported edge file version "
+                        + version + ".");
+            }
+
+            this.input.readShort();
+            final long size = this.input.readLong();
+
+            this.first = Math.min(size, this.firstRecordAt(split.getStart()));
+            this.last = Math.min(size,
+                    this.firstRecordAt(split.getStart() + split.getLength()));
+            this.index = this.first;
+
+            this.input.seek(EdgeFile.HEADER_SIZE + this.first
+                    * EdgeFile.RECORD_SIZE);
+        }
+
+        /**
+         * Returns the index of the first record which starts at or after the
+         * given offset.
+         */
+        protected long firstRecordAt(final long offset) {
+            return Math.max(0L, (offset - EdgeFile.HEADER_SIZE
+                    + EdgeFile.RECORD_SIZE - 1)
+                    / EdgeFile.RECORD_SIZE);
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            if (this.index >= this.last) {
+                return false;
+            }
+
+            this.key.set(this.input.readLong());
+            this.value.readFields(this.input);
+
+            this.index++;
+
+            return true;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            return this.key;
+        }
+
+        @Override
+        public WeightedTarget getCurrentValue() {
+            return this.value;
+        }
+
+        @Override
+        public float getProgress() {
+            if (this.last == this.first) {
+                return 1.0f;
+            }
+
+            return (float) (this.index - this.first)
+                    / (this.last - this.first);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.input != null) {
+                this.input.close();
+            }
+        }
+
+    }
+
+}
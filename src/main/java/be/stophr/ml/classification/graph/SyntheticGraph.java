@@ -0,0 +1,376 @@
+package be.stophr.ml.classification.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.writable.Writables;
+
+import be.stophr.ml.classification.Utils;
+import be.stophr.ml.classification.labels.Label;
+
+/**
+ * Generates Twitter-like weighted, directed graphs of arbitrary size, together
+ * with a random set of seed labels, for scale and regression testing.
+ *
+ * The edges are drawn using R-MAT (Chakrabarti et al., 2004): the endpoints of
+ * an edge are chosen by recursively descending into one of the four quadrants
+ * of the adjacency matrix with probabilities a, b, c and 1 - a - b - c, which
+ * yields power-law in- and out-degrees. Self-loops and endpoints beyond
+ * numNodes are redrawn; duplicate edges are kept. With probability
+ * reciprocity the reverse edge is emitted as well, such that the graph holds
+ * numEdges * (1 + reciprocity) edges on average. An edge weighs 1 (a
+ * follower connection), plus, with probability retweetProbability, a
+ * Zipf-distributed number of retweets.
+ *
+ * Nodes are identified by [1, numNodes], the hubs having the lowest
+ * identifiers. A node is a seed with probability seedFraction, with a class
+ * drawn uniformly.
+ *
+ * The edges are split into shards, each of which is generated independently
+ * from its own random stream, so that the graph can be streamed into a
+ * PTable (one shard per task) or an edge file without holding it in memory.
+ * A graph is reproduced by the same seed and number of shards.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public class SyntheticGraph implements Serializable {
+
+    /**
+     * The R-MAT parameters of the Graph500 benchmark.
+     */
+    public static final double DEFAULT_A = 0.57;
+    public static final double DEFAULT_B = 0.19;
+    public static final double DEFAULT_C = 0.19;
+
+    /**
+     * Fraction of reciprocated connections on Twitter (Kwak et al., 2010).
+     */
+    public static final double DEFAULT_RECIPROCITY = 0.22;
+
+    public static final double DEFAULT_RETWEET_PROBABILITY = 0.1;
+
+    protected static final double RETWEET_EXPONENT = 1.5;
+    protected static final long MAX_RETWEETS = 10000L;
+
+    protected final long numNodes;
+    protected final long numEdges;
+
+    protected final double a;
+    protected final double b;
+    protected final double c;
+
+    protected final double reciprocity;
+    protected final double retweetProbability;
+
+    protected final double seedFraction;
+    protected final int numClasses;
+
+    protected final long seed;
+
+    /**
+     * Number of R-MAT levels, i.e. the number of bits of a node index.
+     */
+    protected final int levels;
+
+    public SyntheticGraph(final long numNodes, final long numEdges,
+            final double a, final double b, final double c,
+            final double reciprocity, final double retweetProbability,
+            final double seedFraction, final int numClasses, final long seed) {
+        assert numNodes >= 2;
+        assert numEdges >= 0;
+        assert a >= 0.0 && b >= 0.0 && c >= 0.0 && a + b + c <= 1.0;
+        // Otherwise every edge would be a self-loop.
+        assert b + c > 0.0;
+        assert reciprocity >= 0.0 && reciprocity <= 1.0;
+        assert retweetProbability >= 0.0 && retweetProbability <= 1.0;
+        assert seedFraction >= 0.0 && seedFraction <= 1.0;
+        assert numClasses >= 1;
+
+        this.numNodes = numNodes;
+        this.numEdges = numEdges;
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.reciprocity = reciprocity;
+        this.retweetProbability = retweetProbability;
+        this.seedFraction = seedFraction;
+        this.numClasses = numClasses;
+        this.seed = seed;
+
+        this.levels = 64 - Long.numberOfLeadingZeros(numNodes - 1);
+    }
+
+    /**
+     * A graph with the default R-MAT parameters, reciprocity and retweet
+     * probability.
+     */
+    public static SyntheticGraph twitter(final long numNodes,
+            final long numEdges, final double seedFraction,
+            final int numClasses, final long seed) {
+        return new SyntheticGraph(numNodes, numEdges, DEFAULT_A, DEFAULT_B,
+                DEFAULT_C, DEFAULT_RECIPROCITY, DEFAULT_RETWEET_PROBABILITY,
+                seedFraction, numClasses, seed);
+    }
+
+    public long getNumNodes() {
+        return this.numNodes;
+    }
+
+    public long getNumEdges() {
+        return this.numEdges;
+    }
+
+    /**
+     * Iterates over the edges of the given shard, including the reciprocal
+     * ones, in the format of GraphAdsorption.
+     */
+    public Iterable<Pair<Long, Pair<Long, Double>>> edges(final int shard,
+            final int numShards) {
+        assert shard >= 0 && shard < numShards;
+
+        final long first = this.numEdges * shard / numShards;
+        final long last = this.numEdges * (shard + 1) / numShards;
+
+        return new Iterable<Pair<Long, Pair<Long, Double>>>() {
+
+            public Iterator<Pair<Long, Pair<Long, Double>>> iterator() {
+                return new Iterator<Pair<Long, Pair<Long, Double>>>() {
+
+                    protected final Random random = SyntheticGraph.this
+                            .createRandom(shard, 0);
+
+                    protected final long[] cell = new long[2];
+
+                    protected long remaining = last - first;
+                    protected Pair<Long, Pair<Long, Double>> reciprocal = null;
+
+                    public boolean hasNext() {
+                        return this.remaining > 0 || this.reciprocal != null;
+                    }
+
+                    public Pair<Long, Pair<Long, Double>> next() {
+                        if (this.reciprocal != null) {
+                            final Pair<Long, Pair<Long, Double>> edge = this.reciprocal;
+                            this.reciprocal = null;
+
+                            return edge;
+                        } else if (this.remaining == 0) {
+                            throw new NoSuchElementException();
+                        }
+
+                        this.remaining--;
+
+                        final SyntheticGraph graph = SyntheticGraph.this;
+
+                        do {
+                            graph.drawCell(this.random, this.cell);
+                        } while (this.cell[0] == this.cell[1]
+                                || this.cell[0] >= graph.numNodes
+                                || this.cell[1] >= graph.numNodes);
+
+                        final long source = this.cell[0] + 1;
+                        final long target = this.cell[1] + 1;
+
+                        if (this.random.nextDouble() < graph.reciprocity) {
+                            this.reciprocal = Pair.of(target, Pair.of(source,
+                                    graph.drawWeight(this.random)));
+                        }
+
+                        return Pair.of(source, Pair.of(target,
+                                graph.drawWeight(this.random)));
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                };
+            }
+
+        };
+    }
+
+    /**
+     * Returns the seeds among the nodes of the given shard as (node, class)
+     * pairs.
+     */
+    public List<Pair<Long, Integer>> seeds(final int shard,
+            final int numShards) {
+        assert shard >= 0 && shard < numShards;
+
+        final List<Pair<Long, Integer>> seeds = new ArrayList<Pair<Long, Integer>>();
+        final Random random = this.createRandom(shard, 1);
+
+        final long first = this.numNodes * shard / numShards;
+        final long last = this.numNodes * (shard + 1) / numShards;
+
+        for (long node = first; node < last; node++) {
+            if (random.nextDouble() < this.seedFraction) {
+                seeds.add(Pair.of(node + 1, random.nextInt(this.numClasses)));
+            }
+        }
+
+        return seeds;
+    }
+
+    /**
+     * Returns the weights table, generating every shard in a separate call
+     * to process. The shards are taken from the given collection, which
+     * holds the integers in [0, numShards), e.g. read from a file such that
+     * they are spread over the tasks of a pipeline.
+     */
+    public PTable<Long, Pair<Long, Double>> weights(
+            final PCollection<Integer> shards, final int numShards) {
+        return shards.parallelDo("GenerateEdges",
+                new DoFn<Integer, Pair<Long, Pair<Long, Double>>>() {
+
+                    @Override
+                    public void process(Integer shard,
+                            Emitter<Pair<Long, Pair<Long, Double>>> emitter) {
+                        for (final Pair<Long, Pair<Long, Double>> edge : SyntheticGraph.this
+                                .edges(shard, numShards)) {
+                            emitter.emit(edge);
+                        }
+                    }
+
+                }, Writables.tableOf(Writables.longs(), Writables.pairs(
+                        Writables.longs(), Writables.doubles())));
+    }
+
+    /**
+     * Same as above, on an in-memory collection of shards.
+     */
+    public PTable<Long, Pair<Long, Double>> weights(final int numShards) {
+        return this.weights(createShards(numShards), numShards);
+    }
+
+    /**
+     * Returns the seed labels, created as singletons by the given factory.
+     */
+    public <LabelT extends Label> PTable<Long, LabelT> labels(
+            final PCollection<Integer> shards, final int numShards,
+            final Label.Factory labelFactory) {
+        assert labelFactory != null;
+
+        @SuppressWarnings("unchecked")
+        final PType<LabelT> labelType = (PType<LabelT>) labelFactory
+                .getLabelType();
+
+        return shards.parallelDo("GenerateSeeds",
+                new DoFn<Integer, Pair<Long, LabelT>>() {
+
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public void process(Integer shard,
+                            Emitter<Pair<Long, LabelT>> emitter) {
+                        for (final Pair<Long, Integer> seed : SyntheticGraph.this
+                                .seeds(shard, numShards)) {
+                            emitter.emit(Pair.of(seed.first(),
+                                    (LabelT) labelFactory.createSingleton(seed
+                                            .second())));
+                        }
+                    }
+
+                }, Writables.tableOf(Writables.longs(), labelType));
+    }
+
+    public <LabelT extends Label> PTable<Long, LabelT> labels(
+            final int numShards, final Label.Factory labelFactory) {
+        return this.labels(createShards(numShards), numShards, labelFactory);
+    }
+
+    /**
+     * Streams the edges of all shards into an (unsorted) edge file and
+     * returns the number of edges written.
+     */
+    public long write(final File file, final int numShards)
+            throws IOException {
+        final EdgeFile.Writer writer = new EdgeFile.Writer(file, false);
+
+        try {
+            for (int shard = 0; shard < numShards; shard++) {
+                for (final Pair<Long, Pair<Long, Double>> edge : this.edges(
+                        shard, numShards)) {
+                    writer.append(edge.first(), edge.second().first(), edge
+                            .second().second());
+                }
+            }
+        } finally {
+            writer.close();
+        }
+
+        return writer.size();
+    }
+
+    protected static PCollection<Integer> createShards(final int numShards) {
+        assert numShards >= 1;
+
+        final List<Integer> shards = new ArrayList<Integer>(numShards);
+
+        for (int shard = 0; shard < numShards; shard++) {
+            shards.add(shard);
+        }
+
+        return Utils.CreatePCollection(Writables.ints(), shards);
+    }
+
+    protected Random createRandom(final int shard, final int stream) {
+        return new Random(this.seed ^ (0x9e3779b97f4a7c15L * (2L * shard
+                + stream + 1)));
+    }
+
+    /**
+     * Descends the R-MAT levels and stores the source and target index of the
+     * chosen cell in the given array.
+     */
+    protected void drawCell(final Random random, final long[] cell) {
+        long row = 0L;
+        long column = 0L;
+
+        for (int level = 0; level < this.levels; level++) {
+            final double r = random.nextDouble();
+
+            row <<= 1;
+            column <<= 1;
+
+            if (r < this.a) {
+                // Top left quadrant.
+            } else if (r < this.a + this.b) {
+                column |= 1L;
+            } else if (r < this.a + this.b + this.c) {
+                row |= 1L;
+            } else {
+                row |= 1L;
+                column |= 1L;
+            }
+        }
+
+        cell[0] = row;
+        cell[1] = column;
+    }
+
+    protected double drawWeight(final Random random) {
+        if (random.nextDouble() >= this.retweetProbability) {
+            return 1.0;
+        }
+
+        final double retweets = Math.floor(Math.pow(1.0 - random.nextDouble(),
+                -1.0 / RETWEET_EXPONENT));
+
+        return 1.0 + Math.min(retweets, MAX_RETWEETS);
+    }
+
+}
@@ -0,0 +1,87 @@
+package be.stophr.ml.classification.graph.crunch;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.PTableType;
+import org.apache.crunch.types.writable.Writables;
+
+import be.stophr.ml.classification.graph.Adjacency;
+
+/**
+ * Converts between the edge table, with one record per edge, and the compact
+ * adjacency table, with one record per source node.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public class AdjacencyOp implements Serializable {
+
+    protected final Adjacency.WeightEncoding encoding;
+
+    public AdjacencyOp(final Adjacency.WeightEncoding encoding) {
+        assert encoding != null;
+
+        this.encoding = encoding;
+    }
+
+    public PTable<Long, Adjacency> pack(
+            final PTable<Long, Pair<Long, Double>> weights) {
+        return weights.groupByKey().mapValues("PackAdjacency",
+                new MapFn<Iterable<Pair<Long, Double>>, Adjacency>() {
+
+                    @Override
+                    public Adjacency map(Iterable<Pair<Long, Double>> edges) {
+                        long[] targets = new long[16];
+                        double[] weights = new double[16];
+                        int size = 0;
+
+                        for (final Pair<Long, Double> edge : edges) {
+                            if (size == targets.length) {
+                                targets = Arrays.copyOf(targets, 2 * size);
+                                weights = Arrays.copyOf(weights, 2 * size);
+                            }
+
+                            targets[size] = edge.first();
+                            weights[size] = edge.second();
+                            size++;
+                        }
+
+                        return new Adjacency(targets, weights, size,
+                                AdjacencyOp.this.encoding);
+                    }
+
+                }, Writables.writables(Adjacency.class));
+    }
+
+    public static PTable<Long, Pair<Long, Double>> unpack(
+            final PTable<Long, Adjacency> adjacency) {
+        return adjacency.parallelDo("UnpackAdjacency",
+                new DoFn<Pair<Long, Adjacency>, Pair<Long, Pair<Long, Double>>>() {
+
+                    @Override
+                    public void process(Pair<Long, Adjacency> instance,
+                            Emitter<Pair<Long, Pair<Long, Double>>> emitter) {
+                        final Adjacency edges = instance.second();
+
+                        for (int i = 0; i < edges.size(); i++) {
+                            emitter.emit(Pair.of(instance.first(), Pair.of(
+                                    edges.getTarget(i), edges.getWeight(i))));
+                        }
+                    }
+
+                }, Writables.tableOf(Writables.longs(),
+                        Writables.pairs(Writables.longs(), Writables.doubles())));
+    }
+
+    public static PTableType<Long, Adjacency> getTableType() {
+        return Writables.tableOf(Writables.longs(),
+                Writables.writables(Adjacency.class));
+    }
+
+}
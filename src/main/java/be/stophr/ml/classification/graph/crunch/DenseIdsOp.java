@@ -0,0 +1,242 @@
+package be.stophr.ml.classification.graph.crunch;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.Pipeline;
+import org.apache.crunch.Target;
+import org.apache.crunch.io.From;
+import org.apache.crunch.io.To;
+import org.apache.crunch.lib.Join;
+import org.apache.crunch.types.writable.Writables;
+
+/**
+ * Replaces the (sparse, 64-bit) node identifiers by dense identifiers in [0,
+ * size), which allows the nodes to be indexed by arrays (see
+ * CompressedGraph). Use ShadowNodes.offset(size) when running the algorithm
+ * on the remapped graph and restore the original identifiers afterwards.
+ *
+ * The dense identifiers are still longs, as all tables of GraphAdsorption
+ * are keyed by Long; the size of the shuffled keys does not change.
+ *
+ * The identifiers are hashed into buckets; the dense identifier of a node is
+ * the number of nodes in the preceding buckets plus its rank within its own
+ * bucket. Hence the dictionary is deterministic for a given number of buckets
+ * and can be computed in parallel. It is persisted as a sequence file of
+ * (original, dense) pairs using write and read.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public class DenseIdsOp implements Serializable {
+
+    protected final int numBuckets;
+
+    public DenseIdsOp(final int numBuckets) {
+        assert numBuckets >= 1;
+
+        this.numBuckets = numBuckets;
+    }
+
+    /**
+     * Returns the sources and targets of the edges and the seeds, with
+     * duplicates.
+     */
+    public static <V> PCollection<Long> nodes(
+            final PTable<Long, Pair<Long, Double>> weights,
+            final PTable<Long, V> labels) {
+        final PCollection<Long> targets = weights.values().parallelDo(
+                "EdgeTargets", new MapFn<Pair<Long, Double>, Long>() {
+
+                    @Override
+                    public Long map(Pair<Long, Double> edge) {
+                        return edge.first();
+                    }
+
+                }, Writables.longs());
+
+        return weights.keys().union(targets, labels.keys());
+    }
+
+    /**
+     * Returns the dictionary, mapping the distinct nodes to their dense
+     * identifiers, and its size.
+     */
+    public Pair<PTable<Long, Long>, Long> createDictionary(
+            final PCollection<Long> nodes) {
+        final PTable<Integer, Long> buckets = nodes.count().keys()
+                .by("Bucket", new MapFn<Long, Integer>() {
+
+                    @Override
+                    public Integer map(Long node) {
+                        return DenseIdsOp.this.getBucket(node);
+                    }
+
+                }, Writables.ints());
+
+        // Counting the buckets runs the pipeline; the identifiers are then
+        // assigned from the materialized buckets.
+        buckets.materialize();
+
+        final Map<Integer, Long> bucketSizes = buckets.keys().count()
+                .materializeToMap();
+
+        final long[] offsets = new long[this.numBuckets];
+        long size = 0L;
+
+        for (int i = 0; i < this.numBuckets; i++) {
+            offsets[i] = size;
+
+            if (bucketSizes.containsKey(i)) {
+                size += bucketSizes.get(i);
+            }
+        }
+
+        final PTable<Long, Long> dictionary = buckets.groupByKey().parallelDo(
+                "AssignDenseIds",
+                new DoFn<Pair<Integer, Iterable<Long>>, Pair<Long, Long>>() {
+
+                    @Override
+                    public void process(Pair<Integer, Iterable<Long>> instance,
+                            Emitter<Pair<Long, Long>> emitter) {
+                        long[] nodes = new long[16];
+                        int size = 0;
+
+                        for (final Long node : instance.second()) {
+                            if (size == nodes.length) {
+                                nodes = Arrays.copyOf(nodes, 2 * size);
+                            }
+
+                            nodes[size++] = node;
+                        }
+
+                        Arrays.sort(nodes, 0, size);
+
+                        final long offset = offsets[instance.first()];
+
+                        for (int i = 0; i < size; i++) {
+                            emitter.emit(Pair.of(nodes[i], offset + i));
+                        }
+                    }
+
+                }, Writables.tableOf(Writables.longs(), Writables.longs()));
+
+        return Pair.of(dictionary, size);
+    }
+
+    /**
+     * Spreads consecutive identifiers over the buckets.
+     */
+    protected int getBucket(final long node) {
+        long hash = node;
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+
+        return (int) ((hash & Long.MAX_VALUE) % this.numBuckets);
+    }
+
+    public static PTable<Long, Pair<Long, Double>> remapWeights(
+            final PTable<Long, Pair<Long, Double>> weights,
+            final PTable<Long, Long> dictionary) {
+        final PTable<Long, Pair<Long, Double>> remappedSources = Join.join(
+                weights, dictionary).parallelDo(
+                "RemapSources",
+                new DoFn<Pair<Long, Pair<Pair<Long, Double>, Long>>, Pair<Long, Pair<Long, Double>>>() {
+
+                    @Override
+                    public void process(
+                            Pair<Long, Pair<Pair<Long, Double>, Long>> instance,
+                            Emitter<Pair<Long, Pair<Long, Double>>> emitter) {
+                        final Pair<Long, Double> edge = instance.second()
+                                .first();
+
+                        // Keyed by target.
+                        emitter.emit(Pair.of(edge.first(), Pair.of(instance
+                                .second().second(), edge.second())));
+                    }
+
+                }, weights.getPTableType());
+
+        return Join.join(remappedSources, dictionary).parallelDo(
+                "RemapTargets",
+                new DoFn<Pair<Long, Pair<Pair<Long, Double>, Long>>, Pair<Long, Pair<Long, Double>>>() {
+
+                    @Override
+                    public void process(
+                            Pair<Long, Pair<Pair<Long, Double>, Long>> instance,
+                            Emitter<Pair<Long, Pair<Long, Double>>> emitter) {
+                        final Pair<Long, Double> edge = instance.second()
+                                .first();
+
+                        emitter.emit(Pair.of(edge.first(), Pair.of(instance
+                                .second().second(), edge.second())));
+                    }
+
+                }, weights.getPTableType());
+    }
+
+    /**
+     * Replaces the keys of the given table by their dense identifiers; keys
+     * absent from the dictionary are dropped.
+     */
+    public static <V> PTable<Long, V> remapKeys(final PTable<Long, V> table,
+            final PTable<Long, Long> dictionary) {
+        return Join.join(table, dictionary).parallelDo("RemapKeys",
+                new DoFn<Pair<Long, Pair<V, Long>>, Pair<Long, V>>() {
+
+                    @Override
+                    public void process(Pair<Long, Pair<V, Long>> instance,
+                            Emitter<Pair<Long, V>> emitter) {
+                        emitter.emit(Pair.of(instance.second().second(),
+                                instance.second().first()));
+                    }
+
+                }, table.getPTableType());
+    }
+
+    /**
+     * Replaces the dense keys of the given table by the original identifiers.
+     * The shadow nodes are not part of the dictionary and hence dropped.
+     */
+    public static <V> PTable<Long, V> restoreKeys(final PTable<Long, V> table,
+            final PTable<Long, Long> dictionary) {
+        final PTable<Long, Long> inverse = dictionary.parallelDo(
+                "InvertDictionary",
+                new MapFn<Pair<Long, Long>, Pair<Long, Long>>() {
+
+                    @Override
+                    public Pair<Long, Long> map(Pair<Long, Long> entry) {
+                        return Pair.of(entry.second(), entry.first());
+                    }
+
+                }, dictionary.getPTableType());
+
+        return remapKeys(table, inverse);
+    }
+
+    public static void write(final PTable<Long, Long> dictionary,
+            final String path) {
+        dictionary.write(To.sequenceFile(path), Target.WriteMode.OVERWRITE);
+    }
+
+    /**
+     * Reads a dictionary written earlier and returns it with its size.
+     */
+    public static Pair<PTable<Long, Long>, Long> read(
+            final Pipeline pipeline, final String path) {
+        final PTable<Long, Long> dictionary = pipeline.read(From.sequenceFile(
+                path, Writables.longs(), Writables.longs()));
+
+        return Pair.of(dictionary, dictionary.length().getValue());
+    }
+
+}
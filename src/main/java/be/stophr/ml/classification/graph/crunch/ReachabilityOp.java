@@ -0,0 +1,161 @@
+package be.stophr.ml.classification.graph.crunch;
+
+import java.util.Collection;
+
+import org.apache.crunch.DoFn;
+import org.apache.crunch.Emitter;
+import org.apache.crunch.FilterFn;
+import org.apache.crunch.MapFn;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.lib.Join;
+import org.apache.crunch.types.PTableType;
+import org.apache.crunch.types.writable.Writables;
+
+/**
+ * Computes the distance of every node to the nearest seed by a breadth-first
+ * search along the edges. Nodes which cannot be reached from any seed never
+ * receive a label, hence their outgoing edges can be dropped, and the edges of
+ * a node at distance d can only carry a label once d iterations have passed
+ * since the seeds were labeled.
+ *
+ * @author Christophe Van Gysel
+ */
+public class ReachabilityOp {
+
+    /**
+     * Returns the level of every node within maxLevel steps from a seed; the
+     * seeds have level 0. Every level runs the pipeline once, in order to
+     * find out whether the search can stop. The levels found so far are
+     * materialized at the same time, such that every level only expands the
+     * previous frontier instead of repeating the complete search.
+     */
+    public static <V> PTable<Long, Integer> levels(
+            final PTable<Long, Pair<Long, Double>> weights,
+            final PTable<Long, V> seeds, final int maxLevel) {
+        assert maxLevel >= 0;
+
+        PTable<Long, Integer> levels = seeds.keys().count()
+                .mapValues("SeedLevels", new MapFn<Long, Integer>() {
+
+                    @Override
+                    public Integer map(Long count) {
+                        return 0;
+                    }
+
+                }, Writables.ints());
+        PTable<Long, Integer> frontier = levels;
+
+        for (int level = 1; level <= maxLevel; level++) {
+            final PTable<Long, Integer> candidates = Join
+                    .join(weights, frontier)
+                    .parallelDo("ExpandFrontier",
+                            new NextLevelFn(level), getLevelType());
+
+            frontier = candidates.cogroup(levels).parallelDo("NewFrontier",
+                    new UnreachedFn(level), getLevelType());
+            frontier.materialize();
+
+            final PTable<Long, Integer> next = levels.union(frontier);
+            next.materialize();
+
+            if (frontier.length().getValue() == 0L) {
+                break;
+            }
+
+            levels = next;
+        }
+
+        return levels;
+    }
+
+    /**
+     * Annotates every edge with the level of its source. Edges whose source
+     * has no level are dropped. The result is materialized, as it is read in
+     * every iteration (see activeEdges).
+     */
+    public static PTable<Long, Pair<Pair<Long, Double>, Integer>> annotate(
+            final PTable<Long, Pair<Long, Double>> weights,
+            final PTable<Long, Integer> levels) {
+        final PTable<Long, Pair<Pair<Long, Double>, Integer>> edges = Join
+                .join(weights, levels);
+        edges.materialize();
+
+        return edges;
+    }
+
+    /**
+     * Returns the edges whose source has at most the given level.
+     */
+    public static PTable<Long, Pair<Long, Double>> activeEdges(
+            final PTable<Long, Pair<Pair<Long, Double>, Integer>> edges,
+            final int level) {
+        return edges.filter("ActiveEdges",
+                new FilterFn<Pair<Long, Pair<Pair<Long, Double>, Integer>>>() {
+
+                    @Override
+                    public boolean accept(
+                            Pair<Long, Pair<Pair<Long, Double>, Integer>> edge) {
+                        return edge.second().second() <= level;
+                    }
+
+                }).mapValues("DropLevels",
+                new MapFn<Pair<Pair<Long, Double>, Integer>, Pair<Long, Double>>() {
+
+                    @Override
+                    public Pair<Long, Double> map(
+                            Pair<Pair<Long, Double>, Integer> edge) {
+                        return edge.first();
+                    }
+
+                }, Writables.pairs(Writables.longs(), Writables.doubles()));
+    }
+
+    protected static PTableType<Long, Integer> getLevelType() {
+        return Writables.tableOf(Writables.longs(), Writables.ints());
+    }
+
+    @SuppressWarnings("serial")
+    protected static class NextLevelFn extends
+            MapFn<Pair<Long, Pair<Pair<Long, Double>, Integer>>, Pair<Long, Integer>> {
+
+        protected final int level;
+
+        public NextLevelFn(final int level) {
+            this.level = level;
+        }
+
+        @Override
+        public Pair<Long, Integer> map(
+                Pair<Long, Pair<Pair<Long, Double>, Integer>> edge) {
+            return Pair.of(edge.second().first().first(), this.level);
+        }
+
+    }
+
+    @SuppressWarnings("serial")
+    protected static class UnreachedFn
+            extends
+            DoFn<Pair<Long, Pair<Collection<Integer>, Collection<Integer>>>, Pair<Long, Integer>> {
+
+        protected final int level;
+
+        public UnreachedFn(final int level) {
+            this.level = level;
+        }
+
+        @Override
+        public void process(
+                Pair<Long, Pair<Collection<Integer>, Collection<Integer>>> instance,
+                Emitter<Pair<Long, Integer>> emitter) {
+            final Pair<Collection<Integer>, Collection<Integer>> levels = instance
+                    .second();
+
+            if (!levels.first().isEmpty() && levels.second().isEmpty()) {
+                emitter.emit(Pair.of(instance.first(), this.level));
+            }
+        }
+
+    }
+
+}
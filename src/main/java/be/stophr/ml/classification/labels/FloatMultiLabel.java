@@ -0,0 +1,404 @@
+package be.stophr.ml.classification.labels;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.crunch.types.PType;
+
+import be.stophr.ml.InformationTheory;
+import be.stophr.ml.classification.Alphabet;
+import be.stophr.ml.classification.labels.crunch.LabelPTypes;
+
+/**
+ * Single precision variant of MultiLabel, which halves the memory and the
+ * serialized size of every label. Sums are accumulated in double precision
+ * (see KahanAccumulator) and only rounded to single precision afterwards,
+ * such that the results stay close to those of MultiLabel.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public class FloatMultiLabel implements Label {
+
+    public static class Factory implements Label.Factory {
+
+        final int numClasses;
+        final Alphabet alphabet;
+
+        final LabelWritable.Encoding encoding;
+
+        public Factory(final int numClasses) {
+            this(numClasses, LabelWritable.Encoding.FLOAT);
+        }
+
+        public Factory(final Alphabet alphabet) {
+            this(alphabet, LabelWritable.Encoding.FLOAT);
+        }
+
+        public Factory(final int numClasses,
+                final LabelWritable.Encoding encoding) {
+            assert encoding != null;
+
+            this.numClasses = numClasses;
+            this.alphabet = null;
+            this.encoding = encoding;
+        }
+
+        public Factory(final Alphabet alphabet,
+                final LabelWritable.Encoding encoding) {
+            assert alphabet.isLocked();
+            assert encoding != null;
+
+            this.numClasses = alphabet.size();
+            this.alphabet = alphabet;
+            this.encoding = encoding;
+        }
+
+        public int getNumClasses() {
+            return this.numClasses;
+        }
+
+        @Override
+        public Label create() {
+            return new FloatMultiLabel(new float[this.numClasses]);
+        }
+
+        public FloatMultiLabel create(final double... classes) {
+            assert classes.length == this.numClasses;
+
+            final float[] values = new float[classes.length];
+
+            for (int i = 0; i < classes.length; i++) {
+                values[i] = (float) classes[i];
+            }
+
+            return new FloatMultiLabel(values);
+        }
+
+        public Label createSingleton(final long index) {
+            assert index >= 0 && index < this.numClasses;
+
+            final float[] classes = new float[this.numClasses];
+            classes[(int) index] = 1.0f;
+
+            return new FloatMultiLabel(classes);
+        }
+
+        @Override
+        public Class<? extends Label> getLabelClass() {
+            return FloatMultiLabel.class;
+        }
+
+        public Label.Accumulator createAccumulator() {
+            return new KahanAccumulator(this.numClasses);
+        }
+
+        public PType<FloatMultiLabel> getLabelType() {
+            return LabelPTypes.floatMultiLabels(this, this.encoding);
+        }
+
+    }
+
+    /**
+     * Kahan summation in double precision; only the result is rounded.
+     */
+    protected static class KahanAccumulator implements Label.Accumulator {
+
+        protected final double[] sum;
+        protected final double[] c;
+
+        public KahanAccumulator(final int numClasses) {
+            this.sum = new double[numClasses];
+            this.c = new double[numClasses];
+        }
+
+        public void reset() {
+            Arrays.fill(this.sum, 0.0);
+            Arrays.fill(this.c, 0.0);
+        }
+
+        public void addScaled(final Label label, final double weight) {
+            assert label instanceof FloatMultiLabel;
+
+            final float[] classes = ((FloatMultiLabel) label).classes;
+            assert classes.length == this.sum.length;
+
+            for (int i = 0; i < classes.length; i++) {
+                this.add(i, classes[i] * weight);
+            }
+        }
+
+        public void merge(final Label.Accumulator other) {
+            assert other instanceof KahanAccumulator;
+
+            final KahanAccumulator partial = (KahanAccumulator) other;
+            assert partial.sum.length == this.sum.length;
+
+            for (int i = 0; i < this.sum.length; i++) {
+                this.add(i, partial.sum[i]);
+                this.add(i, -partial.c[i]);
+            }
+        }
+
+        protected void add(final int i, final double value) {
+            final double y = value - this.c[i];
+            final double t = this.sum[i] + y;
+
+            this.c[i] = (t - this.sum[i]) - y;
+            this.sum[i] = t;
+        }
+
+        public Label result() {
+            final float[] classes = new float[this.sum.length];
+
+            for (int i = 0; i < classes.length; i++) {
+                classes[i] = (float) this.sum[i];
+            }
+
+            return new FloatMultiLabel(classes);
+        }
+
+    }
+
+    protected float[] classes;
+
+    public FloatMultiLabel() {
+    }
+
+    protected FloatMultiLabel(final float[] classes) {
+        assert classes != null;
+
+        this.classes = classes;
+    }
+
+    public int size() {
+        assert this.classes != null;
+
+        return this.classes.length;
+    }
+
+    public double get(final int index) {
+        assert this.classes != null;
+
+        return this.classes[index];
+    }
+
+    public Label multiply(double constant) {
+        assert this.classes != null;
+
+        final float[] classes = new float[this.classes.length];
+
+        for (int i = 0; i < this.classes.length; i++) {
+            classes[i] = (float) (this.classes[i] * constant);
+        }
+
+        return new FloatMultiLabel(classes);
+    }
+
+    public Label add(Label label) {
+        assert label instanceof FloatMultiLabel;
+
+        FloatMultiLabel other = (FloatMultiLabel) label;
+
+        assert this.classes != null;
+        assert other.classes != null;
+
+        assert this.classes.length == other.classes.length;
+
+        final float[] classes = new float[this.classes.length];
+
+        for (int i = 0; i < this.classes.length; i++) {
+            classes[i] = this.classes[i] + other.classes[i];
+        }
+
+        return new FloatMultiLabel(classes);
+    }
+
+    @Override
+    public Label diff(Label label) {
+        assert label instanceof FloatMultiLabel;
+
+        FloatMultiLabel other = (FloatMultiLabel) label;
+
+        assert this.classes != null;
+        assert other.classes != null;
+
+        assert this.classes.length == other.classes.length;
+
+        final float[] classes = new float[this.classes.length];
+
+        for (int i = 0; i < this.classes.length; i++) {
+            classes[i] = this.classes[i] - other.classes[i];
+        }
+
+        return new FloatMultiLabel(classes);
+    }
+
+    @Override
+    public double manhattanNorm() {
+        double sum = 0.0;
+
+        for (final float clazz : this.classes) {
+            sum += clazz;
+        }
+
+        return sum;
+    }
+
+    @Override
+    public double euclideanNorm() {
+        double sumOfSquares = 0.0;
+
+        for (final float clazz : this.classes) {
+            sumOfSquares += (double) clazz * clazz;
+        }
+
+        return Math.sqrt(sumOfSquares);
+    }
+
+    @Override
+    public double entropy() {
+        return InformationTheory.entropy(this.toDoubles());
+    }
+
+    @Override
+    public Label normalize(final NormType type) {
+        assert this.classes != null;
+
+        final double norm = (type == NormType.MANHATTAN) ? this.manhattanNorm()
+                : this.euclideanNorm();
+        final float[] classes = new float[this.classes.length];
+
+        if (norm > 0.0) {
+            for (int i = 0; i < this.classes.length; i++) {
+                classes[i] = (float) (this.classes[i] / norm);
+            }
+
+            return new FloatMultiLabel(classes);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public Label prune(final int maxSize, final double threshold) {
+        assert this.classes != null;
+        assert maxSize >= 1;
+
+        final double[] values = this.toDoubles();
+        final int[] ranking = PruningPolicy.rank(values, values.length,
+                maxSize);
+        final float[] classes = new float[this.classes.length];
+
+        for (int i = 0; i < ranking.length; i++) {
+            if (i > 0 && values[ranking[i]] < threshold) {
+                break;
+            }
+
+            classes[ranking[i]] = this.classes[ranking[i]];
+        }
+
+        return new FloatMultiLabel(classes);
+    }
+
+    @Override
+    public int maxArg() {
+        int index = -1;
+        float max = Float.MIN_VALUE;
+
+        for (int i = 0; i < this.classes.length; i++) {
+            if (this.classes[i] > Math.max(max, 0.0f)) {
+                index = i;
+                max = this.classes[i];
+            }
+        }
+
+        return index;
+    }
+
+    protected double[] toDoubles() {
+        final double[] values = new double[this.classes.length];
+
+        for (int i = 0; i < this.classes.length; i++) {
+            values[i] = this.classes[i];
+        }
+
+        return values;
+    }
+
+    public void readFields(DataInput input) throws IOException {
+        final int size = input.readInt();
+
+        this.classes = new float[size];
+
+        for (int i = 0; i < size; i++) {
+            this.classes[i] = input.readFloat();
+        }
+    }
+
+    public void write(DataOutput output) throws IOException {
+        if (this.classes == null) {
+            output.writeInt(0);
+        } else {
+            output.writeInt(this.classes.length);
+
+            for (final float label : this.classes) {
+                output.writeFloat(label);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.toString(null);
+    }
+
+    @Override
+    public String toString(Alphabet alphabet) {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("(");
+
+        if (this.classes != null) {
+            int i = 0;
+
+            for (final float label : this.classes) {
+                if (alphabet != null) {
+                    builder.append(alphabet.getToken(i));
+                    builder.append(": ");
+                }
+
+                builder.append(String.format("%.10f", label));
+                builder.append(", ");
+
+                i++;
+            }
+
+            // Rollback last two characters.
+            builder.setLength(builder.length() - 2);
+        }
+
+        builder.append(") = ");
+
+        if (alphabet != null) {
+            builder.append(alphabet.getToken(this.maxArg()));
+        } else {
+            builder.append(this.maxArg());
+        }
+
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other instanceof FloatMultiLabel) {
+            final FloatMultiLabel otherLabel = (FloatMultiLabel) other;
+
+            return Arrays.equals(this.classes, otherLabel.classes);
+        } else {
+            return false;
+        }
+    }
+
+}
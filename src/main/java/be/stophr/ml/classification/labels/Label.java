@@ -2,6 +2,7 @@ package be.stophr.ml.classification.labels;
 
 import java.io.Serializable;
 
+import org.apache.crunch.types.PType;
 import org.apache.hadoop.io.Writable;
 
 import be.stophr.ml.classification.Alphabet;
@@ -26,8 +27,50 @@ public interface Label extends Serializable, Writable {
 
         public Class<? extends Label> getLabelClass();
 
+        public Accumulator createAccumulator();
+
+        /**
+         * The Apache Crunch type used to serialize labels created by this
+         * factory.
+         */
+        public PType<? extends Label> getLabelType();
+
+    }
+
+    /**
+     * Mutable buffer which sums weighted labels in place using Kahan
+     * (compensated) summation. Instances are not thread-safe and may be
+     * reused after a reset.
+     */
+    public static interface Accumulator {
+
+        public void reset();
+
+        public void addScaled(final Label label, final double weight);
+
+        /**
+         * Adds the sum of another accumulator of the same type, created by
+         * the same factory, minus its compensation. This carries over the
+         * low-order bits the other sum lost, hence the result differs from
+         * adding its labels to this accumulator directly only by the
+         * rounding of these compensations.
+         */
+        public void merge(final Accumulator other);
+
+        /**
+         * Returns a new label holding the current sum.
+         */
+        public Label result();
+
     }
 
+    /**
+     * Number of classes.
+     */
+    public int size();
+
+    public double get(final int index);
+
     public Label multiply(final double constant);
 
     public Label add(final Label other);
@@ -42,6 +85,13 @@ public interface Label extends Serializable, Writable {
 
     public Label normalize(final NormType type);
 
+    /**
+     * Keeps at most maxSize of the largest entries whose value is at least
+     * the threshold and sets all others to zero. The largest entry is always
+     * kept.
+     */
+    public Label prune(final int maxSize, final double threshold);
+
     public int maxArg();
 
     public String toString();
@@ -0,0 +1,236 @@
+package be.stophr.ml.classification.labels;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+
+import be.stophr.ml.InformationTheory;
+
+/**
+ * Mergeable summary of a collection of labels: the number of labels assigned
+ * to every class (see Label.maxArg), and histograms of their entropy and of
+ * their confidence, the largest entry of the normalized label. Quantiles are
+ * estimated from the histograms, hence they are accurate up to the width of a
+ * bin.
+ *
+ * @author Christophe Van Gysel
+ */
+public class LabelStatistics implements Writable {
+
+    protected int numClasses;
+    protected int numBins;
+
+    protected long count;
+    protected double entropySum;
+
+    /**
+     * Labels without a largest entry, i.e. all zero.
+     */
+    protected long unassigned;
+
+    protected long[] classCounts;
+
+    /**
+     * Over [0, log2(numClasses)].
+     */
+    protected long[] entropyHistogram;
+
+    /**
+     * Over [0, 1].
+     */
+    protected long[] confidenceHistogram;
+
+    public LabelStatistics() {
+    }
+
+    public LabelStatistics(final int numClasses, final int numBins) {
+        assert numClasses >= 1;
+        assert numBins >= 1;
+
+        this.numClasses = numClasses;
+        this.numBins = numBins;
+
+        this.classCounts = new long[numClasses];
+        this.entropyHistogram = new long[numBins];
+        this.confidenceHistogram = new long[numBins];
+    }
+
+    public void add(final Label label) {
+        assert label.size() == this.numClasses;
+
+        final double norm = label.manhattanNorm();
+        final int maxArg = label.maxArg();
+
+        final Label normalized = label.normalize(Label.NormType.MANHATTAN);
+
+        final double entropy = (normalized != null) ? normalized.entropy()
+                : 0.0;
+        final double confidence = (maxArg >= 0 && norm > 0.0) ? label
+                .get(maxArg) / norm : 0.0;
+
+        this.count++;
+        this.entropySum += entropy;
+
+        if (maxArg >= 0) {
+            this.classCounts[maxArg]++;
+        } else {
+            this.unassigned++;
+        }
+
+        this.entropyHistogram[this.getBin(entropy, this.getMaxEntropy())]++;
+        this.confidenceHistogram[this.getBin(confidence, 1.0)]++;
+    }
+
+    public void merge(final LabelStatistics other) {
+        assert this.numClasses == other.numClasses;
+        assert this.numBins == other.numBins;
+
+        this.count += other.count;
+        this.entropySum += other.entropySum;
+        this.unassigned += other.unassigned;
+
+        for (int i = 0; i < this.numClasses; i++) {
+            this.classCounts[i] += other.classCounts[i];
+        }
+
+        for (int i = 0; i < this.numBins; i++) {
+            this.entropyHistogram[i] += other.entropyHistogram[i];
+            this.confidenceHistogram[i] += other.confidenceHistogram[i];
+        }
+    }
+
+    protected int getBin(final double value, final double max) {
+        if (max <= 0.0) {
+            return 0;
+        }
+
+        final int bin = (int) (value / max * this.numBins);
+
+        return Math.max(0, Math.min(bin, this.numBins - 1));
+    }
+
+    public double getMaxEntropy() {
+        return Math.log(this.numClasses) / InformationTheory.LOG_2;
+    }
+
+    public int getNumClasses() {
+        return this.numClasses;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public long getUnassigned() {
+        return this.unassigned;
+    }
+
+    public double getMeanEntropy() {
+        return this.count > 0 ? this.entropySum / this.count : 0.0;
+    }
+
+    public long[] getClassCounts() {
+        return this.classCounts.clone();
+    }
+
+    public long[] getEntropyHistogram() {
+        return this.entropyHistogram.clone();
+    }
+
+    public long[] getConfidenceHistogram() {
+        return this.confidenceHistogram.clone();
+    }
+
+    public double getEntropyQuantile(final double quantile) {
+        return this.getQuantile(this.entropyHistogram, this.getMaxEntropy(),
+                quantile);
+    }
+
+    public double getConfidenceQuantile(final double quantile) {
+        return this.getQuantile(this.confidenceHistogram, 1.0, quantile);
+    }
+
+    /**
+     * Interpolates linearly within the bin holding the quantile.
+     */
+    protected double getQuantile(final long[] histogram, final double max,
+            final double quantile) {
+        assert quantile >= 0.0 && quantile <= 1.0;
+
+        if (this.count == 0) {
+            return Double.NaN;
+        }
+
+        final double rank = quantile * this.count;
+        final double width = max / this.numBins;
+
+        long cumulative = 0;
+
+        for (int i = 0; i < this.numBins; i++) {
+            if (histogram[i] > 0 && cumulative + histogram[i] >= rank) {
+                return width * (i + (rank - cumulative) / histogram[i]);
+            }
+
+            cumulative += histogram[i];
+        }
+
+        return max;
+    }
+
+    public void readFields(DataInput input) throws IOException {
+        this.numClasses = input.readInt();
+        this.numBins = input.readInt();
+
+        this.count = input.readLong();
+        this.entropySum = input.readDouble();
+        this.unassigned = input.readLong();
+
+        this.classCounts = readLongs(input, this.numClasses);
+        this.entropyHistogram = readLongs(input, this.numBins);
+        this.confidenceHistogram = readLongs(input, this.numBins);
+    }
+
+    public void write(DataOutput output) throws IOException {
+        output.writeInt(this.numClasses);
+        output.writeInt(this.numBins);
+
+        output.writeLong(this.count);
+        output.writeDouble(this.entropySum);
+        output.writeLong(this.unassigned);
+
+        writeLongs(output, this.classCounts);
+        writeLongs(output, this.entropyHistogram);
+        writeLongs(output, this.confidenceHistogram);
+    }
+
+    protected static long[] readLongs(final DataInput input, final int size)
+            throws IOException {
+        final long[] values = new long[size];
+
+        for (int i = 0; i < size; i++) {
+            values[i] = input.readLong();
+        }
+
+        return values;
+    }
+
+    protected static void writeLongs(final DataOutput output,
+            final long[] values) throws IOException {
+        for (final long value : values) {
+            output.writeLong(value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "LabelStatistics(count=%d, meanEntropy=%.4f, unassigned=%d, classCounts=%s, medianConfidence=%.4f)",
+                this.count, this.getMeanEntropy(), this.unassigned,
+                Arrays.toString(this.classCounts),
+                this.getConfidenceQuantile(0.5));
+    }
+
+}
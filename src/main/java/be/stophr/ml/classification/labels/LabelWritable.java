@@ -0,0 +1,271 @@
+package be.stophr.ml.classification.labels;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Compact wire format for labels, used by the label PTypes (see LabelPTypes).
+ *
+ * Only the non-zero entries are written. The number of classes is not part of
+ * the record, it is known to the PType. Depending on which is smaller, the
+ * entries are either written densely (all values up to the last non-zero one)
+ * or sparsely (as index differences followed by the values). Values are
+ * written as doubles, floats or quantized to 16 bits. The quantized encoding
+ * only applies to values in [0, 1], i.e. normalized labels; records holding
+ * other values are written as doubles instead.
+ *
+ * Labels are ordered lexicographically by their dense values.
+ *
+ * @author Christophe Van Gysel
+ */
+public class LabelWritable implements WritableComparable<LabelWritable> {
+
+    public static enum Encoding {
+        DOUBLE, FLOAT, QUANTIZED;
+    }
+
+    protected static final int ENCODING_MASK = 0x03;
+    protected static final int SPARSE_FLAG = 0x04;
+
+    protected static final double QUANTIZATION_LEVELS = 65535.0;
+
+    protected Encoding encoding = Encoding.DOUBLE;
+
+    protected int size = 0;
+    protected int[] indices = new int[0];
+    protected double[] values = new double[0];
+
+    public LabelWritable() {
+    }
+
+    public LabelWritable(final Encoding encoding) {
+        assert encoding != null;
+
+        this.encoding = encoding;
+    }
+
+    /**
+     * Replaces the contents of this instance by the non-zero entries of the
+     * given label.
+     */
+    public void set(final Label label) {
+        this.size = 0;
+
+        for (int i = 0; i < label.size(); i++) {
+            final double value = label.get(i);
+
+            if (value != 0.0) {
+                this.ensureCapacity(this.size + 1);
+
+                this.indices[this.size] = i;
+                this.values[this.size] = value;
+                this.size++;
+            }
+        }
+    }
+
+    /**
+     * Number of non-zero entries.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public int getIndex(final int entry) {
+        assert entry >= 0 && entry < this.size;
+
+        return this.indices[entry];
+    }
+
+    public double getValue(final int entry) {
+        assert entry >= 0 && entry < this.size;
+
+        return this.values[entry];
+    }
+
+    public Encoding getEncoding() {
+        return this.encoding;
+    }
+
+    protected void ensureCapacity(final int capacity) {
+        if (this.indices.length < capacity) {
+            final int length = Math.max(capacity, 2 * this.indices.length);
+
+            final int[] indices = new int[length];
+            final double[] values = new double[length];
+
+            System.arraycopy(this.indices, 0, indices, 0, this.size);
+            System.arraycopy(this.values, 0, values, 0, this.size);
+
+            this.indices = indices;
+            this.values = values;
+        }
+    }
+
+    /**
+     * The encoding actually used for the current contents.
+     */
+    protected Encoding getEffectiveEncoding() {
+        if (this.encoding == Encoding.QUANTIZED) {
+            for (int i = 0; i < this.size; i++) {
+                if (this.values[i] < 0.0 || this.values[i] > 1.0) {
+                    return Encoding.DOUBLE;
+                }
+            }
+        }
+
+        return this.encoding;
+    }
+
+    protected boolean isSparse() {
+        // Writing the indices costs about a byte per entry, writing densely
+        // costs a value per zero entry.
+        return this.size > 0 && this.indices[this.size - 1] + 1 > 2 * this.size;
+    }
+
+    public void readFields(DataInput input) throws IOException {
+        final int flags = input.readByte();
+        final Encoding encoding = Encoding.values()[flags & ENCODING_MASK];
+        final boolean sparse = (flags & SPARSE_FLAG) != 0;
+
+        final int count = WritableUtils.readVInt(input);
+
+        this.size = 0;
+        this.ensureCapacity(count);
+
+        int index = -1;
+
+        for (int i = 0; i < count; i++) {
+            index = sparse ? index + WritableUtils.readVInt(input) : i;
+
+            this.indices[i] = index;
+        }
+
+        this.size = 0;
+
+        for (int i = 0; i < count; i++) {
+            final double value = readValue(input, encoding);
+
+            // Dense records hold explicit zeros.
+            if (value != 0.0) {
+                this.indices[this.size] = this.indices[i];
+                this.values[this.size] = value;
+                this.size++;
+            }
+        }
+    }
+
+    public void write(DataOutput output) throws IOException {
+        final Encoding encoding = this.getEffectiveEncoding();
+        final boolean sparse = this.isSparse();
+
+        output.writeByte(encoding.ordinal() | (sparse ? SPARSE_FLAG : 0));
+
+        if (sparse) {
+            WritableUtils.writeVInt(output, this.size);
+
+            int previous = -1;
+
+            for (int i = 0; i < this.size; i++) {
+                WritableUtils.writeVInt(output, this.indices[i] - previous);
+                previous = this.indices[i];
+            }
+
+            for (int i = 0; i < this.size; i++) {
+                writeValue(output, encoding, this.values[i]);
+            }
+        } else {
+            final int count = (this.size > 0) ? this.indices[this.size - 1] + 1
+                    : 0;
+
+            WritableUtils.writeVInt(output, count);
+
+            for (int i = 0, entry = 0; i < count; i++) {
+                if (this.indices[entry] == i) {
+                    writeValue(output, encoding, this.values[entry]);
+                    entry++;
+                } else {
+                    writeValue(output, encoding, 0.0);
+                }
+            }
+        }
+    }
+
+    protected static double readValue(final DataInput input,
+            final Encoding encoding) throws IOException {
+        switch (encoding) {
+        case FLOAT:
+            return input.readFloat();
+        case QUANTIZED:
+            return input.readUnsignedShort() / QUANTIZATION_LEVELS;
+        default:
+            return input.readDouble();
+        }
+    }
+
+    protected static void writeValue(final DataOutput output,
+            final Encoding encoding, final double value) throws IOException {
+        switch (encoding) {
+        case FLOAT:
+            output.writeFloat((float) value);
+            break;
+        case QUANTIZED:
+            output.writeShort((int) Math.round(value * QUANTIZATION_LEVELS));
+            break;
+        default:
+            output.writeDouble(value);
+        }
+    }
+
+    public int compareTo(final LabelWritable other) {
+        int i = 0;
+        int j = 0;
+
+        while (i < this.size || j < other.size) {
+            final int index = Math.min(
+                    (i < this.size) ? this.indices[i] : Integer.MAX_VALUE,
+                    (j < other.size) ? other.indices[j] : Integer.MAX_VALUE);
+
+            final double first = (i < this.size && this.indices[i] == index) ? this.values[i++]
+                    : 0.0;
+            final double second = (j < other.size && other.indices[j] == index) ? other.values[j++]
+                    : 0.0;
+
+            final int comparison = Double.compare(first, second);
+
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other instanceof LabelWritable) {
+            return this.compareTo((LabelWritable) other) == 0;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+
+        for (int i = 0; i < this.size; i++) {
+            final long bits = Double.doubleToLongBits(this.values[i]);
+
+            hash = 31 * hash + this.indices[i];
+            hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+        }
+
+        return hash;
+    }
+
+}
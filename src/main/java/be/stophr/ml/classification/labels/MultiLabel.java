@@ -5,8 +5,11 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.util.Arrays;
 
+import org.apache.crunch.types.PType;
+
 import be.stophr.ml.InformationTheory;
 import be.stophr.ml.classification.Alphabet;
+import be.stophr.ml.classification.labels.crunch.LabelPTypes;
 
 /**
  * Multilabel implementation of the Label interface. Mathematically instances of
@@ -22,16 +25,41 @@ public class MultiLabel implements Label {
         final int numClasses;
         final Alphabet alphabet;
 
+        final LabelWritable.Encoding encoding;
+
         public Factory(final int numClasses) {
+            this(numClasses, LabelWritable.Encoding.DOUBLE);
+        }
+
+        public Factory(final Alphabet alphabet) {
+            this(alphabet, LabelWritable.Encoding.DOUBLE);
+        }
+
+        /**
+         * The encoding determines how labels are serialized (see
+         * LabelWritable); FLOAT and QUANTIZED are lossy.
+         */
+        public Factory(final int numClasses,
+                final LabelWritable.Encoding encoding) {
+            assert encoding != null;
+
             this.numClasses = numClasses;
             this.alphabet = null;
+            this.encoding = encoding;
         }
 
-        public Factory(final Alphabet alphabet) {
+        public Factory(final Alphabet alphabet,
+                final LabelWritable.Encoding encoding) {
             assert alphabet.isLocked();
+            assert encoding != null;
 
             this.numClasses = alphabet.size();
             this.alphabet = alphabet;
+            this.encoding = encoding;
+        }
+
+        public int getNumClasses() {
+            return this.numClasses;
         }
 
         @Override
@@ -60,6 +88,71 @@ public class MultiLabel implements Label {
             return MultiLabel.class;
         }
 
+        public Label.Accumulator createAccumulator() {
+            return new KahanAccumulator(this.numClasses);
+        }
+
+        public PType<MultiLabel> getLabelType() {
+            return LabelPTypes.multiLabels(this, this.encoding);
+        }
+
+    }
+
+    /**
+     * Performs exactly the same floating point operations as summing
+     * multiply(weight) of every label with Kahan summation, without
+     * allocating intermediate labels.
+     */
+    protected static class KahanAccumulator implements Label.Accumulator {
+
+        protected final double[] sum;
+        protected final double[] c;
+
+        public KahanAccumulator(final int numClasses) {
+            this.sum = new double[numClasses];
+            this.c = new double[numClasses];
+        }
+
+        public void reset() {
+            Arrays.fill(this.sum, 0.0);
+            Arrays.fill(this.c, 0.0);
+        }
+
+        public void addScaled(final Label label, final double weight) {
+            assert label instanceof MultiLabel;
+
+            final double[] classes = ((MultiLabel) label).classes;
+            assert classes.length == this.sum.length;
+
+            for (int i = 0; i < classes.length; i++) {
+                this.add(i, classes[i] * weight);
+            }
+        }
+
+        public void merge(final Label.Accumulator other) {
+            assert other instanceof KahanAccumulator;
+
+            final KahanAccumulator partial = (KahanAccumulator) other;
+            assert partial.sum.length == this.sum.length;
+
+            for (int i = 0; i < this.sum.length; i++) {
+                this.add(i, partial.sum[i]);
+                this.add(i, -partial.c[i]);
+            }
+        }
+
+        protected void add(final int i, final double value) {
+            final double y = value - this.c[i];
+            final double t = this.sum[i] + y;
+
+            this.c[i] = (t - this.sum[i]) - y;
+            this.sum[i] = t;
+        }
+
+        public Label result() {
+            return new MultiLabel(this.sum.clone());
+        }
+
     }
 
     protected double[] classes;
@@ -85,6 +178,18 @@ public class MultiLabel implements Label {
         this.classes = classes;
     }
 
+    public int size() {
+        assert this.classes != null;
+
+        return this.classes.length;
+    }
+
+    public double get(final int index) {
+        assert this.classes != null;
+
+        return this.classes[index];
+    }
+
     public Label multiply(double constant) {
         assert this.classes != null;
 
@@ -182,6 +287,28 @@ public class MultiLabel implements Label {
         }
     }
 
+    @Override
+    public Label prune(final int maxSize, final double threshold) {
+        assert this.classes != null;
+        assert maxSize >= 1;
+
+        final int[] ranking = PruningPolicy.rank(this.classes,
+                this.classes.length, maxSize);
+        final double[] classes = new double[this.classes.length];
+
+        for (int i = 0; i < ranking.length; i++) {
+            final double value = this.classes[ranking[i]];
+
+            if (i > 0 && value < threshold) {
+                break;
+            }
+
+            classes[ranking[i]] = value;
+        }
+
+        return new MultiLabel(classes);
+    }
+
     @Override
     public int maxArg() {
         int index = -1;
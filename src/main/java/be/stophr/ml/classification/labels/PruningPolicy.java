@@ -0,0 +1,107 @@
+package be.stophr.ml.classification.labels;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Limits the support of labels by keeping only their largest entries: at
+ * most maxSize of them, and only those which make up at least the given
+ * fraction of the total (manhattan) mass of the label.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public class PruningPolicy implements Serializable {
+
+    protected final int maxSize;
+    protected final double threshold;
+
+    public PruningPolicy(final int maxSize, final double threshold) {
+        assert maxSize >= 1;
+        assert threshold >= 0.0 && threshold <= 1.0;
+
+        this.maxSize = maxSize;
+        this.threshold = threshold;
+    }
+
+    public static PruningPolicy topK(final int k) {
+        return new PruningPolicy(k, 0.0);
+    }
+
+    public static PruningPolicy threshold(final double threshold) {
+        return new PruningPolicy(Integer.MAX_VALUE, threshold);
+    }
+
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    public double getThreshold() {
+        return this.threshold;
+    }
+
+    public Label apply(final Label label) {
+        return label.prune(this.maxSize,
+                this.threshold * label.manhattanNorm());
+    }
+
+    /**
+     * Indices of the (at most) maxSize largest of the first length values, in
+     * decreasing order of value. Ties are broken by the lowest index.
+     */
+    static int[] rank(final double[] values, final int length,
+            final int maxSize) {
+        if (maxSize >= length) {
+            final Integer[] order = new Integer[length];
+
+            for (int i = 0; i < length; i++) {
+                order[i] = i;
+            }
+
+            Arrays.sort(order, new Comparator<Integer>() {
+
+                @Override
+                public int compare(Integer first, Integer second) {
+                    final int comparison = Double.compare(values[second],
+                            values[first]);
+
+                    return (comparison != 0) ? comparison : first - second;
+                }
+
+            });
+
+            final int[] ranking = new int[length];
+
+            for (int i = 0; i < length; i++) {
+                ranking[i] = order[i];
+            }
+
+            return ranking;
+        }
+
+        // Insertion into the sorted ranking, which is cheap as long as
+        // maxSize is small.
+        final int[] ranking = new int[maxSize];
+        int size = 0;
+
+        for (int i = 0; i < length; i++) {
+            if (size == maxSize && values[i] <= values[ranking[size - 1]]) {
+                continue;
+            }
+
+            int position = Math.min(size, maxSize - 1);
+
+            while (position > 0 && values[ranking[position - 1]] < values[i]) {
+                ranking[position] = ranking[position - 1];
+                position--;
+            }
+
+            ranking[position] = i;
+            size = Math.min(size + 1, maxSize);
+        }
+
+        return ranking;
+    }
+
+}
@@ -0,0 +1,531 @@
+package be.stophr.ml.classification.labels;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.crunch.types.PType;
+
+import be.stophr.ml.InformationTheory;
+import be.stophr.ml.classification.Alphabet;
+import be.stophr.ml.classification.labels.crunch.LabelPTypes;
+
+/**
+ * Sparse multilabel implementation of the Label interface. Only the non-zero
+ * entries are stored, as (index, value) pairs sorted by index; hence memory
+ * and serialized size depend on the support of the label instead of on the
+ * number of classes.
+ *
+ * Entries which become exactly zero are dropped. The results of all
+ * operations equal those of MultiLabel up to rounding: the accumulator only
+ * visits the entries of the labels it adds (see KahanAccumulator), hence
+ * sums may differ from the dense ones in their last bits.
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public class SparseMultiLabel implements Label {
+
+    public static class Factory implements Label.Factory {
+
+        final int numClasses;
+        final Alphabet alphabet;
+
+        final LabelWritable.Encoding encoding;
+
+        public Factory(final int numClasses) {
+            this(numClasses, LabelWritable.Encoding.DOUBLE);
+        }
+
+        public Factory(final Alphabet alphabet) {
+            this(alphabet, LabelWritable.Encoding.DOUBLE);
+        }
+
+        /**
+         * The encoding determines how labels are serialized (see
+         * LabelWritable); FLOAT and QUANTIZED are lossy.
+         */
+        public Factory(final int numClasses,
+                final LabelWritable.Encoding encoding) {
+            assert encoding != null;
+
+            this.numClasses = numClasses;
+            this.alphabet = null;
+            this.encoding = encoding;
+        }
+
+        public Factory(final Alphabet alphabet,
+                final LabelWritable.Encoding encoding) {
+            assert alphabet.isLocked();
+            assert encoding != null;
+
+            this.numClasses = alphabet.size();
+            this.alphabet = alphabet;
+            this.encoding = encoding;
+        }
+
+        public int getNumClasses() {
+            return this.numClasses;
+        }
+
+        @Override
+        public Label create() {
+            return new SparseMultiLabel(this.numClasses, new int[0],
+                    new double[0], 0);
+        }
+
+        public SparseMultiLabel create(final double... classes) {
+            assert classes.length == this.numClasses;
+
+            final int[] indices = new int[classes.length];
+            final double[] values = new double[classes.length];
+            int size = 0;
+
+            for (int i = 0; i < classes.length; i++) {
+                if (classes[i] != 0.0) {
+                    indices[size] = i;
+                    values[size] = classes[i];
+                    size++;
+                }
+            }
+
+            return new SparseMultiLabel(this.numClasses, indices, values, size);
+        }
+
+        /**
+         * Creates a label from the first size (index, value) pairs, which
+         * should be sorted by index.
+         */
+        public SparseMultiLabel create(final int[] indices,
+                final double[] values, final int size) {
+            return new SparseMultiLabel(this.numClasses, Arrays.copyOf(
+                    indices, size), Arrays.copyOf(values, size), size);
+        }
+
+        public Label createSingleton(final long index) {
+            assert index >= 0 && index < this.numClasses;
+
+            return new SparseMultiLabel(this.numClasses,
+                    new int[] { (int) index }, new double[] { 1.0 }, 1);
+        }
+
+        @Override
+        public Class<? extends Label> getLabelClass() {
+            return SparseMultiLabel.class;
+        }
+
+        public Label.Accumulator createAccumulator() {
+            return new KahanAccumulator(this.numClasses);
+        }
+
+        public PType<SparseMultiLabel> getLabelType() {
+            return LabelPTypes.sparseMultiLabels(this, this.encoding);
+        }
+
+    }
+
+    /**
+     * Sums into dense buffers, but only visits (and resets) the entries which
+     * have been touched since the last reset. Unlike the dense accumulator,
+     * the pending correction of an entry is not applied when a label without
+     * that entry is added, such that the sums can differ from those of
+     * MultiLabel in their last bits.
+     */
+    protected static class KahanAccumulator implements Label.Accumulator {
+
+        protected final int numClasses;
+
+        protected final double[] sum;
+        protected final double[] c;
+
+        protected final boolean[] touched;
+        protected final int[] indices;
+        protected int size = 0;
+
+        public KahanAccumulator(final int numClasses) {
+            this.numClasses = numClasses;
+
+            this.sum = new double[numClasses];
+            this.c = new double[numClasses];
+            this.touched = new boolean[numClasses];
+            this.indices = new int[numClasses];
+        }
+
+        public void reset() {
+            for (int i = 0; i < this.size; i++) {
+                final int index = this.indices[i];
+
+                this.sum[index] = 0.0;
+                this.c[index] = 0.0;
+                this.touched[index] = false;
+            }
+
+            this.size = 0;
+        }
+
+        public void addScaled(final Label label, final double weight) {
+            assert label instanceof SparseMultiLabel;
+
+            final SparseMultiLabel other = (SparseMultiLabel) label;
+            assert other.numClasses == this.numClasses;
+
+            for (int j = 0; j < other.indices.length; j++) {
+                this.add(other.indices[j], other.values[j] * weight);
+            }
+        }
+
+        public void merge(final Label.Accumulator other) {
+            assert other instanceof KahanAccumulator;
+
+            final KahanAccumulator partial = (KahanAccumulator) other;
+            assert partial.numClasses == this.numClasses;
+
+            for (int j = 0; j < partial.size; j++) {
+                final int i = partial.indices[j];
+
+                this.add(i, partial.sum[i]);
+                this.add(i, -partial.c[i]);
+            }
+        }
+
+        protected void add(final int i, final double value) {
+            if (!this.touched[i]) {
+                this.touched[i] = true;
+                this.indices[this.size++] = i;
+            }
+
+            final double y = value - this.c[i];
+            final double t = this.sum[i] + y;
+
+            this.c[i] = (t - this.sum[i]) - y;
+            this.sum[i] = t;
+        }
+
+        public Label result() {
+            final int[] order = Arrays.copyOf(this.indices, this.size);
+            Arrays.sort(order);
+
+            final int[] indices = new int[this.size];
+            final double[] values = new double[this.size];
+            int size = 0;
+
+            for (final int index : order) {
+                if (this.sum[index] != 0.0) {
+                    indices[size] = index;
+                    values[size] = this.sum[index];
+                    size++;
+                }
+            }
+
+            return new SparseMultiLabel(this.numClasses, indices, values, size);
+        }
+
+    }
+
+    protected int numClasses;
+
+    protected int[] indices;
+    protected double[] values;
+
+    public SparseMultiLabel() {
+    }
+
+    protected SparseMultiLabel(final int numClasses, final int[] indices,
+            final double[] values, final int size) {
+        assert numClasses >= 2;
+        assert indices.length >= size && values.length >= size;
+
+        this.numClasses = numClasses;
+
+        if (indices.length == size) {
+            this.indices = indices;
+            this.values = values;
+        } else {
+            this.indices = Arrays.copyOf(indices, size);
+            this.values = Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Number of non-zero entries.
+     */
+    public int support() {
+        return this.indices.length;
+    }
+
+    public int size() {
+        return this.numClasses;
+    }
+
+    public double get(final int index) {
+        assert index >= 0 && index < this.numClasses;
+
+        final int entry = Arrays.binarySearch(this.indices, index);
+
+        return (entry >= 0) ? this.values[entry] : 0.0;
+    }
+
+    public Label multiply(double constant) {
+        assert this.indices != null;
+
+        final int[] indices = new int[this.indices.length];
+        final double[] values = new double[this.indices.length];
+        int size = 0;
+
+        for (int i = 0; i < this.indices.length; i++) {
+            final double value = this.values[i] * constant;
+
+            if (value != 0.0) {
+                indices[size] = this.indices[i];
+                values[size] = value;
+                size++;
+            }
+        }
+
+        return new SparseMultiLabel(this.numClasses, indices, values, size);
+    }
+
+    public Label add(Label label) {
+        return this.merge(label, 1.0);
+    }
+
+    @Override
+    public Label diff(Label label) {
+        return this.merge(label, -1.0);
+    }
+
+    /**
+     * Computes this + sign * other by merging both sorted entry lists.
+     */
+    protected Label merge(final Label label, final double sign) {
+        assert label instanceof SparseMultiLabel;
+
+        final SparseMultiLabel other = (SparseMultiLabel) label;
+
+        assert this.indices != null;
+        assert other.indices != null;
+
+        assert this.numClasses == other.numClasses;
+
+        final int capacity = this.indices.length + other.indices.length;
+        final int[] indices = new int[capacity];
+        final double[] values = new double[capacity];
+        int size = 0;
+
+        int i = 0;
+        int j = 0;
+
+        while (i < this.indices.length || j < other.indices.length) {
+            final int index;
+            final double value;
+
+            if (j == other.indices.length
+                    || (i < this.indices.length && this.indices[i] < other.indices[j])) {
+                index = this.indices[i];
+                value = this.values[i];
+                i++;
+            } else if (i == this.indices.length
+                    || other.indices[j] < this.indices[i]) {
+                index = other.indices[j];
+                value = (sign > 0.0) ? other.values[j] : -other.values[j];
+                j++;
+            } else {
+                index = this.indices[i];
+                value = (sign > 0.0) ? this.values[i] + other.values[j]
+                        : this.values[i] - other.values[j];
+                i++;
+                j++;
+            }
+
+            if (value != 0.0) {
+                indices[size] = index;
+                values[size] = value;
+                size++;
+            }
+        }
+
+        return new SparseMultiLabel(this.numClasses, indices, values, size);
+    }
+
+    @Override
+    public double manhattanNorm() {
+        double sum = 0.0;
+
+        for (final double value : this.values) {
+            sum += value;
+        }
+
+        return sum;
+    }
+
+    @Override
+    public double euclideanNorm() {
+        double sumOfSquares = 0.0;
+
+        for (final double value : this.values) {
+            sumOfSquares += value * value;
+        }
+
+        return Math.sqrt(sumOfSquares);
+    }
+
+    @Override
+    public double entropy() {
+        // Zero entries do not contribute to the entropy.
+        return InformationTheory.entropy(this.values);
+    }
+
+    @Override
+    public Label normalize(final NormType type) {
+        assert this.indices != null;
+
+        final double norm = (type == NormType.MANHATTAN) ? this.manhattanNorm()
+                : this.euclideanNorm();
+
+        if (norm > 0.0) {
+            final int[] indices = new int[this.indices.length];
+            final double[] values = new double[this.indices.length];
+            int size = 0;
+
+            for (int i = 0; i < this.indices.length; i++) {
+                final double value = this.values[i] / norm;
+
+                if (value != 0.0) {
+                    indices[size] = this.indices[i];
+                    values[size] = value;
+                    size++;
+                }
+            }
+
+            return new SparseMultiLabel(this.numClasses, indices, values, size);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public Label prune(final int maxSize, final double threshold) {
+        assert this.indices != null;
+        assert maxSize >= 1;
+
+        final int[] ranking = PruningPolicy.rank(this.values,
+                this.values.length, maxSize);
+
+        int size = 0;
+
+        while (size < ranking.length
+                && (size == 0 || this.values[ranking[size]] >= threshold)) {
+            size++;
+        }
+
+        final int[] kept = Arrays.copyOf(ranking, size);
+        Arrays.sort(kept);
+
+        final int[] indices = new int[size];
+        final double[] values = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            indices[i] = this.indices[kept[i]];
+            values[i] = this.values[kept[i]];
+        }
+
+        return new SparseMultiLabel(this.numClasses, indices, values, size);
+    }
+
+    @Override
+    public int maxArg() {
+        int index = -1;
+        double max = Double.MIN_VALUE;
+
+        for (int i = 0; i < this.indices.length; i++) {
+            if (this.values[i] > Math.max(max, 0.0)) {
+                index = this.indices[i];
+                max = this.values[i];
+            }
+        }
+
+        return index;
+    }
+
+    public void readFields(DataInput input) throws IOException {
+        this.numClasses = input.readInt();
+
+        final int size = input.readInt();
+
+        this.indices = new int[size];
+        this.values = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            this.indices[i] = input.readInt();
+            this.values[i] = input.readDouble();
+        }
+    }
+
+    public void write(DataOutput output) throws IOException {
+        output.writeInt(this.numClasses);
+
+        if (this.indices == null) {
+            output.writeInt(0);
+        } else {
+            output.writeInt(this.indices.length);
+
+            for (int i = 0; i < this.indices.length; i++) {
+                output.writeInt(this.indices[i]);
+                output.writeDouble(this.values[i]);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.toString(null);
+    }
+
+    @Override
+    public String toString(Alphabet alphabet) {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("(");
+
+        if (this.indices != null && this.indices.length > 0) {
+            for (int i = 0; i < this.indices.length; i++) {
+                if (alphabet != null) {
+                    builder.append(alphabet.getToken(this.indices[i]));
+                } else {
+                    builder.append(this.indices[i]);
+                }
+
+                builder.append(": ");
+                builder.append(String.format("%.25f", this.values[i]));
+                builder.append(", ");
+            }
+
+            // Rollback last two characters.
+            builder.setLength(builder.length() - 2);
+        }
+
+        builder.append(") = ");
+
+        if (alphabet != null) {
+            builder.append(alphabet.getToken(this.maxArg()));
+        } else {
+            builder.append(this.maxArg());
+        }
+
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other instanceof SparseMultiLabel) {
+            final SparseMultiLabel otherLabel = (SparseMultiLabel) other;
+
+            return this.numClasses == otherLabel.numClasses
+                    && Arrays.equals(this.indices, otherLabel.indices)
+                    && Arrays.equals(this.values, otherLabel.values);
+        } else {
+            return false;
+        }
+    }
+
+}
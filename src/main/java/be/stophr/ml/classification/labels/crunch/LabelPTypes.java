@@ -0,0 +1,141 @@
+package be.stophr.ml.classification.labels.crunch;
+
+import org.apache.crunch.MapFn;
+import org.apache.crunch.types.PType;
+import org.apache.crunch.types.writable.Writables;
+
+import be.stophr.ml.classification.labels.FloatMultiLabel;
+import be.stophr.ml.classification.labels.Label;
+import be.stophr.ml.classification.labels.LabelWritable;
+import be.stophr.ml.classification.labels.MultiLabel;
+import be.stophr.ml.classification.labels.SparseMultiLabel;
+
+/**
+ * Apache Crunch types which serialize labels using the compact LabelWritable
+ * format. Contrary to Writables.records, the number of classes is taken from
+ * the factory instead of being written with every record, and labels are not
+ * instantiated through reflection.
+ *
+ * @author Christophe Van Gysel
+ */
+public class LabelPTypes {
+
+    public static PType<MultiLabel> multiLabels(
+            final MultiLabel.Factory factory,
+            final LabelWritable.Encoding encoding) {
+        return Writables.derived(MultiLabel.class, new ToMultiLabelFn(factory),
+                new FromLabelFn<MultiLabel>(encoding),
+                Writables.writables(LabelWritable.class));
+    }
+
+    public static PType<FloatMultiLabel> floatMultiLabels(
+            final FloatMultiLabel.Factory factory,
+            final LabelWritable.Encoding encoding) {
+        return Writables.derived(FloatMultiLabel.class,
+                new ToFloatMultiLabelFn(factory),
+                new FromLabelFn<FloatMultiLabel>(encoding),
+                Writables.writables(LabelWritable.class));
+    }
+
+    public static PType<SparseMultiLabel> sparseMultiLabels(
+            final SparseMultiLabel.Factory factory,
+            final LabelWritable.Encoding encoding) {
+        return Writables.derived(SparseMultiLabel.class,
+                new ToSparseMultiLabelFn(factory),
+                new FromLabelFn<SparseMultiLabel>(encoding),
+                Writables.writables(LabelWritable.class));
+    }
+
+    @SuppressWarnings("serial")
+    protected static class FromLabelFn<LabelT extends Label> extends
+            MapFn<LabelT, LabelWritable> {
+
+        protected final LabelWritable.Encoding encoding;
+
+        public FromLabelFn(final LabelWritable.Encoding encoding) {
+            this.encoding = encoding;
+        }
+
+        @Override
+        public LabelWritable map(LabelT label) {
+            // Not reused, as a tuple may hold more than a single label.
+            final LabelWritable writable = new LabelWritable(this.encoding);
+            writable.set(label);
+
+            return writable;
+        }
+
+    }
+
+    @SuppressWarnings("serial")
+    protected static class ToMultiLabelFn extends
+            MapFn<LabelWritable, MultiLabel> {
+
+        protected final MultiLabel.Factory factory;
+
+        public ToMultiLabelFn(final MultiLabel.Factory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public MultiLabel map(LabelWritable writable) {
+            final double[] classes = new double[this.factory.getNumClasses()];
+
+            for (int i = 0; i < writable.size(); i++) {
+                classes[writable.getIndex(i)] = writable.getValue(i);
+            }
+
+            return this.factory.create(classes);
+        }
+
+    }
+
+    @SuppressWarnings("serial")
+    protected static class ToFloatMultiLabelFn extends
+            MapFn<LabelWritable, FloatMultiLabel> {
+
+        protected final FloatMultiLabel.Factory factory;
+
+        public ToFloatMultiLabelFn(final FloatMultiLabel.Factory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public FloatMultiLabel map(LabelWritable writable) {
+            final double[] classes = new double[this.factory.getNumClasses()];
+
+            for (int i = 0; i < writable.size(); i++) {
+                classes[writable.getIndex(i)] = writable.getValue(i);
+            }
+
+            return this.factory.create(classes);
+        }
+
+    }
+
+    @SuppressWarnings("serial")
+    protected static class ToSparseMultiLabelFn extends
+            MapFn<LabelWritable, SparseMultiLabel> {
+
+        protected final SparseMultiLabel.Factory factory;
+
+        public ToSparseMultiLabelFn(final SparseMultiLabel.Factory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public SparseMultiLabel map(LabelWritable writable) {
+            final int[] indices = new int[writable.size()];
+            final double[] values = new double[writable.size()];
+
+            for (int i = 0; i < writable.size(); i++) {
+                indices[i] = writable.getIndex(i);
+                values[i] = writable.getValue(i);
+            }
+
+            return this.factory.create(indices, values, indices.length);
+        }
+
+    }
+
+}
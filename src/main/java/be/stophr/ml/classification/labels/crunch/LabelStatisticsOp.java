@@ -0,0 +1,65 @@
+package be.stophr.ml.classification.labels.crunch;
+
+import org.apache.crunch.PCollection;
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+
+import be.stophr.ml.classification.crunch.SummaryOp;
+import be.stophr.ml.classification.labels.Label;
+import be.stophr.ml.classification.labels.LabelStatistics;
+
+/**
+ * Apache Crunch operation which summarizes a table of labels (see
+ * LabelStatistics) in a single pass (see SummaryOp).
+ *
+ * @author Christophe Van Gysel
+ */
+@SuppressWarnings("serial")
+public class LabelStatisticsOp<LabelT extends Label> extends
+        SummaryOp<Pair<Long, LabelT>, LabelStatistics> {
+
+    protected final int numClasses;
+    protected final int numBins;
+
+    public LabelStatisticsOp(final int numClasses, final int numBins) {
+        super("SummarizeLabels", LabelStatistics.class);
+
+        assert numClasses >= 1;
+        assert numBins >= 1;
+
+        this.numClasses = numClasses;
+        this.numBins = numBins;
+    }
+
+    /**
+     * Returns a collection holding the summary as its single element.
+     */
+    public PCollection<LabelStatistics> run(final PTable<Long, LabelT> labels) {
+        return this.summarize(labels);
+    }
+
+    /**
+     * Runs the pipeline and returns the summary.
+     */
+    public LabelStatistics compute(final PTable<Long, LabelT> labels) {
+        return this.merge(this.run(labels));
+    }
+
+    @Override
+    protected LabelStatistics createSummary() {
+        return new LabelStatistics(this.numClasses, this.numBins);
+    }
+
+    @Override
+    protected void add(final LabelStatistics statistics,
+            final Pair<Long, LabelT> instance) {
+        statistics.add(instance.second());
+    }
+
+    @Override
+    protected void merge(final LabelStatistics statistics,
+            final LabelStatistics other) {
+        statistics.merge(other);
+    }
+
+}
@@ -0,0 +1,100 @@
+package be.stophr.ml.classification;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+
+import be.stophr.ml.classification.graph.Adjacency;
+import be.stophr.ml.classification.graph.crunch.AdjacencyOp;
+import be.stophr.ml.classification.labels.MultiLabel;
+
+import com.google.common.collect.Sets;
+
+@SuppressWarnings("serial")
+public class AdjacencyTest extends TestCase {
+
+    protected final MultiLabel.Factory factory = new MultiLabel.Factory(
+            new Alphabet("-1", "+1"));
+
+    protected final PTable<Long, Pair<Long, Double>> weights = Fixtures
+            .weights();
+
+    protected final PTable<Long, MultiLabel> labels = Fixtures.labels(factory);
+
+    public void testSerialization() throws IOException {
+        final long[] targets = new long[] { 1000000L, 3L, 1000001L, 3L };
+        final double[] weights = new double[] { 0.1, 2.0, 1e30, 0.5 };
+
+        int previousSize = Integer.MAX_VALUE;
+
+        for (final Adjacency.WeightEncoding encoding : Adjacency.WeightEncoding
+                .values()) {
+            final Adjacency adjacency = new Adjacency(targets, weights,
+                    encoding);
+
+            // Sorted by target, parallel edges keep their order.
+            Assert.assertEquals(3L, adjacency.getTarget(0));
+            Assert.assertEquals(3L, adjacency.getTarget(1));
+            Assert.assertEquals(1000000L, adjacency.getTarget(2));
+            Assert.assertEquals(1000001L, adjacency.getTarget(3));
+
+            Assert.assertEquals(2.0, adjacency.getWeight(0));
+            Assert.assertEquals(0.5, adjacency.getWeight(1));
+            Assert.assertEquals(0.1, adjacency.getWeight(2), 1e-2);
+            Assert.assertEquals(1.0, adjacency.getWeight(3) / 1e30, 1e-2);
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            adjacency.write(new DataOutputStream(bytes));
+
+            Assert.assertTrue(bytes.size() < previousSize);
+            previousSize = bytes.size();
+
+            // Deserialize into an instance that previously held more edges.
+            final Adjacency copy = new Adjacency(new long[] { 1, 2, 3, 4, 5 },
+                    new double[] { 1, 2, 3, 4, 5 },
+                    Adjacency.WeightEncoding.DOUBLE);
+            copy.readFields(new DataInputStream(new ByteArrayInputStream(
+                    bytes.toByteArray())));
+
+            Assert.assertEquals(adjacency, copy);
+            Assert.assertEquals(encoding, copy.getEncoding());
+        }
+    }
+
+    public void testRoundTrip() {
+        final PTable<Long, Adjacency> adjacency = new AdjacencyOp(
+                Adjacency.WeightEncoding.DOUBLE).pack(this.weights);
+
+        Assert.assertEquals(5, adjacency.materializeToMap().size());
+        Assert.assertEquals(Sets.newHashSet(this.weights.materialize()),
+                Sets.newHashSet(AdjacencyOp.unpack(adjacency).materialize()));
+    }
+
+    public void testEquivalence() {
+        final GraphAdsorption<MultiLabel> adsorption = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory);
+
+        final Pair<PTable<Long, MultiLabel>, PTable<Integer, Pair<Long, Double>>> expected = adsorption
+                .run(this.weights, this.labels, 1.0, 30);
+
+        final Pair<PTable<Long, MultiLabel>, PTable<Integer, Pair<Long, Double>>> actual = adsorption
+                .runAdjacency(new AdjacencyOp(Adjacency.WeightEncoding.DOUBLE)
+                        .pack(this.weights), this.labels, 1.0, 30);
+
+        Fixtures.assertLabelsEqual(expected.first()
+                .materializeToMap(), actual.first().materializeToMap());
+
+        Assert.assertEquals(expected.second().keys().count()
+                .materializeToMap(), actual.second().keys().count()
+                .materializeToMap());
+    }
+
+}
@@ -0,0 +1,87 @@
+package be.stophr.ml.classification;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+public class AlphabetTest extends TestCase {
+
+    protected static Alphabet copy(final Alphabet alphabet)
+            throws IOException, ClassNotFoundException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(alphabet);
+        output.close();
+
+        return (Alphabet) new ObjectInputStream(new ByteArrayInputStream(
+                bytes.toByteArray())).readObject();
+    }
+
+    public void testLocked() {
+        final Alphabet alphabet = new Alphabet();
+
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(i, alphabet.get("#tag" + i));
+        }
+
+        Assert.assertEquals(17L, alphabet.get("#tag17"));
+        Assert.assertEquals(-1L, alphabet.indexOf("#other"));
+
+        final String unlocked = alphabet.toString();
+        alphabet.lock();
+
+        Assert.assertTrue(alphabet.isLocked());
+        Assert.assertEquals(1000, alphabet.size());
+
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(i, alphabet.get("#tag" + i));
+            Assert.assertEquals("#tag" + i, alphabet.getToken(i));
+        }
+
+        Assert.assertEquals(-1L, alphabet.indexOf("#other"));
+        Assert.assertNull(alphabet.getToken(1000));
+        Assert.assertNull(alphabet.getToken(-1));
+
+        Assert.assertEquals("{0=-1, 1=+1}", new Alphabet("-1", "+1").toString());
+        Assert.assertEquals(unlocked.length(), alphabet.toString().length());
+    }
+
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        final Alphabet unlocked = new Alphabet();
+        unlocked.get("N-VA");
+        unlocked.get("CD&V");
+
+        final Alphabet unlockedCopy = copy(unlocked);
+        Assert.assertFalse(unlockedCopy.isLocked());
+        Assert.assertEquals(1L, unlockedCopy.get("CD&V"));
+        Assert.assertEquals(2L, unlockedCopy.get("Groen"));
+
+        final Alphabet locked = copy(new Alphabet("N-VA", "CD&V", "Open VLD",
+                "sp.a", "Groen", "Vlaams Belang"));
+        Assert.assertTrue(locked.isLocked());
+        Assert.assertEquals(6, locked.size());
+        Assert.assertEquals(4L, locked.get("Groen"));
+        Assert.assertEquals("Vlaams Belang", locked.getToken(5));
+
+        // Longer than the 64KB supported by writeUTF.
+        final StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < 40000; i++) {
+            builder.append('é');
+        }
+
+        final String token = builder.toString();
+
+        final Alphabet unlockedLong = new Alphabet();
+        unlockedLong.get(token);
+        Assert.assertEquals(token, copy(unlockedLong).getToken(0));
+
+        Assert.assertEquals(1L, copy(new Alphabet("short", token)).get(token));
+    }
+
+}
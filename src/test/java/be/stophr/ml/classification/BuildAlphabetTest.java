@@ -0,0 +1,107 @@
+package be.stophr.ml.classification;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.apache.crunch.PCollection;
+import org.apache.crunch.types.writable.Writables;
+
+import be.stophr.ml.classification.crunch.BuildAlphabetOp;
+
+public class BuildAlphabetTest extends TestCase {
+
+    protected PCollection<String> createTokens() {
+        final List<String> tokens = new ArrayList<String>();
+
+        for (int i = 0; i < 200; i++) {
+            for (int j = 0; j <= i % 5; j++) {
+                tokens.add("#tag" + i);
+            }
+        }
+
+        return Utils.CreatePCollection(Writables.strings(), tokens);
+    }
+
+    public void testBuildAlphabetOp() {
+        final Alphabet alphabet = new BuildAlphabetOp(3, 7).run(this
+                .createTokens());
+
+        Assert.assertTrue(alphabet.isLocked());
+        // Tokens with i % 5 >= 2 occur at least three times.
+        Assert.assertEquals(120, alphabet.size());
+
+        final Set<String> tokens = new HashSet<String>();
+
+        for (int i = 0; i < alphabet.size(); i++) {
+            tokens.add(alphabet.getToken(i));
+        }
+
+        Assert.assertEquals(120, tokens.size());
+        Assert.assertTrue(tokens.contains("#tag2"));
+        Assert.assertFalse(tokens.contains("#tag1"));
+
+        Assert.assertEquals(alphabet.toString(), new BuildAlphabetOp(3, 7)
+                .run(this.createTokens()).toString());
+    }
+
+    public void testConcurrentBuilder() throws InterruptedException {
+        final ConcurrentAlphabetBuilder builder = new ConcurrentAlphabetBuilder();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        for (int thread = 0; thread < 4; thread++) {
+            executor.execute(new Runnable() {
+
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        builder.get("@user" + (i % 2500));
+                    }
+                }
+
+            });
+        }
+
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        final Alphabet alphabet = builder.build();
+
+        Assert.assertEquals(2500, alphabet.size());
+
+        for (int i = 0; i < 2500; i++) {
+            Assert.assertEquals(builder.get("@user" + i),
+                    alphabet.get("@user" + i));
+        }
+    }
+
+    public void testAbandonedToken() {
+        final ConcurrentAlphabetBuilder builder = new ConcurrentAlphabetBuilder();
+        builder.get("@user");
+
+        // As left behind by a thread which died right after inserting it.
+        builder.map.put("@abandoned", new AtomicLong(-1L));
+
+        try {
+            builder.get("@abandoned");
+
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        }
+
+        try {
+            builder.build();
+
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        }
+    }
+
+}
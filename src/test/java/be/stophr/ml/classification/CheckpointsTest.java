@@ -0,0 +1,102 @@
+package be.stophr.ml.classification;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.writable.Writables;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+
+import be.stophr.ml.classification.labels.MultiLabel;
+
+@SuppressWarnings("serial")
+public class CheckpointsTest extends TestCase {
+
+    protected final MultiLabel.Factory factory = new MultiLabel.Factory(
+            new Alphabet("-1", "+1"));
+
+    protected final PTable<Long, Pair<Long, Double>> weights = Fixtures
+            .weights();
+
+    protected PTable<Long, MultiLabel> createLabels(final boolean swapped) {
+        return Utils.CreatePTable(
+                Writables.tableOf(Writables.longs(),
+                        Writables.records(MultiLabel.class)),
+                new LinkedHashMap<Long, MultiLabel>() {
+                    {
+                        put(1L, factory.create(swapped ? 0.0 : 1.0,
+                                swapped ? 1.0 : 0.0));
+                        put(2L, factory.create(swapped ? 1.0 : 0.0,
+                                swapped ? 0.0 : 1.0));
+                    }
+                });
+    }
+
+    public void testResume() throws IOException {
+        final File directory = File.createTempFile("checkpoints", "");
+        directory.delete();
+
+        try {
+            final GraphAdsorption<MultiLabel> adsorption = new GraphAdsorption<MultiLabel>(
+                    MultiLabel.class, factory);
+            final Checkpoints checkpoints = new Checkpoints(
+                    directory.getPath(), 5);
+
+            final Pair<PTable<Long, MultiLabel>, PTable<Integer, Pair<Long, Double>>> expected = adsorption
+                    .run(this.weights, this.createLabels(false), 1.0,
+                            StoppingCriterion.fixed(30));
+
+            final Pair<PTable<Long, MultiLabel>, PTable<Integer, Pair<Long, Double>>> checkpointed = adsorption
+                    .run(this.weights, this.createLabels(false), 1.0,
+                            StoppingCriterion.fixed(30), checkpoints);
+
+            final Map<Long, MultiLabel> expectedLabels = expected.first()
+                    .materializeToMap();
+
+            Assert.assertEquals(expectedLabels, checkpointed.first()
+                    .materializeToMap());
+            Assert.assertEquals(expected.second().keys().count()
+                    .materializeToMap(), checkpointed.second().keys().count()
+                    .materializeToMap());
+
+            final Configuration conf = new Configuration();
+            Assert.assertEquals(30, checkpoints.findLatest(conf));
+
+            // Pretend the run was interrupted after iteration 10.
+            final FileSystem fs = FileSystem.getLocal(conf);
+            fs.delete(new Path(checkpoints.getPath(15), "_COMPLETE"), false);
+            fs.delete(checkpoints.getPath(20), true);
+            fs.delete(checkpoints.getPath(25), true);
+            fs.delete(checkpoints.getPath(30), true);
+
+            Assert.assertEquals(10, checkpoints.findLatest(conf));
+
+            // Resuming restores the labels of every node, including those of
+            // the shadow nodes which hold the seed labels, and the
+            // convergence table. The given seeds only determine which nodes
+            // have shadow edges, hence seeding the same nodes with other
+            // labels yields the original results.
+            final Pair<PTable<Long, MultiLabel>, PTable<Integer, Pair<Long, Double>>> resumed = adsorption
+                    .run(this.weights, this.createLabels(true), 1.0,
+                            StoppingCriterion.fixed(30), checkpoints);
+
+            Assert.assertEquals(expectedLabels, resumed.first()
+                    .materializeToMap());
+            Assert.assertEquals(expected.second().keys().count()
+                    .materializeToMap(), resumed.second().keys().count()
+                    .materializeToMap());
+        } finally {
+            FileUtil.fullyDelete(directory);
+        }
+    }
+
+}
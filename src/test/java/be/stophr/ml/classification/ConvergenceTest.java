@@ -1,7 +1,11 @@
 package be.stophr.ml.classification;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
 import junit.framework.Assert;
@@ -11,6 +15,7 @@ import org.apache.crunch.PTable;
 import org.apache.crunch.Pair;
 import org.apache.crunch.types.writable.Writables;
 
+import be.stophr.ml.classification.crunch.AggregateLabelsOp;
 import be.stophr.ml.classification.labels.MultiLabel;
 
 public class ConvergenceTest extends TestCase {
@@ -111,4 +116,259 @@ public class ConvergenceTest extends TestCase {
         Assert.assertTrue(!convergence.containsKey(10));
     }
 
+    @SuppressWarnings("serial")
+    public void testEarlyStopping() {
+        final MultiLabel.Factory factory = new MultiLabel.Factory(new Alphabet(
+                "-1", "+1"));
+
+        final Map<Long, MultiLabel> initialLabels = new LinkedHashMap<Long, MultiLabel>() {
+            {
+                put(1L, factory.create(1.0, 0.0));
+                put(2L, factory.create(0.0, 1.0));
+            }
+        };
+
+        final PTable<Long, Pair<Long, Double>> nodes = Fixtures.weights();
+
+        final StoppingCriterion criterion = new StoppingCriterion(100, 2,
+                1e-4, StoppingCriterion.TargetType.FRACTION, 0.0);
+
+        final PTable<Long, MultiLabel> labels = Utils.CreatePTable(
+                Writables.tableOf(Writables.longs(),
+                        Writables.records(MultiLabel.class)), initialLabels);
+
+        final List<IterationReport> checks = new ArrayList<IterationReport>();
+
+        final GraphAdsorption<MultiLabel> classifier = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory, null, ShadowNodes.negated(), null,
+                new AdsorptionListener() {
+
+                    public void iterationStarted(final int iteration) {
+                    }
+
+                    public void iterationFinished(final IterationReport report) {
+                        if (report.getConvergence() != null) {
+                            checks.add(report);
+                        }
+                    }
+
+                }, false);
+
+        final Pair<PTable<Long, MultiLabel>, PTable<Integer, Pair<Long, Double>>> result = classifier
+                .run(nodes, labels, 1.0, criterion);
+
+        final int lastCheck = Collections.max(result.second().keys()
+                .count().materializeToMap().keySet());
+
+        // The fixture converges at the check of iteration 28, the last
+        // unconverged nodes having been reported at the previous check.
+        Assert.assertEquals(14, checks.size());
+        Assert.assertEquals(26, lastCheck);
+
+        final IterationReport last = checks.get(checks.size() - 1);
+        Assert.assertEquals(28, last.getIteration());
+        Assert.assertEquals(0L, last.getConvergence().getUnconverged());
+        Assert.assertTrue(criterion.isConverged(last.getConvergence()
+                .getUnconverged(), last.getConvergence().getCount()));
+
+        final ConvergenceSummary previous = checks.get(checks.size() - 2)
+                .getConvergence();
+        Assert.assertFalse(criterion.isConverged(previous.getUnconverged(),
+                previous.getCount()));
+
+        final Map<Long, MultiLabel> expected = classifier
+                .run(nodes, labels, 1.0, 100).first().materializeToMap();
+        final Map<Long, MultiLabel> actual = result.first()
+                .materializeToMap();
+
+        Fixtures.assertLabelsEqual(expected, actual, 1e-3);
+
+        final Map<Long, MultiLabel> inMemory = new InMemoryGraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory).run(nodes, labels, 1.0, criterion)
+                .first().materializeToMap();
+
+        Fixtures.assertLabelsEqual(actual, inMemory);
+    }
+
+    @SuppressWarnings("serial")
+    public void testFusedConvergence() {
+        final MultiLabel.Factory factory = new MultiLabel.Factory(new Alphabet(
+                "-1", "+1"));
+
+        final PTable<Long, MultiLabel> labels = Utils.CreatePTable(
+                Writables.tableOf(Writables.longs(),
+                        Writables.records(MultiLabel.class)),
+                new LinkedHashMap<Long, MultiLabel>() {
+                    {
+                        put(1L, factory.create(1.0, 0.0));
+                        put(2L, factory.create(0.0, 1.0));
+                    }
+                });
+
+        final PTable<Long, Pair<Long, Double>> nodes = Utils
+                .CreatePTable(
+                        Writables.tableOf(
+                                Writables.longs(),
+                                Writables.pairs(Writables.longs(),
+                                        Writables.doubles())),
+                        new LinkedList<Pair<Long, Pair<Long, Double>>>() {
+                            {
+                                add(Pair.of(1L, Pair.of(3L, 0.20)));
+                                add(Pair.of(1L, Pair.of(5L, 0.80)));
+                                add(Pair.of(2L, Pair.of(4L, 2.00)));
+                                add(Pair.of(3L, Pair.of(4L, 5.00)));
+                                add(Pair.of(4L, Pair.of(5L, 1.00)));
+                                add(Pair.of(5L, Pair.of(3L, 1.00)));
+                                add(Pair.of(5L, Pair.of(6L, 1.00)));
+                            }
+                        });
+
+        final GraphAdsorption<MultiLabel> classifier = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory);
+        final StoppingCriterion criterion = new StoppingCriterion(4, 2, 0.05,
+                StoppingCriterion.TargetType.COUNT,
+                StoppingCriterion.NO_TARGET);
+
+        final Map<Pair<Integer, Long>, Double> expected = new HashMap<Pair<Integer, Long>, Double>();
+
+        for (final int iteration : new int[] { 2, 4 }) {
+            for (final Pair<Integer, Pair<Long, Double>> row : classifier
+                    .filterUnconverged(
+                            classifier.computeDistances(
+                                    classifier.run(nodes, labels, 1.0,
+                                            iteration).first(),
+                                    classifier.run(nodes, labels, 1.0,
+                                            iteration - 1).first()),
+                            iteration, 0.05).materialize()) {
+                expected.put(Pair.of(row.first(), row.second().first()), row
+                        .second().second());
+            }
+        }
+
+        final Map<Pair<Integer, Long>, Double> actual = new HashMap<Pair<Integer, Long>, Double>();
+
+        for (final Pair<Integer, Pair<Long, Double>> row : classifier
+                .run(nodes, labels, 1.0, criterion).second().materialize()) {
+            actual.put(Pair.of(row.first(), row.second().first()), row
+                    .second().second());
+        }
+
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected.keySet(), actual.keySet());
+
+        for (final Pair<Integer, Long> key : expected.keySet()) {
+            Assert.assertEquals(expected.get(key), actual.get(key), 1e-12);
+        }
+
+        final List<ConvergenceSummary> summaries = new ArrayList<ConvergenceSummary>();
+
+        final GraphAdsorption<MultiLabel> summarizing = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory, null, ShadowNodes.negated(), null,
+                new AdsorptionListener() {
+
+                    public void iterationStarted(final int iteration) {
+                    }
+
+                    public void iterationFinished(final IterationReport report) {
+                        if (report.getConvergence() != null) {
+                            summaries.add(report.getConvergence());
+                        }
+                    }
+
+                }, true);
+
+        final Pair<PTable<Long, MultiLabel>, PTable<Integer, Pair<Long, Double>>> result = summarizing
+                .run(nodes, labels, 1.0, criterion);
+
+        Assert.assertNull(result.second());
+        Assert.assertEquals(2, summaries.size());
+
+        // All nodes, including the shadow nodes, are compared.
+        final ConvergenceSummary last = summaries.get(1);
+        long unconverged = 0;
+        double max = 0.0;
+
+        for (final Map.Entry<Pair<Integer, Long>, Double> row : actual
+                .entrySet()) {
+            if (row.getKey().first() == 4) {
+                unconverged++;
+                max = Math.max(max, row.getValue());
+            }
+        }
+
+        Assert.assertEquals(result.first().length().getValue().longValue(),
+                last.getCount());
+        Assert.assertEquals(unconverged, last.getUnconverged());
+        Assert.assertEquals(max, last.getMax(), 1e-12);
+
+        long binned = 0;
+
+        for (final long count : last.getHistogram()) {
+            binned += count;
+        }
+
+        Assert.assertEquals(last.getCount(), binned);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testTrackingCombiner() {
+        final MultiLabel.Factory factory = new MultiLabel.Factory(3);
+        final AggregateLabelsOp<MultiLabel> op = new AggregateLabelsOp<MultiLabel>(
+                MultiLabel.class, factory);
+
+        final List<Pair<MultiLabel, Pair<Boolean, Double>>> values = new ArrayList<Pair<MultiLabel, Pair<Boolean, Double>>>();
+        values.add(Pair.of(factory.create(1.0, 0.0, 0.0), Pair.of(false, 2.0)));
+        values.add(Pair.of(factory.create(0.0, 0.5, 0.5), Pair.of(false, 1.0)));
+        values.add(Pair.of(factory.create(0.2, 0.2, 0.6), Pair.of(true, 0.0)));
+        values.add(Pair.of(factory.create(0.0, 1.0, 0.0), Pair.of(false, 1.0)));
+        // A negative weight is an ordinary weight, not the previous label.
+        values.add(Pair.of(factory.create(0.0, 0.0, 1.0), Pair.of(false, -1.0)));
+
+        final AggregateLabelsOp.TrackingKahanAggregator<MultiLabel> combiner = new AggregateLabelsOp.TrackingKahanAggregator<MultiLabel>(
+                factory, null);
+        final AggregateLabelsOp.TrackingKahanAggregator<MultiLabel> reducer = new AggregateLabelsOp.TrackingKahanAggregator<MultiLabel>(
+                factory, op);
+
+        final List<Pair<MultiLabel, Pair<Boolean, Double>>> combined = new ArrayList<Pair<MultiLabel, Pair<Boolean, Double>>>();
+
+        for (final List<Pair<MultiLabel, Pair<Boolean, Double>>> part : new List[] {
+                values.subList(0, 1), values.subList(1, 5) }) {
+            combiner.reset();
+
+            for (final Pair<MultiLabel, Pair<Boolean, Double>> value : part) {
+                combiner.update(value);
+            }
+
+            for (final Pair<MultiLabel, Pair<Boolean, Double>> value : combiner
+                    .results()) {
+                combined.add(value);
+            }
+        }
+
+        Assert.assertEquals(3, combined.size());
+
+        reducer.reset();
+
+        for (final Pair<MultiLabel, Pair<Boolean, Double>> value : combined) {
+            reducer.update(value);
+        }
+
+        final Pair<MultiLabel, Pair<Boolean, Double>> result = reducer
+                .results().iterator().next();
+        final MultiLabel expected = factory.create(2.0 / 3.0, 1.5 / 3.0,
+                -0.5 / 3.0);
+
+        Assert.assertEquals(0.0, expected.diff(result.first()).euclideanNorm(),
+                1e-12);
+        Assert.assertEquals(
+                factory.create(0.2, 0.2, 0.6).diff(expected).euclideanNorm(),
+                result.second().second(), 1e-12);
+
+        // Nodes without incoming labels are dropped.
+        reducer.reset();
+        reducer.update(values.get(2));
+
+        Assert.assertFalse(reducer.results().iterator().hasNext());
+    }
+
 }
@@ -0,0 +1,141 @@
+package be.stophr.ml.classification;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.writable.Writables;
+
+import be.stophr.ml.classification.labels.MultiLabel;
+
+@SuppressWarnings("serial")
+public class DeltaGraphAdsorptionTest extends TestCase {
+
+    protected final MultiLabel.Factory factory = new MultiLabel.Factory(
+            new Alphabet("-1", "+1"));
+
+    protected final PTable<Long, Pair<Long, Double>> weights = Fixtures
+            .weights();
+
+    protected final PTable<Long, MultiLabel> labels = Fixtures.labels(factory);
+
+    public void testExactDelta() {
+        final Map<Long, MultiLabel> expected = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory).run(this.weights, this.labels, 1.0,
+                30).first().materializeToMap();
+
+        final Map<Long, MultiLabel> actual = new DeltaGraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory, 0.0).run(this.weights, this.labels,
+                1.0, 30).first().materializeToMap();
+
+        Fixtures.assertLabelsEqual(expected, actual);
+    }
+
+    public void testReduceSideJoins() {
+        final Map<Long, MultiLabel> expected = new DeltaGraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory, 0.0).run(this.weights, this.labels,
+                1.0, 30).first().materializeToMap();
+
+        final Map<Long, MultiLabel> actual = new DeltaGraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory, 0.0, 0).run(this.weights,
+                this.labels, 1.0, 30).first().materializeToMap();
+
+        Fixtures.assertLabelsEqual(expected, actual);
+    }
+
+    public void testConvergence() {
+        final StoppingCriterion criterion = StoppingCriterion.fixed(10);
+
+        final Map<Pair<Integer, Long>, Double> expected = new HashMap<Pair<Integer, Long>, Double>();
+
+        for (final Pair<Integer, Pair<Long, Double>> row : new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory)
+                .run(this.weights, this.labels, 1.0, criterion).second()
+                .materialize()) {
+            expected.put(Pair.of(row.first(), row.second().first()), row
+                    .second().second());
+        }
+
+        final Map<Pair<Integer, Long>, Double> actual = new HashMap<Pair<Integer, Long>, Double>();
+
+        for (final Pair<Integer, Pair<Long, Double>> row : new DeltaGraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory, 0.0)
+                .run(this.weights, this.labels, 1.0, criterion).second()
+                .materialize()) {
+            actual.put(Pair.of(row.first(), row.second().first()), row
+                    .second().second());
+        }
+
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected.keySet(), actual.keySet());
+
+        for (final Pair<Integer, Long> key : expected.keySet()) {
+            Assert.assertEquals(expected.get(key), actual.get(key), 1e-12);
+        }
+    }
+
+    protected PTable<Long, MultiLabel> createUnnormalizedSeeds() {
+        return Utils.CreatePTable(
+                Writables.tableOf(Writables.longs(),
+                        Writables.records(MultiLabel.class)),
+                new LinkedHashMap<Long, MultiLabel>() {
+                    {
+                        put(1L, factory.create(3.0, 1.0));
+                        put(2L, factory.create(0.0, 2.0));
+                    }
+                });
+    }
+
+    public void testUnnormalizedSeeds() {
+        final PTable<Long, MultiLabel> seeds = this.createUnnormalizedSeeds();
+
+        final Map<Long, MultiLabel> expected = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory).run(this.weights, seeds, 1.0, 30)
+                .first().materializeToMap();
+
+        final Map<Long, MultiLabel> actual = new DeltaGraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory, 0.0).run(this.weights, seeds, 1.0,
+                30).first().materializeToMap();
+
+        Fixtures.assertLabelsEqual(expected, actual);
+    }
+
+    public void testSeedsWithIncomingEdges() {
+        final List<Pair<Long, Pair<Long, Double>>> edges = Fixtures.edges();
+        edges.add(Pair.of(4L, Pair.of(1L, 1.50)));
+        edges.add(Pair.of(5L, Pair.of(2L, 0.50)));
+
+        final PTable<Long, Pair<Long, Double>> weights = Fixtures
+                .weights(edges);
+        final PTable<Long, MultiLabel> seeds = this.createUnnormalizedSeeds();
+
+        final Map<Long, MultiLabel> expected = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory).run(weights, seeds, 1.0, 30)
+                .first().materializeToMap();
+
+        final Map<Long, MultiLabel> actual = new DeltaGraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory, 0.0).run(weights, seeds, 1.0, 30)
+                .first().materializeToMap();
+
+        Fixtures.assertLabelsEqual(expected, actual);
+    }
+
+    public void testTolerance() {
+        final Map<Long, MultiLabel> expected = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory).run(this.weights, this.labels, 1.0,
+                30).first().materializeToMap();
+
+        final Map<Long, MultiLabel> actual = new DeltaGraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory, 1e-4).run(this.weights,
+                this.labels, 1.0, 30).first().materializeToMap();
+
+        Fixtures.assertLabelsEqual(expected, actual, 1e-2);
+    }
+
+}
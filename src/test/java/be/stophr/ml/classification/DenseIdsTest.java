@@ -0,0 +1,109 @@
+package be.stophr.ml.classification;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.writable.Writables;
+
+import be.stophr.ml.classification.graph.crunch.DenseIdsOp;
+import be.stophr.ml.classification.labels.MultiLabel;
+
+@SuppressWarnings("serial")
+public class DenseIdsTest extends TestCase {
+
+    protected final MultiLabel.Factory factory = new MultiLabel.Factory(
+            new Alphabet("-1", "+1"));
+
+    protected final PTable<Long, Pair<Long, Double>> weights = Utils
+            .CreatePTable(
+                    Writables.tableOf(Writables.longs(), Writables.pairs(
+                            Writables.longs(), Writables.doubles())),
+                    new LinkedList<Pair<Long, Pair<Long, Double>>>() {
+                        {
+                            add(Pair.of(381029471203L, Pair.of(17L, 0.20)));
+                            add(Pair.of(381029471203L, Pair.of(5L, 0.80)));
+                            add(Pair.of(2L, Pair.of(900000000004L, 2.00)));
+                            add(Pair.of(17L, Pair.of(17L, 0.50)));
+                            add(Pair.of(17L, Pair.of(900000000004L, 5.00)));
+                            add(Pair.of(900000000004L, Pair.of(5L, 1.00)));
+                            add(Pair.of(5L, Pair.of(17L, 1.00)));
+                            add(Pair.of(5L, Pair.of(900000000004L, 1.00)));
+                            add(Pair.of(5L, Pair.of(5L, 2.00)));
+                        }
+                    });
+
+    protected final PTable<Long, MultiLabel> labels = Utils.CreatePTable(
+            Writables.tableOf(Writables.longs(),
+                    Writables.records(MultiLabel.class)),
+            new LinkedHashMap<Long, MultiLabel>() {
+                {
+                    put(381029471203L, factory.create(1.0, 0.0));
+                    put(2L, factory.create(0.0, 1.0));
+                }
+            });
+
+    public void testDictionary() {
+        final Pair<PTable<Long, Long>, Long> dictionary = new DenseIdsOp(3)
+                .createDictionary(DenseIdsOp.nodes(this.weights, this.labels));
+
+        Assert.assertEquals(Long.valueOf(5L), dictionary.second());
+
+        final Map<Long, Long> entries = dictionary.first().materializeToMap();
+        Assert.assertEquals(5, entries.size());
+        Assert.assertEquals(new HashSet<Long>() {
+            {
+                add(381029471203L);
+                add(2L);
+                add(17L);
+                add(900000000004L);
+                add(5L);
+            }
+        }, entries.keySet());
+
+        final Set<Long> ids = new HashSet<Long>(entries.values());
+
+        for (long id = 0; id < 5; id++) {
+            Assert.assertTrue(ids.contains(id));
+        }
+
+        // Deterministic for a given number of buckets.
+        Assert.assertEquals(entries, new DenseIdsOp(3)
+                .createDictionary(DenseIdsOp.nodes(this.weights, this.labels))
+                .first().materializeToMap());
+    }
+
+    public void testRemappedRun() {
+        final Pair<PTable<Long, Long>, Long> dictionary = new DenseIdsOp(2)
+                .createDictionary(DenseIdsOp.nodes(this.weights, this.labels));
+
+        final Map<Long, MultiLabel> expected = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory).run(this.weights, this.labels, 1.0,
+                20).first().materializeToMap();
+
+        final PTable<Long, MultiLabel> remapped = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory, null,
+                ShadowNodes.offset(dictionary.second())).run(
+                DenseIdsOp.remapWeights(this.weights, dictionary.first()),
+                DenseIdsOp.remapKeys(this.labels, dictionary.first()), 1.0, 20)
+                .first();
+
+        final Map<Long, MultiLabel> actual = DenseIdsOp.restoreKeys(remapped,
+                dictionary.first()).materializeToMap();
+
+        Assert.assertEquals(5, actual.size());
+
+        for (final Map.Entry<Long, MultiLabel> entry : actual.entrySet()) {
+            Assert.assertEquals(0.0, expected.get(entry.getKey())
+                    .diff(entry.getValue()).euclideanNorm(), 1e-12);
+        }
+    }
+
+}
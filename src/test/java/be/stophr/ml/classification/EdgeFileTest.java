@@ -0,0 +1,192 @@
+package be.stophr.ml.classification;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.apache.crunch.Pair;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+
+import be.stophr.ml.classification.graph.CompressedGraph;
+import be.stophr.ml.classification.graph.EdgeFile;
+import be.stophr.ml.classification.graph.EdgeFileInputFormat;
+
+import com.google.common.collect.Lists;
+
+public class EdgeFileTest extends TestCase {
+
+    protected static final String EDGES = "1\t3\t0.2\n" + "1\t5\t0.8\n"
+            + "2\t4\t2.0\n" + "3\t3\t0.5\n" + "3\t4\t5\n" + "4\t5\t1.0\n"
+            + "5\t3\t1.0\n" + "5\t4\t1.0\n" + "381029471203\t5\t2e0\n";
+
+    public void testConvert() throws IOException {
+        final File file = File.createTempFile("edges", ".bin");
+
+        try {
+            Assert.assertEquals(9L, EdgeFile.convert(new ByteArrayInputStream(
+                    EDGES.getBytes("UTF-8")), file));
+            Assert.assertEquals(EdgeFile.HEADER_SIZE + 9
+                    * EdgeFile.RECORD_SIZE, file.length());
+
+            final EdgeFile edges = new EdgeFile(file);
+
+            try {
+                Assert.assertTrue(edges.isSorted());
+                Assert.assertEquals(9L, edges.size());
+
+                Assert.assertEquals(381029471203L, edges.getSource(8));
+                Assert.assertEquals(5L, edges.getTarget(8));
+                Assert.assertEquals(2.0, edges.getWeight(8));
+
+                Assert.assertEquals(Pair.of(3L, Pair.of(4L, 5.0)), Lists
+                        .newArrayList(edges.edges()).get(4));
+
+                final CompressedGraph graph = edges.toCompressedGraph();
+                Assert.assertEquals(6, graph.size());
+                Assert.assertEquals(9, graph.numEdges());
+            } finally {
+                edges.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testInputFormat() throws IOException, InterruptedException {
+        final File file = File.createTempFile("edges", ".bin");
+
+        try {
+            EdgeFile.convert(new ByteArrayInputStream(EDGES.getBytes("UTF-8")),
+                    file);
+
+            // Splits which end in the middle of the header and of records.
+            final Configuration conf = new Configuration();
+            conf.set("mapred.input.dir", file.toURI().toString());
+            conf.setLong("mapred.max.split.size", 50L);
+
+            final EdgeFileInputFormat format = new EdgeFileInputFormat();
+            final List<InputSplit> splits = format.getSplits(new JobContext(
+                    conf, new JobID()));
+            Assert.assertTrue(splits.size() > 1);
+
+            final List<Pair<Long, Pair<Long, Double>>> actual = Lists
+                    .newArrayList();
+
+            for (final InputSplit split : splits) {
+                final TaskAttemptContext context = new TaskAttemptContext(conf,
+                        new TaskAttemptID());
+                final RecordReader<LongWritable, EdgeFileInputFormat.WeightedTarget> reader = format
+                        .createRecordReader(split, context);
+
+                try {
+                    reader.initialize(split, context);
+
+                    while (reader.nextKeyValue()) {
+                        actual.add(Pair.of(reader.getCurrentKey().get(), Pair
+                                .of(reader.getCurrentValue().getTarget(),
+                                        reader.getCurrentValue().getWeight())));
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+
+            final EdgeFile edges = new EdgeFile(file);
+
+            try {
+                Assert.assertEquals(Lists.newArrayList(edges.edges()), actual);
+            } finally {
+                edges.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testUnsorted() throws IOException {
+        final File file = File.createTempFile("edges", ".bin");
+
+        try {
+            EdgeFile.convert(new ByteArrayInputStream("2\t1\t1.0\n1\t2\t1.0\n"
+                    .getBytes("UTF-8")), file);
+
+            final EdgeFile edges = new EdgeFile(file);
+
+            try {
+                Assert.assertFalse(edges.isSorted());
+                Assert.assertEquals(2L, edges.getSource(0));
+            } finally {
+                edges.close();
+            }
+
+            final EdgeFile.Writer writer = new EdgeFile.Writer(file, true);
+
+            try {
+                writer.append(2L, 1L, 1.0);
+                writer.append(1L, 2L, 1.0);
+
+                Assert.fail();
+            } catch (IllegalStateException e) {
+            } finally {
+                writer.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testSort() throws IOException {
+        final File file = File.createTempFile("edges", ".bin");
+
+        try {
+            Assert.assertEquals(4L, EdgeFile.convert(new ByteArrayInputStream(
+                    "3\t1\t1.0\n1\t2\t2.0\n3\t2\t3.0\n1\t3\t4.0\n"
+                            .getBytes("UTF-8")), file, true));
+            Assert.assertFalse(new File(file.getPath() + ".tmp").exists());
+
+            final EdgeFile edges = new EdgeFile(file);
+
+            try {
+                Assert.assertTrue(edges.isSorted());
+
+                // Edges with the same source keep their order.
+                Assert.assertEquals(Lists.newArrayList(Pair.of(1L, Pair.of(2L,
+                        2.0)), Pair.of(1L, Pair.of(3L, 4.0)), Pair.of(3L, Pair
+                        .of(1L, 1.0)), Pair.of(3L, Pair.of(2L, 3.0))), Lists
+                        .newArrayList(edges.edges()));
+            } finally {
+                edges.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testMalformed() throws IOException {
+        final File file = File.createTempFile("edges", ".bin");
+        file.delete();
+
+        try {
+            EdgeFile.convert(new ByteArrayInputStream("1\t2\t1.0\n1\t2\n"
+                    .getBytes("UTF-8")), file);
+
+            Assert.fail();
+        } catch (IOException e) {
+        }
+
+        Assert.assertFalse(file.exists());
+        Assert.assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+}
@@ -0,0 +1,91 @@
+package be.stophr.ml.classification;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.PTableType;
+import org.apache.crunch.types.writable.Writables;
+
+import be.stophr.ml.classification.labels.Label;
+import be.stophr.ml.classification.labels.MultiLabel;
+
+/**
+ * Graph, seeds and assertions shared by the tests of the Adsorption engines.
+ *
+ * The graph has nine weighted edges between five nodes; nodes 1 and 2 are
+ * seeded with the first and the second class respectively.
+ */
+@SuppressWarnings("serial")
+public class Fixtures {
+
+    public static List<Pair<Long, Pair<Long, Double>>> edges() {
+        return new LinkedList<Pair<Long, Pair<Long, Double>>>() {
+            {
+                add(Pair.of(1L, Pair.of(3L, 0.20)));
+                add(Pair.of(1L, Pair.of(5L, 0.80)));
+                add(Pair.of(2L, Pair.of(4L, 2.00)));
+                add(Pair.of(3L, Pair.of(3L, 0.50)));
+                add(Pair.of(3L, Pair.of(4L, 5.00)));
+                add(Pair.of(4L, Pair.of(5L, 1.00)));
+                add(Pair.of(5L, Pair.of(3L, 1.00)));
+                add(Pair.of(5L, Pair.of(4L, 1.00)));
+                add(Pair.of(5L, Pair.of(5L, 2.00)));
+            }
+        };
+    }
+
+    public static PTable<Long, Pair<Long, Double>> weights() {
+        return weights(edges());
+    }
+
+    public static PTable<Long, Pair<Long, Double>> weights(
+            final List<Pair<Long, Pair<Long, Double>>> edges) {
+        return Utils.CreatePTable(getWeightsType(), edges);
+    }
+
+    public static PTable<Long, MultiLabel> labels(
+            final MultiLabel.Factory factory) {
+        return Utils.CreatePTable(
+                Writables.tableOf(Writables.longs(),
+                        Writables.records(MultiLabel.class)),
+                new LinkedHashMap<Long, MultiLabel>() {
+                    {
+                        put(1L, factory.create(1.0, 0.0));
+                        put(2L, factory.create(0.0, 1.0));
+                    }
+                });
+    }
+
+    public static PTableType<Long, Pair<Long, Double>> getWeightsType() {
+        return Writables.tableOf(Writables.longs(),
+                Writables.pairs(Writables.longs(), Writables.doubles()));
+    }
+
+    public static void assertLabelsEqual(
+            final Map<Long, ? extends Label> expected,
+            final Map<Long, ? extends Label> actual) {
+        assertLabelsEqual(expected, actual, 1e-12);
+    }
+
+    /**
+     * Asserts that both have the same nodes and that their labels are within
+     * the given (euclidean) distance.
+     */
+    public static void assertLabelsEqual(
+            final Map<Long, ? extends Label> expected,
+            final Map<Long, ? extends Label> actual, final double tolerance) {
+        Assert.assertEquals(expected.keySet(), actual.keySet());
+
+        for (final Long node : expected.keySet()) {
+            Assert.assertEquals(0.0, expected.get(node).diff(actual.get(node))
+                    .euclideanNorm(), tolerance);
+        }
+    }
+
+}
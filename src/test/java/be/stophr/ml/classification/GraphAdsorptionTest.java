@@ -1,8 +1,11 @@
 package be.stophr.ml.classification;
 
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
 import junit.framework.Assert;
@@ -12,7 +15,10 @@ import org.apache.crunch.PTable;
 import org.apache.crunch.Pair;
 import org.apache.crunch.types.writable.Writables;
 
+import be.stophr.ml.classification.labels.FloatMultiLabel;
 import be.stophr.ml.classification.labels.MultiLabel;
+import be.stophr.ml.classification.labels.PruningPolicy;
+import be.stophr.ml.classification.labels.SparseMultiLabel;
 
 @SuppressWarnings("serial")
 public class GraphAdsorptionTest extends TestCase {
@@ -172,4 +178,233 @@ public class GraphAdsorptionTest extends TestCase {
         Assert.assertTrue(!convergence.materializeToMap().containsKey(10));
     }
 
+    public void testInjectedSeeds() {
+        final MultiLabel.Factory factory = new MultiLabel.Factory(new Alphabet(
+                "-1", "+1"));
+
+        final PTable<Long, MultiLabel> labels = Utils.CreatePTable(
+                Writables.tableOf(Writables.longs(),
+                        Writables.records(MultiLabel.class)),
+                new LinkedHashMap<Long, MultiLabel>() {
+                    {
+                        put(1L, factory.create(2.0, 0.0));
+                        put(3L, factory.create(0.0, 1.0));
+                    }
+                });
+
+        final PTable<Long, Pair<Long, Double>> nodes = Fixtures.weights();
+
+        final GraphAdsorption<MultiLabel> classifier = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory);
+
+        for (final int iterations : new int[] { 1, 2, 30 }) {
+            final Map<Long, MultiLabel> expected = classifier
+                    .run(nodes, labels, 0.5, iterations).first()
+                    .materializeToMap();
+            final Map<Long, MultiLabel> actual = classifier
+                    .runInjected(nodes, labels, 0.5, iterations).first()
+                    .materializeToMap();
+
+            Fixtures.assertLabelsEqual(expected, actual);
+        }
+    }
+
+    public void testListener() {
+        final MultiLabel.Factory factory = new MultiLabel.Factory(new Alphabet(
+                "-1", "+1"));
+
+        final PTable<Long, MultiLabel> labels = Utils.CreatePTable(
+                Writables.tableOf(Writables.longs(),
+                        Writables.records(MultiLabel.class)),
+                new LinkedHashMap<Long, MultiLabel>() {
+                    {
+                        put(1L, factory.create(1.0, 0.0));
+                        put(2L, factory.create(0.0, 1.0));
+                    }
+                });
+
+        final PTable<Long, Pair<Long, Double>> nodes = Utils
+                .CreatePTable(
+                        Writables.tableOf(
+                                Writables.longs(),
+                                Writables.pairs(Writables.longs(),
+                                        Writables.doubles())),
+                        new LinkedList<Pair<Long, Pair<Long, Double>>>() {
+                            {
+                                add(Pair.of(1L, Pair.of(3L, 0.20)));
+                                add(Pair.of(2L, Pair.of(4L, 2.00)));
+                                add(Pair.of(3L, Pair.of(4L, 5.00)));
+                                add(Pair.of(4L, Pair.of(5L, 1.00)));
+                                add(Pair.of(5L, Pair.of(3L, 1.00)));
+                            }
+                        });
+
+        final GraphAdsorption<MultiLabel> classifier = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory);
+        final StoppingCriterion criterion = new StoppingCriterion(4, 2, 0.05,
+                StoppingCriterion.TargetType.COUNT,
+                StoppingCriterion.NO_TARGET);
+
+        final Map<Long, MultiLabel> expected = classifier
+                .run(nodes, labels, 1.0, criterion).first().materializeToMap();
+
+        final List<IterationReport> reports = new ArrayList<IterationReport>();
+
+        final GraphAdsorption<MultiLabel> reported = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory, null, ShadowNodes.negated(), null,
+                new AdsorptionListener() {
+
+                    public void iterationStarted(final int iteration) {
+                        Assert.assertEquals(reports.size() + 1, iteration);
+                    }
+
+                    public void iterationFinished(final IterationReport report) {
+                        reports.add(report);
+                    }
+
+                }, false);
+
+        Assert.assertEquals(expected,
+                reported.run(nodes, labels, 1.0, criterion).first()
+                        .materializeToMap());
+        Assert.assertEquals(4, reports.size());
+
+        // Only the shadow nodes have a label in the first iteration.
+        Assert.assertEquals(5 + 4, reports.get(0).getCounter(
+                AdsorptionCounters.JOINED_RECORDS));
+        Assert.assertEquals(4, reports.get(0).getCounter(
+                AdsorptionCounters.LABELS_SENT));
+
+        for (final IterationReport report : reports) {
+            final long joined = report
+                    .getCounter(AdsorptionCounters.JOINED_RECORDS);
+            final long sent = report.getCounter(AdsorptionCounters.LABELS_SENT);
+            final long skipped = report
+                    .getCounter(AdsorptionCounters.NULL_LABELS_SKIPPED);
+
+            Assert.assertEquals(joined, sent + skipped);
+            Assert.assertEquals(
+                    report.getCounter(AdsorptionCounters.AGGREGATED_NODES),
+                    report.getCounter(AdsorptionCounters.NORMALIZED_LABELS));
+
+            final ConvergenceSummary convergence = report.getConvergence();
+
+            Assert.assertEquals(report.getIteration() % 2 == 0,
+                    convergence != null);
+            Assert.assertEquals(
+                    report.getCounter(AdsorptionCounters.COMPARED_NODES),
+                    (convergence != null) ? convergence.getCount() : 0L);
+        }
+
+        final StringWriter writer = new StringWriter();
+        final JsonLinesListener json = new JsonLinesListener(writer);
+
+        for (final IterationReport report : reports) {
+            json.iterationFinished(report);
+        }
+
+        final String[] lines = writer.toString().split("\n");
+
+        Assert.assertEquals(4, lines.length);
+        Assert.assertTrue(lines[1]
+                .startsWith("{\"iteration\":2,\"wallTime\":"));
+        Assert.assertTrue(lines[1].contains("\""
+                + AdsorptionCounters.class.getName() + "\":{"));
+        Assert.assertTrue(lines[1].contains("\"COMPARED_NODES\":"
+                + reports.get(1)
+                        .getCounter(AdsorptionCounters.COMPARED_NODES)));
+    }
+
+    public void testSparseLabels() {
+        final SparseMultiLabel.Factory factory = new SparseMultiLabel.Factory(
+                new Alphabet("-1", "0", "+1"));
+
+        final Map<Long, SparseMultiLabel> initialLabels = new LinkedHashMap<Long, SparseMultiLabel>() {
+            {
+                put(1L, factory.create(1.0, 0.0, 0.0));
+                put(2L, factory.create(0.0, 0.0, 1.0));
+            }
+        };
+
+        final PTable<Long, Pair<Long, Double>> nodes = Fixtures.weights();
+
+        final PTable<Long, SparseMultiLabel> labels = Utils.CreatePTable(
+                Writables.tableOf(Writables.longs(),
+                        Writables.records(SparseMultiLabel.class)),
+                initialLabels);
+
+        // Same results as testFixedSeeds up to rounding, the unused class is
+        // never stored.
+        final Map<Long, SparseMultiLabel> actual = new GraphAdsorption<SparseMultiLabel>(
+                SparseMultiLabel.class, factory).run(nodes, labels, 1.0, 30)
+                .first().materializeToMap();
+
+        Assert.assertEquals(factory.create(0.0, 0.0, 1.0), actual.get(2L));
+        Assert.assertTrue(factory
+                .create(0.8196195429698212, 0.0, 0.18038045703017877)
+                .diff(actual.get(3L)).euclideanNorm() < 1e-12);
+        Assert.assertTrue(factory
+                .create(0.7835017256110393, 0.0, 0.21649827438896080)
+                .diff(actual.get(5L)).euclideanNorm() < 1e-12);
+        Assert.assertEquals(2, actual.get(3L).support());
+
+        // Keeping only the largest entry turns the labels into hard
+        // assignments.
+        final Map<Long, SparseMultiLabel> pruned = new GraphAdsorption<SparseMultiLabel>(
+                SparseMultiLabel.class, factory, PruningPolicy.topK(1))
+                .run(nodes, labels, 1.0, 30).first().materializeToMap();
+
+        for (final Map.Entry<Long, SparseMultiLabel> entry : pruned
+                .entrySet()) {
+            Assert.assertEquals(1, entry.getValue().support());
+            Assert.assertEquals(actual.get(entry.getKey()).maxArg(), entry
+                    .getValue().maxArg());
+        }
+    }
+
+    public void testSinglePrecision() {
+        final Alphabet alphabet = new Alphabet("-1", "+1");
+
+        final MultiLabel.Factory factory = new MultiLabel.Factory(alphabet);
+        final FloatMultiLabel.Factory floatFactory = new FloatMultiLabel.Factory(
+                alphabet);
+
+        final PTable<Long, Pair<Long, Double>> nodes = Fixtures.weights();
+
+        final Map<Long, MultiLabel> expected = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory).run(
+                nodes,
+                Utils.CreatePTable(
+                        Writables.tableOf(Writables.longs(),
+                                Writables.records(MultiLabel.class)),
+                        new LinkedHashMap<Long, MultiLabel>() {
+                            {
+                                put(1L, factory.create(1.0, 0.0));
+                                put(2L, factory.create(0.0, 1.0));
+                            }
+                        }), 1.0, 30).first().materializeToMap();
+
+        final Map<Long, FloatMultiLabel> actual = new GraphAdsorption<FloatMultiLabel>(
+                FloatMultiLabel.class, floatFactory).run(
+                nodes,
+                Utils.CreatePTable(
+                        Writables.tableOf(Writables.longs(),
+                                Writables.records(FloatMultiLabel.class)),
+                        new LinkedHashMap<Long, FloatMultiLabel>() {
+                            {
+                                put(1L, floatFactory.create(1.0, 0.0));
+                                put(2L, floatFactory.create(0.0, 1.0));
+                            }
+                        }), 1.0, 30).first().materializeToMap();
+
+        Assert.assertEquals(expected.keySet(), actual.keySet());
+
+        for (final Long node : expected.keySet()) {
+            for (int i = 0; i < alphabet.size(); i++) {
+                Assert.assertEquals(expected.get(node).get(i), actual.get(node)
+                        .get(i), 1e-4);
+            }
+        }
+    }
+
 }
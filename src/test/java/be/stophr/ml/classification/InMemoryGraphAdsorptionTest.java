@@ -0,0 +1,130 @@
+package be.stophr.ml.classification;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.writable.Writables;
+
+import be.stophr.ml.classification.graph.CompressedGraph;
+import be.stophr.ml.classification.labels.MultiLabel;
+
+@SuppressWarnings("serial")
+public class InMemoryGraphAdsorptionTest extends TestCase {
+
+    protected final MultiLabel.Factory factory = new MultiLabel.Factory(
+            new Alphabet("-1", "+1"));
+
+    protected PTable<Long, Pair<Long, Double>> createWeights() {
+        final List<Pair<Long, Pair<Long, Double>>> edges = Fixtures.edges();
+        edges.add(Pair.of(6L, Pair.of(7L, 1.00)));
+
+        return Fixtures.weights(edges);
+    }
+
+    protected PTable<Long, MultiLabel> createLabels() {
+        return Fixtures.labels(factory);
+    }
+
+    public void testCompressedGraph() {
+        final CompressedGraph graph = CompressedGraph.fromEdges(this
+                .createWeights().materialize());
+
+        Assert.assertEquals(7, graph.size());
+        Assert.assertEquals(10, graph.numEdges());
+        Assert.assertTrue(graph.indexOf(8L) < 0);
+
+        final int node = graph.indexOf(5L);
+        Assert.assertEquals(5L, graph.getNode(node));
+        Assert.assertEquals(3, graph.getOffsets()[node + 1]
+                - graph.getOffsets()[node]);
+
+        final CompressedGraph reversed = graph.reverse();
+
+        // Incoming edges of node 4 ordered by source: 2, 3 and 5.
+        final int target = reversed.indexOf(4L);
+        final int offset = reversed.getOffsets()[target];
+        Assert.assertEquals(3, reversed.getOffsets()[target + 1] - offset);
+        Assert.assertEquals(2L,
+                reversed.getNode(reversed.getTargets()[offset]));
+        Assert.assertEquals(2.0, reversed.getWeights()[offset]);
+        Assert.assertEquals(5L,
+                reversed.getNode(reversed.getTargets()[offset + 2]));
+    }
+
+    public void testEquivalence() {
+        final Pair<PTable<Long, MultiLabel>, PTable<Integer, Pair<Long, Double>>> expected = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory).run(this.createWeights(),
+                this.createLabels(), 1.0, 30);
+
+        final Pair<PTable<Long, MultiLabel>, PTable<Integer, Pair<Long, Double>>> actual = new InMemoryGraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory).run(this.createWeights(),
+                this.createLabels(), 1.0, 30);
+
+        Fixtures.assertLabelsEqual(expected.first().materializeToMap(), actual.first()
+                .materializeToMap());
+
+        Assert.assertEquals(expected.second().keys().count()
+                .materializeToMap(), actual.second().keys().count()
+                .materializeToMap());
+    }
+
+    public void testParallelism() {
+        final Random random = new Random(42);
+        final List<Pair<Long, Pair<Long, Double>>> edges = new LinkedList<Pair<Long, Pair<Long, Double>>>();
+
+        for (long source = 1; source <= 10000; source++) {
+            // Node 1 is a hub with more incoming edges than the grain size.
+            edges.add(Pair.of(source, Pair.of(1L, random.nextDouble())));
+
+            for (int i = 0; i < 3; i++) {
+                edges.add(Pair.of(source, Pair.of(
+                        1L + random.nextInt(10000), random.nextDouble())));
+            }
+        }
+
+        final PTable<Long, Pair<Long, Double>> weights = Utils.CreatePTable(
+                Writables.tableOf(Writables.longs(),
+                        Writables.pairs(Writables.longs(), Writables.doubles())),
+                edges);
+
+        final PTable<Long, MultiLabel> labels = Utils.CreatePTable(
+                Writables.tableOf(Writables.longs(),
+                        Writables.records(MultiLabel.class)),
+                new LinkedHashMap<Long, MultiLabel>() {
+                    {
+                        put(2L, factory.create(1.0, 0.0));
+                        put(3L, factory.create(0.0, 1.0));
+                        put(4L, factory.create(0.0, 1.0));
+                    }
+                });
+
+        final Map<Long, MultiLabel> sequential = new InMemoryGraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory).run(weights, labels, 1.0, 5)
+                .first().materializeToMap();
+
+        final Map<Long, MultiLabel> parallel = new InMemoryGraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory, 4, false).run(weights, labels, 1.0,
+                5).first().materializeToMap();
+
+        final Map<Long, MultiLabel> splitHubs = new InMemoryGraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory, 4, true).run(weights, labels, 1.0,
+                5).first().materializeToMap();
+
+        Assert.assertEquals(sequential, parallel);
+        Fixtures.assertLabelsEqual(sequential, splitHubs, 1e-15);
+
+        // Reproducible, even though the hubs are summed in chunks.
+        Assert.assertEquals(splitHubs, new InMemoryGraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory, 4, true).run(weights, labels, 1.0,
+                5).first().materializeToMap());
+    }
+
+}
@@ -0,0 +1,61 @@
+package be.stophr.ml.classification;
+
+import java.util.LinkedHashMap;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.apache.crunch.PTable;
+import org.apache.crunch.types.writable.Writables;
+
+import be.stophr.ml.classification.labels.LabelStatistics;
+import be.stophr.ml.classification.labels.MultiLabel;
+import be.stophr.ml.classification.labels.crunch.LabelStatisticsOp;
+
+@SuppressWarnings("serial")
+public class LabelStatisticsTest extends TestCase {
+
+    public void testLabelStatisticsOp() {
+        final MultiLabel.Factory factory = new MultiLabel.Factory(new Alphabet(
+                "-1", "+1"));
+
+        final PTable<Long, MultiLabel> labels = Utils.CreatePTable(
+                Writables.tableOf(Writables.longs(),
+                        Writables.records(MultiLabel.class)),
+                new LinkedHashMap<Long, MultiLabel>() {
+                    {
+                        put(1L, factory.create(1.0, 0.0));
+                        put(2L, factory.create(0.0, 1.0));
+                        put(3L, factory.create(0.5, 0.5));
+                        put(4L, factory.create(0.75, 0.25));
+                        put(5L, factory.create(0.0, 0.0));
+                    }
+                });
+
+        final LabelStatistics statistics = new LabelStatisticsOp<MultiLabel>(
+                2, 100).compute(labels);
+
+        Assert.assertEquals(5L, statistics.getCount());
+        Assert.assertEquals(1L, statistics.getUnassigned());
+        // Ties go to the first class.
+        Assert.assertEquals(3L, statistics.getClassCounts()[0]);
+        Assert.assertEquals(1L, statistics.getClassCounts()[1]);
+
+        final double entropy = -0.75 * Math.log(0.75) / Math.log(2) - 0.25
+                * Math.log(0.25) / Math.log(2);
+        Assert.assertEquals((1.0 + entropy) / 5, statistics.getMeanEntropy(),
+                1e-12);
+
+        // Confidences 0, 0.5, 0.75, 1 and 1.
+        Assert.assertEquals(1L, statistics.getConfidenceHistogram()[0]);
+        Assert.assertEquals(1L, statistics.getConfidenceHistogram()[50]);
+        Assert.assertEquals(2L, statistics.getConfidenceHistogram()[99]);
+        Assert.assertEquals(0.5, statistics.getConfidenceQuantile(0.4), 0.015);
+        Assert.assertEquals(1.0, statistics.getConfidenceQuantile(1.0), 0.01);
+
+        Assert.assertEquals(3L, statistics.getEntropyHistogram()[0]);
+        Assert.assertEquals(1L, statistics.getEntropyHistogram()[99]);
+        Assert.assertEquals(0.0, statistics.getEntropyQuantile(0.5), 0.01);
+    }
+
+}
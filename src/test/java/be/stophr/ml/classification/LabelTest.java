@@ -12,7 +12,11 @@ import java.io.InputStream;
 import junit.framework.Assert;
 import junit.framework.TestCase;
 import be.stophr.ml.classification.labels.Label;
+import be.stophr.ml.classification.labels.Label.NormType;
+import be.stophr.ml.classification.labels.LabelWritable;
 import be.stophr.ml.classification.labels.MultiLabel;
+import be.stophr.ml.classification.labels.PruningPolicy;
+import be.stophr.ml.classification.labels.SparseMultiLabel;
 
 public class LabelTest extends TestCase {
 
@@ -83,4 +87,232 @@ public class LabelTest extends TestCase {
         Assert.assertEquals(expected, actual);
     }
 
+    public void testSparseMultiLabelWritable() throws IOException {
+        final SparseMultiLabel.Factory factory = new SparseMultiLabel.Factory(
+                1000);
+        final SparseMultiLabel expected = (SparseMultiLabel) factory
+                .createSingleton(998).multiply(0.25)
+                .add(factory.createSingleton(3));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        expected.write(new DataOutputStream(outputStream));
+
+        // Two entries instead of a thousand.
+        Assert.assertEquals(4 + 4 + 2 * (4 + 8), outputStream.size());
+
+        SparseMultiLabel actual = new SparseMultiLabel();
+        actual.readFields(new DataInputStream(new ByteArrayInputStream(
+                outputStream.toByteArray())));
+
+        Assert.assertEquals(expected, actual);
+        Assert.assertEquals(2, actual.support());
+    }
+
+    public void testSparseMultiLabelArithmetic() {
+        final MultiLabel.Factory denseFactory = new MultiLabel.Factory(6);
+        final SparseMultiLabel.Factory factory = new SparseMultiLabel.Factory(
+                6);
+
+        final double[] first = new double[] { 0.0, 2.0, 0.0, 4.0, 0.5, 0.0 };
+        final double[] second = new double[] { 1.0, 2.0, 0.0, 0.0, 0.25, 0.0 };
+
+        Assert.assertEquals(factory.create(1.0, 4.0, 0.0, 4.0, 0.75, 0.0),
+                factory.create(first).add(factory.create(second)));
+        Assert.assertEquals(factory.create(-1.0, 0.0, 0.0, 4.0, 0.25, 0.0),
+                factory.create(first).diff(factory.create(second)));
+        Assert.assertEquals(factory.create(0.0, 1.0, 0.0, 2.0, 0.25, 0.0),
+                factory.create(first).multiply(0.5));
+
+        // The result of subtracting a label from itself has no entries.
+        Assert.assertEquals(0,
+                ((SparseMultiLabel) factory.create(first).diff(
+                        factory.create(first))).support());
+
+        Assert.assertEquals(denseFactory.create(first).manhattanNorm(),
+                factory.create(first).manhattanNorm());
+        Assert.assertEquals(denseFactory.create(first).euclideanNorm(),
+                factory.create(first).euclideanNorm());
+        Assert.assertEquals(
+                denseFactory.create(first).normalize(NormType.MANHATTAN)
+                        .entropy(),
+                factory.create(first).normalize(NormType.MANHATTAN).entropy());
+        Assert.assertEquals(denseFactory.create(second).maxArg(), factory
+                .create(second).maxArg());
+    }
+
+    public void testPruning() {
+        final MultiLabel.Factory denseFactory = new MultiLabel.Factory(5);
+        final SparseMultiLabel.Factory factory = new SparseMultiLabel.Factory(
+                5);
+
+        final double[] classes = new double[] { 0.1, 0.4, 0.05, 0.4, 0.05 };
+
+        Assert.assertEquals(denseFactory.create(0.0, 0.4, 0.0, 0.4, 0.0),
+                PruningPolicy.topK(2).apply(denseFactory.create(classes)));
+        Assert.assertEquals(factory.create(0.0, 0.4, 0.0, 0.4, 0.0),
+                PruningPolicy.topK(2).apply(factory.create(classes)));
+
+        // Ties are broken by the lowest index.
+        Assert.assertEquals(factory.create(0.0, 0.4, 0.0, 0.0, 0.0),
+                PruningPolicy.topK(1).apply(factory.create(classes)));
+
+        Assert.assertEquals(denseFactory.create(0.1, 0.4, 0.0, 0.4, 0.0),
+                PruningPolicy.threshold(0.1).apply(
+                        denseFactory.create(classes)));
+        Assert.assertEquals(factory.create(0.1, 0.4, 0.0, 0.4, 0.0),
+                PruningPolicy.threshold(0.1).apply(factory.create(classes)));
+
+        // The largest entry is always kept.
+        Assert.assertEquals(factory.create(0.0, 0.4, 0.0, 0.0, 0.0),
+                new PruningPolicy(3, 0.9).apply(factory.create(classes)));
+    }
+
+    public void testAccumulator() {
+        final MultiLabel.Factory denseFactory = new MultiLabel.Factory(3);
+        final SparseMultiLabel.Factory factory = new SparseMultiLabel.Factory(
+                3);
+
+        final double[][] labels = new double[][] { { 0.1, 0.0, 0.9 },
+                { 0.3, 0.0, 0.7 }, { 1e-17, 0.0, 1.0 } };
+        final double[] weights = new double[] { 3.0, 1e16, 0.5 };
+
+        // Kahan summation over freshly allocated labels.
+        Label sum = denseFactory.create();
+        Label c = denseFactory.create();
+
+        for (int i = 0; i < labels.length; i++) {
+            final Label y = denseFactory.create(labels[i])
+                    .multiply(weights[i]).diff(c);
+            final Label t = sum.add(y);
+
+            c = t.diff(sum).diff(y);
+            sum = t;
+        }
+
+        final Label.Accumulator denseAccumulator = denseFactory
+                .createAccumulator();
+        final Label.Accumulator accumulator = factory.createAccumulator();
+
+        for (int repetition = 0; repetition < 2; repetition++) {
+            denseAccumulator.reset();
+            accumulator.reset();
+
+            for (int i = 0; i < labels.length; i++) {
+                denseAccumulator.addScaled(denseFactory.create(labels[i]),
+                        weights[i]);
+                accumulator.addScaled(factory.create(labels[i]), weights[i]);
+            }
+
+            Assert.assertEquals(sum, denseAccumulator.result());
+            Assert.assertEquals(2,
+                    ((SparseMultiLabel) accumulator.result()).support());
+            Assert.assertEquals(sum.euclideanNorm(), accumulator.result()
+                    .euclideanNorm());
+        }
+    }
+
+    public void testMergeAccumulators() {
+        final MultiLabel.Factory denseFactory = new MultiLabel.Factory(2);
+        final SparseMultiLabel.Factory factory = new SparseMultiLabel.Factory(
+                2);
+
+        for (final Label.Factory labelFactory : new Label.Factory[] {
+                denseFactory, factory }) {
+            final Label one = labelFactory.createSingleton(0);
+
+            final Label.Accumulator sequential = labelFactory
+                    .createAccumulator();
+            sequential.reset();
+            sequential.addScaled(one, 1.0);
+            sequential.addScaled(one, 1e-16);
+            sequential.addScaled(one, 1e-16);
+
+            // The first partial sum loses 1e-16, which its compensation
+            // carries over.
+            final Label.Accumulator first = labelFactory.createAccumulator();
+            first.reset();
+            first.addScaled(one, 1.0);
+            first.addScaled(one, 1e-16);
+
+            final Label.Accumulator second = labelFactory.createAccumulator();
+            second.reset();
+            second.addScaled(one, 1e-16);
+
+            final Label.Accumulator merged = labelFactory.createAccumulator();
+            merged.reset();
+            merged.merge(first);
+            merged.merge(second);
+
+            Assert.assertTrue(sequential.result().get(0) > 1.0);
+            Assert.assertEquals(sequential.result(), merged.result());
+        }
+    }
+
+    public void testLabelWritable() throws IOException {
+        final MultiLabel.Factory factory = new MultiLabel.Factory(40);
+
+        final double[] classes = new double[40];
+        classes[3] = 0.25;
+        classes[37] = 0.75;
+
+        final MultiLabel sparse = factory.create(classes);
+
+        final double[] denseClasses = new double[40];
+        denseClasses[0] = 0.5;
+        denseClasses[1] = 0.125;
+        denseClasses[3] = 0.375;
+        final MultiLabel dense = factory.create(denseClasses);
+
+        int previousSize = Integer.MAX_VALUE;
+
+        for (final LabelWritable.Encoding encoding : LabelWritable.Encoding
+                .values()) {
+            for (final MultiLabel label : new MultiLabel[] { sparse, dense }) {
+                final LabelWritable expected = new LabelWritable(encoding);
+                expected.set(label);
+
+                final byte[] bytes = serialize(expected);
+
+                // Reuses an instance which held more entries.
+                final LabelWritable actual = new LabelWritable();
+                actual.set(factory.create(classes).add(dense));
+                actual.readFields(new DataInputStream(
+                        new ByteArrayInputStream(bytes)));
+
+                Assert.assertEquals(expected.size(), actual.size());
+
+                for (int i = 0; i < expected.size(); i++) {
+                    Assert.assertEquals(expected.getIndex(i),
+                            actual.getIndex(i));
+                    Assert.assertEquals(expected.getValue(i),
+                            actual.getValue(i), 1.0 / 65535);
+                }
+
+                if (label == sparse) {
+                    Assert.assertTrue(bytes.length < previousSize);
+                    previousSize = bytes.length;
+                }
+            }
+        }
+
+        // Values outside of [0, 1] are not quantized.
+        final LabelWritable unnormalized = new LabelWritable(
+                LabelWritable.Encoding.QUANTIZED);
+        unnormalized.set(sparse.multiply(3.0));
+
+        final LabelWritable copy = new LabelWritable();
+        copy.readFields(new DataInputStream(new ByteArrayInputStream(
+                serialize(unnormalized))));
+
+        Assert.assertEquals(2.25, copy.getValue(1));
+    }
+
+    protected static byte[] serialize(final LabelWritable writable)
+            throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writable.write(new DataOutputStream(outputStream));
+
+        return outputStream.toByteArray();
+    }
+
 }
@@ -0,0 +1,200 @@
+package be.stophr.ml.classification;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.apache.crunch.Pair;
+
+import be.stophr.ml.classification.graph.EdgeFile;
+
+public class ParallelLineReaderTest extends TestCase {
+
+    protected File write(final String contents) throws IOException {
+        final File file = File.createTempFile("lines", ".tsv");
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(
+                file), "UTF-8");
+
+        try {
+            writer.write(contents);
+        } finally {
+            writer.close();
+        }
+
+        return file;
+    }
+
+    public void testEdges() throws IOException {
+        final Random random = new Random(42);
+        final StringBuilder builder = new StringBuilder();
+
+        // Several batches per range (see ParallelLineReader.BATCH_SIZE).
+        for (int i = 0; i < 30000; i++) {
+            builder.append(random.nextLong() >>> 1).append('\t')
+                    .append(-random.nextInt()).append('\t')
+                    .append(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20))
+                    .append(i % 7 == 0 ? "\r\n" : "\n");
+
+            if (i % 100 == 0) {
+                builder.append('\n');
+            }
+        }
+
+        final String contents = builder.toString();
+        final File file = this.write(contents);
+        final File edgeFile = File.createTempFile("edges", ".bin");
+
+        try {
+            final String[] lines = contents.split("\r?\n");
+
+            for (final int parallelism : new int[] { 1, 3, 8 }) {
+                EdgeFile.convert(file, edgeFile, parallelism);
+
+                final EdgeFile edges = new EdgeFile(edgeFile);
+                int i = 0;
+
+                try {
+                    for (final Pair<Long, Pair<Long, Double>> edge : edges
+                            .edges()) {
+                        while (lines[i].isEmpty()) {
+                            i++;
+                        }
+
+                        final String[] fields = lines[i++].split("\t");
+
+                        Assert.assertEquals(Long.parseLong(fields[0]),
+                                (long) edge.first());
+                        Assert.assertEquals(Long.parseLong(fields[1]),
+                                (long) edge.second().first());
+                        Assert.assertEquals(Double.parseDouble(fields[2]),
+                                edge.second().second());
+                    }
+                } finally {
+                    edges.close();
+                }
+
+                Assert.assertEquals(lines.length, i);
+            }
+        } finally {
+            file.delete();
+            edgeFile.delete();
+        }
+    }
+
+    public void testMalformedLine() throws IOException, InterruptedException {
+        final StringBuilder builder = new StringBuilder();
+
+        // The malformed line lies near the end of the first range, when the
+        // other ranges are waiting for the sink.
+        for (int i = 0; i < 200000; i++) {
+            builder.append(i == 40000 ? "x" : i).append('\n');
+        }
+
+        final File file = this.write(builder.toString());
+
+        try {
+            new ParallelLineReader(file, 4).read(
+                    new ParallelLineReader.Parser<Long>() {
+
+                        public Long parse(final ParallelLineReader.Line line) {
+                            return line.getLong(0);
+                        }
+
+                    }, new ParallelLineReader.Sink<Long>() {
+
+                        public void add(final Long value) {
+                        }
+
+                    });
+
+            Assert.fail();
+        } catch (NumberFormatException e) {
+        } finally {
+            file.delete();
+        }
+
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("ParallelLineReader-")) {
+                thread.join(10000L);
+
+                Assert.assertFalse(thread.getName(), thread.isAlive());
+            }
+        }
+    }
+
+    public void testDoubles() throws IOException {
+        final String[] values = new String[] { "0", "-0.0", "1", "+2.5",
+                "0.1", "3.14159265358979", "1e-5", "2.5E+10", "123456789012345678",
+                "0.30000000000000004", "1e400", "4.9e-324", "NaN", "-Infinity",
+                ".5", "5." };
+
+        final StringBuilder builder = new StringBuilder();
+
+        for (final String value : values) {
+            builder.append(value).append('\n');
+        }
+
+        final File file = this.write(builder.toString());
+
+        try {
+            final List<Double> actual = new ArrayList<Double>();
+
+            new ParallelLineReader(file, 2).read(
+                    new ParallelLineReader.Parser<Double>() {
+
+                        public Double parse(final ParallelLineReader.Line line) {
+                            return line.getDouble(0);
+                        }
+
+                    }, new ParallelLineReader.Sink<Double>() {
+
+                        public void add(final Double value) {
+                            actual.add(value);
+                        }
+
+                    });
+
+            Assert.assertEquals(values.length, actual.size());
+
+            for (int i = 0; i < values.length; i++) {
+                Assert.assertEquals(values[i],
+                        Double.valueOf(Double.parseDouble(values[i])),
+                        actual.get(i));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testStringTable() throws IOException {
+        final File file = this.write("b\tBé\tignored\na\tA\n\nc\tC");
+        final File seedFile = this.write("7\tN-VA\n3\tCD&V\n5\tN-VA\n");
+
+        try {
+            final Map<String, String> table = Utils.readStringTable(file, 4);
+
+            Assert.assertEquals("{a=A, b=Bé, c=C}", table.toString());
+
+            final Alphabet alphabet = new Alphabet();
+            final Map<Long, Long> seeds = Utils.readSeeds(seedFile, 2,
+                    alphabet).materializeToMap();
+
+            Assert.assertEquals(2, alphabet.size());
+            Assert.assertEquals("N-VA", alphabet.getToken(seeds.get(5L)));
+            Assert.assertEquals("CD&V", alphabet.getToken(seeds.get(3L)));
+        } finally {
+            file.delete();
+            seedFile.delete();
+        }
+    }
+
+}
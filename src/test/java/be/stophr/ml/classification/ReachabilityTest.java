@@ -0,0 +1,105 @@
+package be.stophr.ml.classification;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+import org.apache.crunch.types.writable.Writables;
+
+import be.stophr.ml.classification.graph.crunch.ReachabilityOp;
+import be.stophr.ml.classification.labels.MultiLabel;
+
+@SuppressWarnings("serial")
+public class ReachabilityTest extends TestCase {
+
+    protected final MultiLabel.Factory factory = new MultiLabel.Factory(
+            new Alphabet("-1", "+1"));
+
+    protected final PTable<Long, Pair<Long, Double>> weights = Utils
+            .CreatePTable(
+                    Writables.tableOf(Writables.longs(), Writables.pairs(
+                            Writables.longs(), Writables.doubles())),
+                    new LinkedList<Pair<Long, Pair<Long, Double>>>() {
+                        {
+                            add(Pair.of(1L, Pair.of(3L, 0.20)));
+                            add(Pair.of(3L, Pair.of(4L, 5.00)));
+                            add(Pair.of(4L, Pair.of(5L, 1.00)));
+                            add(Pair.of(5L, Pair.of(3L, 1.00)));
+                            add(Pair.of(5L, Pair.of(6L, 1.00)));
+                            add(Pair.of(2L, Pair.of(4L, 2.00)));
+                            // Not reachable from any seed.
+                            add(Pair.of(7L, Pair.of(8L, 1.00)));
+                            add(Pair.of(8L, Pair.of(7L, 1.00)));
+                            add(Pair.of(8L, Pair.of(3L, 1.00)));
+                        }
+                    });
+
+    protected final PTable<Long, MultiLabel> labels = Utils.CreatePTable(
+            Writables.tableOf(Writables.longs(),
+                    Writables.records(MultiLabel.class)),
+            new LinkedHashMap<Long, MultiLabel>() {
+                {
+                    put(1L, factory.create(1.0, 0.0));
+                    put(2L, factory.create(0.0, 1.0));
+                }
+            });
+
+    public void testLevels() {
+        Assert.assertEquals(new HashMap<Long, Integer>() {
+            {
+                put(1L, 0);
+                put(2L, 0);
+                put(3L, 1);
+                put(4L, 1);
+                put(5L, 2);
+                put(6L, 3);
+            }
+        }, ReachabilityOp.levels(this.weights, this.labels, 10)
+                .materializeToMap());
+
+        Assert.assertEquals(new HashMap<Long, Integer>() {
+            {
+                put(1L, 0);
+                put(2L, 0);
+                put(3L, 1);
+                put(4L, 1);
+            }
+        }, ReachabilityOp.levels(this.weights, this.labels, 1)
+                .materializeToMap());
+    }
+
+    public void testRunReachable() {
+        final GraphAdsorption<MultiLabel> classifier = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory);
+
+        for (final int iterations : new int[] { 1, 3, 20 }) {
+            final Pair<PTable<Long, MultiLabel>, PTable<Integer, Pair<Long, Double>>> expected = classifier
+                    .runInjected(this.weights, this.labels, 1.0, iterations);
+            final Pair<PTable<Long, MultiLabel>, PTable<Integer, Pair<Long, Double>>> actual = classifier
+                    .runReachable(this.weights, this.labels, 1.0,
+                            StoppingCriterion.fixed(iterations), null);
+
+            final Map<Long, MultiLabel> expectedLabels = expected.first()
+                    .materializeToMap();
+
+            Assert.assertFalse(expectedLabels.containsKey(7L));
+            Assert.assertEquals(expectedLabels, actual.first()
+                    .materializeToMap());
+
+            if (expected.second() == null) {
+                Assert.assertNull(actual.second());
+            } else {
+                Assert.assertEquals(expected.second().keys().count()
+                        .materializeToMap(), actual.second().keys().count()
+                        .materializeToMap());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package be.stophr.ml.classification;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.Random;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+public class SanitizeTest extends TestCase {
+
+    /**
+     * The original, regular expression based implementations.
+     */
+    protected static String referenceSanitize(final String str) {
+        return Normalizer.normalize(str, Normalizer.Form.NFD)
+                .replaceAll("[^\\p{ASCII}]", "")
+                .replaceAll("[\\t\\n\\r\\f\\v]", " ");
+    }
+
+    protected static String referenceNormalize(final String str) {
+        if (str == null) {
+            return "";
+        }
+
+        return referenceSanitize(str).replaceAll("[^a-zA-Z ]", "")
+                .replaceAll("\\s{2,}", " ").toLowerCase();
+    }
+
+    protected static final String[] SAMPLES = new String[] { "",
+            "plain ascii", "CD & V", "N-VA", "SP.a", "Groen!",
+            "Tĥïŝ ĩš â fůňķŷ Šťŕĭńġ", "tab\there\u000Bvt\fff\r\nline",
+            "  leading and   trailing  ", "İstanbul IŞIK ıi", "Ǆemal ǅ ǆ",
+            "한국어 日本語 עברית العربية", "emoji 😀 and 𝐀",
+            "lone \uD800 surrogate \uDC00", "\u0085   ", "ﬁ ﬂ ﬀ",
+            "\u0000nul", "Ångström Œuvre Ææ Øresund ß" };
+
+    public void testSamples() {
+        for (final String sample : SAMPLES) {
+            Assert.assertEquals(sample, referenceSanitize(sample),
+                    Utils.sanitizeString(sample));
+            Assert.assertEquals(sample, referenceNormalize(sample),
+                    Utils.normalizeString(sample));
+        }
+
+        Assert.assertEquals("", Utils.normalizeString(null));
+    }
+
+    public void testAllCharacters() {
+        for (int character = 0; character <= Character.MAX_VALUE; character++) {
+            final String str = "a" + (char) character + "b";
+
+            Assert.assertEquals(Integer.toHexString(character),
+                    referenceSanitize(str), Utils.sanitizeString(str));
+        }
+
+        for (int codePoint = Character.MIN_SUPPLEMENTARY_CODE_POINT; codePoint <= Character.MAX_CODE_POINT; codePoint += 7) {
+            final String str = new String(Character.toChars(codePoint));
+
+            Assert.assertEquals(Integer.toHexString(codePoint),
+                    referenceSanitize(str), Utils.sanitizeString(str));
+        }
+    }
+
+    public void testRandom() {
+        final Random random = new Random(42);
+        final char[] alphabet = "aAzZ iIİı\t\n\r\u000B.&-éÉñçÆ한😀"
+                .toCharArray();
+
+        for (int i = 0; i < 10000; i++) {
+            final char[] characters = new char[random.nextInt(20)];
+
+            for (int j = 0; j < characters.length; j++) {
+                characters[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+
+            final String str = new String(characters);
+
+            Assert.assertEquals(referenceSanitize(str),
+                    Utils.sanitizeString(str));
+            Assert.assertEquals(referenceNormalize(str),
+                    Utils.normalizeString(str));
+        }
+    }
+
+    public void testLocales() {
+        final Locale locale = Locale.getDefault();
+
+        try {
+            for (final String language : new String[] { "tr", "az", "lt",
+                    "en", "nl" }) {
+                Locale.setDefault(new Locale(language));
+
+                for (final String sample : SAMPLES) {
+                    Assert.assertEquals(language + ": " + sample,
+                            referenceNormalize(sample),
+                            Utils.normalizeString(sample));
+                }
+            }
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package be.stophr.ml.classification;
+
+import java.util.Map;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+
+import be.stophr.ml.classification.crunch.SkewedAggregateOp;
+import be.stophr.ml.classification.graph.SyntheticGraph;
+import be.stophr.ml.classification.labels.MultiLabel;
+
+public class SkewedAggregateTest extends TestCase {
+
+    public void testHotKeys() {
+        final SyntheticGraph graph = SyntheticGraph.twitter(1000, 20000, 0.05,
+                3, 42L);
+        final MultiLabel.Factory factory = new MultiLabel.Factory(3);
+
+        final PTable<Long, Pair<Long, Double>> nodes = graph.weights(4);
+        final PTable<Long, MultiLabel> labels = graph.<MultiLabel> labels(4,
+                factory);
+
+        final long[] hotKeys = SkewedAggregateOp.findHotKeys(nodes, 10.0);
+        final SkewedAggregateOp<MultiLabel> op = new SkewedAggregateOp<MultiLabel>(
+                factory, hotKeys, 4);
+
+        // The hubs have the lowest identifiers.
+        Assert.assertTrue(hotKeys.length > 0 && hotKeys.length < 100);
+        Assert.assertTrue(op.isHot(1L));
+        Assert.assertFalse(op.isHot(1000L));
+
+        final GraphAdsorption<MultiLabel> classifier = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory);
+        final GraphAdsorption<MultiLabel> skewed = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory, null, ShadowNodes.negated(), op,
+                null, false);
+        final StoppingCriterion criterion = new StoppingCriterion(6, 2, 1e-4,
+                StoppingCriterion.TargetType.FRACTION, 0.0);
+
+        final Map<Long, MultiLabel> expected = classifier
+                .run(nodes, labels, 1.0, criterion).first()
+                .materializeToMap();
+
+        final Map<Long, MultiLabel> actual = skewed
+                .run(nodes, labels, 1.0, criterion).first()
+                .materializeToMap();
+
+        Fixtures.assertLabelsEqual(expected, actual);
+    }
+
+}
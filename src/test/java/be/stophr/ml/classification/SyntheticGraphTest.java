@@ -0,0 +1,96 @@
+package be.stophr.ml.classification;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.apache.crunch.Pair;
+
+import be.stophr.ml.classification.graph.EdgeFile;
+import be.stophr.ml.classification.graph.SyntheticGraph;
+import be.stophr.ml.classification.labels.MultiLabel;
+
+import com.google.common.collect.Lists;
+
+public class SyntheticGraphTest extends TestCase {
+
+    public void testEdges() throws IOException {
+        final SyntheticGraph graph = SyntheticGraph.twitter(1000, 20000, 0.01,
+                3, 42L);
+
+        final Map<Long, Integer> inDegrees = new HashMap<Long, Integer>();
+        long numEdges = 0;
+        long numRetweets = 0;
+
+        for (final Pair<Long, Pair<Long, Double>> edge : graph.weights(4)
+                .materialize()) {
+            final long source = edge.first();
+            final long target = edge.second().first();
+
+            Assert.assertTrue(source >= 1 && source <= 1000);
+            Assert.assertTrue(target >= 1 && target <= 1000);
+            Assert.assertTrue(source != target);
+            Assert.assertTrue(edge.second().second() >= 1.0);
+
+            final Integer inDegree = inDegrees.get(target);
+            inDegrees.put(target, inDegree == null ? 1 : inDegree + 1);
+
+            numEdges++;
+
+            if (edge.second().second() > 1.0) {
+                numRetweets++;
+            }
+        }
+
+        // About 22% reciprocal edges and 10% retweeted edges.
+        Assert.assertTrue(numEdges > 23000 && numEdges < 26000);
+        Assert.assertTrue(numRetweets > 0.08 * numEdges
+                && numRetweets < 0.12 * numEdges);
+
+        // The hubs have the lowest identifiers.
+        Assert.assertTrue(inDegrees.get(1L) > 20 * numEdges / 1000);
+
+        final File file = File.createTempFile("synthetic", ".bin");
+
+        try {
+            Assert.assertEquals(numEdges, graph.write(file, 4));
+
+            final EdgeFile edges = new EdgeFile(file);
+
+            try {
+                Assert.assertEquals(Lists.newArrayList(graph.weights(4)
+                        .materialize()), Lists.newArrayList(edges.edges()));
+            } finally {
+                edges.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testSeeds() {
+        final SyntheticGraph graph = SyntheticGraph.twitter(10000, 0, 0.05,
+                3, 7L);
+        final MultiLabel.Factory factory = new MultiLabel.Factory(3);
+
+        final Map<Long, MultiLabel> seeds = graph.<MultiLabel> labels(3,
+                factory).materializeToMap();
+
+        Assert.assertTrue(seeds.size() > 400 && seeds.size() < 600);
+
+        for (final Map.Entry<Long, MultiLabel> seed : seeds.entrySet()) {
+            Assert.assertTrue(seed.getKey() >= 1 && seed.getKey() <= 10000);
+            Assert.assertEquals(1.0, seed.getValue().manhattanNorm(), 1e-9);
+        }
+
+        Assert.assertEquals(seeds, graph.<MultiLabel> labels(3, factory)
+                .materializeToMap());
+        Assert.assertFalse(graph.weights(2).materialize().iterator()
+                .hasNext());
+    }
+
+}
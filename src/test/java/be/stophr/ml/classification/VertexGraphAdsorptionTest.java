@@ -0,0 +1,60 @@
+package be.stophr.ml.classification;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+import org.apache.crunch.PTable;
+import org.apache.crunch.Pair;
+
+import be.stophr.ml.classification.labels.MultiLabel;
+
+@SuppressWarnings("serial")
+public class VertexGraphAdsorptionTest extends TestCase {
+
+    protected final MultiLabel.Factory factory = new MultiLabel.Factory(
+            new Alphabet("-1", "+1"));
+
+    protected final PTable<Long, Pair<Long, Double>> weights = Fixtures
+            .weights();
+
+    protected final PTable<Long, MultiLabel> labels = Fixtures.labels(factory);
+
+    public void testEquivalence() {
+        final Pair<PTable<Long, MultiLabel>, PTable<Integer, Pair<Long, Double>>> expected = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory).run(this.weights, this.labels, 1.0,
+                30);
+
+        final Pair<PTable<Long, MultiLabel>, PTable<Integer, Pair<Long, Double>>> actual = new VertexGraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory).run(this.weights, this.labels, 1.0,
+                30);
+
+        Fixtures.assertLabelsEqual(expected.first()
+                .materializeToMap(), actual.first().materializeToMap());
+
+        Assert.assertEquals(expected.second().keys().count()
+                .materializeToMap(), actual.second().keys().count()
+                .materializeToMap());
+    }
+
+    public void testEarlyStopping() {
+        final StoppingCriterion criterion = new StoppingCriterion(100, 2,
+                1e-4, StoppingCriterion.TargetType.FRACTION, 0.0);
+
+        final Pair<PTable<Long, MultiLabel>, PTable<Integer, Pair<Long, Double>>> expected = new GraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory).run(this.weights, this.labels, 1.0,
+                criterion);
+
+        final Pair<PTable<Long, MultiLabel>, PTable<Integer, Pair<Long, Double>>> actual = new VertexGraphAdsorption<MultiLabel>(
+                MultiLabel.class, factory).run(this.weights, this.labels, 1.0,
+                criterion);
+
+        Fixtures.assertLabelsEqual(expected.first()
+                .materializeToMap(), actual.first().materializeToMap());
+
+        // Stopped at the same check.
+        Assert.assertEquals(expected.second().keys().count()
+                .materializeToMap(), actual.second().keys().count()
+                .materializeToMap());
+    }
+
+}